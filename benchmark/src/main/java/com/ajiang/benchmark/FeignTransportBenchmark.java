@@ -0,0 +1,160 @@
+package com.ajiang.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import feign.Client;
+import feign.Feign;
+import feign.Request;
+import feign.RequestLine;
+import feign.httpclient.ApacheHttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feign 传输层对比：连接池（Apache HttpClient）与 JDK HttpURLConnection
+ * 本地桩服务模拟权限服务的角色查询接口，可配置固定处理延迟；32 个线程并发调用，
+ * 同时输出吞吐（Throughput）和延迟分布（SampleTime，含 p99/p99.9 尾延迟）。
+ * 连接池参数与 user-service 的 FeignTransportConfig 及 application.yml 中的 feign.httpclient.* 一致
+ * （user-service 打包为可执行 jar，不能作为依赖引入，这里按相同方式构建），修改配置时需要同步修改
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(32)
+@Fork(1)
+public class FeignTransportBenchmark {
+
+    // 与 application.yml 中的 feign.httpclient.*、feign.client.config.permissionService.* 和 user.feign.* 一致
+    private static final int MAX_CONNECTIONS = 200;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 50;
+    private static final long TIME_TO_LIVE_SECONDS = 900;
+    private static final int CONNECT_TIMEOUT_MS = 2000;
+    private static final int READ_TIMEOUT_MS = 5000;
+    private static final int POOL_TIMEOUT_MS = 1000;
+    private static final long MAX_IDLE_SECONDS = 30;
+
+    private static final byte[] RESPONSE = "user".getBytes(StandardCharsets.UTF_8);
+
+    // pooled：连接池；jdk：HttpURLConnection（feign.httpclient.enabled=false）
+    @Param({"pooled", "jdk"})
+    public String transport;
+
+    // 桩服务的处理延迟（毫秒）
+    @Param({"0", "5"})
+    public int serverDelayMs;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private CloseableHttpClient httpClient;
+
+    private RoleApi roleApi;
+
+    /**
+     * 权限服务角色查询接口的桩
+     */
+    public interface RoleApi {
+        @RequestLine("GET /role/code/{userId}")
+        String roleCode(@feign.Param("userId") long userId);
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server.setExecutor(serverExecutor);
+        server.createContext("/role/code/", exchange -> {
+            try {
+                if (serverDelayMs > 0) {
+                    Thread.sleep(serverDelayMs);
+                }
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, RESPONSE.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(RESPONSE);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        Client client;
+        if ("pooled".equals(transport)) {
+            httpClient = pooledHttpClient();
+            client = new ApacheHttpClient(httpClient);
+        } else {
+            client = new Client.Default(null, null);
+        }
+        roleApi = Feign.builder()
+                .client(client)
+                .options(new Request.Options(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+                        READ_TIMEOUT_MS, TimeUnit.MILLISECONDS, true))
+                .target(RoleApi.class, "http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String roleCode() {
+        return roleApi.roleCode(ThreadLocalRandom.current().nextLong(1, 1000000));
+    }
+
+    /**
+     * 与 FeignTransportConfig.feignConnectionManager/feignHttpClient 相同的构建方式
+     */
+    private static CloseableHttpClient pooledHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(MAX_CONNECTIONS);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MS)
+                .setConnectionRequestTimeout(POOL_TIMEOUT_MS)
+                .setRedirectsEnabled(true)
+                .build();
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .evictExpiredConnections()
+                .evictIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ajiang.benchmark;
+
+import com.ajiang.common.util.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JwtUtil 签发和解析的吞吐
+ * stringSecret 系列是改造前的写法：每次以字符串密钥签名、每次新建解析器（jjwt 每次都重新 Base64 解码密钥），
+ * 与当前预解码密钥、按线程复用解析器的实现对比。
+ * 多线程下的表现用 -t 指定线程数，如 java -jar target/benchmarks.jar JwtUtilBenchmark -t 8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final Long USER_ID = 1234567890123456789L;
+
+    private static final String ROLE_CODE = "user";
+
+    private static final long ROLE_EPOCH = 3L;
+
+    private JwtUtil jwtUtil;
+
+    // JwtUtil 中的原始字符串密钥
+    private String secret;
+
+    private String token;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        jwtUtil = new JwtUtil();
+        Field field = JwtUtil.class.getDeclaredField("secret");
+        field.setAccessible(true);
+        secret = (String) field.get(jwtUtil);
+        token = jwtUtil.generateToken(USER_ID, ROLE_CODE, ROLE_EPOCH);
+    }
+
+    @Benchmark
+    public String sign() {
+        return jwtUtil.generateToken(USER_ID, ROLE_CODE, ROLE_EPOCH);
+    }
+
+    @Benchmark
+    public String signStringSecret() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtUtil.CLAIM_ROLE_CODE, ROLE_CODE);
+        claims.put(JwtUtil.CLAIM_ROLE_EPOCH, ROLE_EPOCH);
+        Date now = new Date();
+        return Jwts.builder()
+                .setClaims(claims)
+                .setSubject(USER_ID.toString())
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtUtil.getExpirationSeconds() * 1000))
+                .signWith(SignatureAlgorithm.HS512, secret)
+                .compact();
+    }
+
+    @Benchmark
+    public Claims parse() {
+        return jwtUtil.parseToken(token);
+    }
+
+    @Benchmark
+    public Claims parseStringSecret() {
+        return Jwts.parser()
+                .setSigningKey(secret)
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
@@ -0,0 +1,54 @@
+-- 登录接口压测脚本（wrk）
+-- 用法：wrk -t8 -c<并发数> -d60s --latency -s benchmark/wrk/login.lua http://localhost:8081
+-- 环境变量：
+--   LOGIN_USERS     压测账号数量，账号为 loadtest1 .. loadtest<N>，需要事先注册，默认 1000
+--   LOGIN_PASSWORD  压测账号的密码，默认 loadtest123
+-- 被测实例需关闭登录限流（--user.login.throttle.enabled=false），否则单个压测机 IP 很快被限流
+
+local users = tonumber(os.getenv("LOGIN_USERS") or "1000")
+local password = os.getenv("LOGIN_PASSWORD") or "loadtest123"
+
+local threads = {}
+local counter = 0
+
+function setup(thread)
+    thread:set("id", #threads)
+    table.insert(threads, thread)
+end
+
+function init(args)
+    -- 每个线程从不同的账号开始轮询，避免所有连接同时登录同一个账号
+    counter = (id * 7919) % users
+    failures = 0
+    responses = 0
+end
+
+function request()
+    counter = counter + 1
+    local username = "loadtest" .. (counter % users + 1)
+    local body = '{"username":"' .. username .. '","password":"' .. password .. '"}'
+    return wrk.format("POST", "/user/login", { ["Content-Type"] = "application/json" }, body)
+end
+
+function response(status, headers, body)
+    responses = responses + 1
+    -- 业务失败（密码错误、限流、下游降级）时 HTTP 状态码也可能是 200，按响应体中的 code 判断
+    if status ~= 200 or not string.find(body, '"code":200', 1, true) then
+        failures = failures + 1
+    end
+end
+
+function done(summary, latency, requests)
+    local total_failures = 0
+    local total_responses = 0
+    for _, thread in ipairs(threads) do
+        total_failures = total_failures + thread:get("failures")
+        total_responses = total_responses + thread:get("responses")
+    end
+    io.write("------------------------------\n")
+    for _, p in ipairs({ 50, 90, 99, 99.9 }) do
+        io.write(string.format("p%-5s %10.2f ms\n", p, latency:percentile(p) / 1000))
+    end
+    io.write(string.format("吞吐     %10.2f 次/秒\n", summary.requests / (summary.duration / 1000000)))
+    io.write(string.format("业务失败 %d / %d\n", total_failures, total_responses))
+end
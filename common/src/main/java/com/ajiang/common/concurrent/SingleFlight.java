@@ -0,0 +1,102 @@
+package com.ajiang.common.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 并发相同请求合并（single-flight）
+ * 同一个键同时只有一次加载在执行：第一个调用方在自己的线程上执行加载，
+ * 加载期间到达的相同键的调用方等待同一个 CompletableFuture，共享结果或异常。
+ * 加载完成后立即移除，不缓存结果；之后到达的调用方重新加载。
+ * <p>
+ * 结果对象在调用方之间共享，调用方不应修改；可变对象需要修改时应自行复制
+ *
+ * @param <K> 键
+ * @param <V> 值
+ */
+public class SingleFlight<K, V> {
+
+    private final String name;
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executedCalls = new LongAdder();
+
+    private final LongAdder collapsedCalls = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 执行加载，相同键的并发调用只执行一次
+     *
+     * @param key    键
+     * @param loader 加载操作
+     * @return 加载结果
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            collapsedCalls.increment();
+            return await(existing);
+        }
+        executedCalls.increment();
+        try {
+            V value = loader.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private V await(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 与执行加载的调用方抛出同样的异常
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 实际执行加载的次数
+     */
+    public long executedCount() {
+        return executedCalls.sum();
+    }
+
+    /**
+     * 被合并到进行中加载的调用次数
+     */
+    public long collapsedCount() {
+        return collapsedCalls.sum();
+    }
+
+    /**
+     * 当前进行中的加载数
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
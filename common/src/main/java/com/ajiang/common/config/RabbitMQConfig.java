@@ -32,6 +32,10 @@ public class RabbitMQConfig {
     // 最大重试次数
     public static final int MAX_RETRY_COUNT = 3;
 
+    // ==================== 角色变更事件相关配置 ====================
+    // 角色变更事件交换机（广播，每个订阅实例一个临时队列）
+    public static final String ROLE_CHANGE_EXCHANGE = "role.change.exchange";
+
     // ==================== 主要业务队列配置 ====================
 
     /**
@@ -68,6 +72,20 @@ public class RabbitMQConfig {
                 .with(OPERATION_LOG_ROUTING_KEY);
     }
 
+    // ==================== 角色变更事件配置 ====================
+
+    /**
+     * 声明角色变更事件交换机（持久化，广播）
+     * 订阅方的队列由 RoleChangeSubscriber 按实例声明
+     */
+    @Bean
+    public FanoutExchange roleChangeExchange() {
+        return ExchangeBuilder
+                .fanoutExchange(ROLE_CHANGE_EXCHANGE)
+                .durable(true)
+                .build();
+    }
+
     // ==================== 死信队列配置 ====================
 
     /**
@@ -0,0 +1,24 @@
+package com.ajiang.common.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 角色变更事件
+ * 由权限服务在角色变更的事务提交后发布到 role.change.exchange，同一时间窗内的事件合并为一条消息（JSON 数组）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoleChangeEvent {
+
+    private Long userId;
+
+    private String oldRole;
+
+    private String newRole;
+
+    // 变更后的角色版本号，同一用户的事件按版本号判断先后
+    private Long version;
+}
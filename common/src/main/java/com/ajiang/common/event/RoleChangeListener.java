@@ -0,0 +1,20 @@
+package com.ajiang.common.event;
+
+import java.util.List;
+
+/**
+ * 角色变更事件监听
+ * 注册为 Bean 并开启 role.change.subscribe.enabled 后，由 RoleChangeSubscriber 在消息到达时回调，
+ * 用于失效或更新本地的角色、鉴权结果、可见用户等缓存
+ */
+@FunctionalInterface
+public interface RoleChangeListener {
+
+    /**
+     * 处理一批角色变更事件
+     * 在消息监听线程上执行，不应阻塞
+     *
+     * @param events 角色变更事件，按发布顺序排列
+     */
+    void onRoleChanged(List<RoleChangeEvent> events);
+}
@@ -0,0 +1,57 @@
+package com.ajiang.common.event;
+
+import com.ajiang.common.config.RabbitMQConfig;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 角色变更事件订阅
+ * 每个实例声明一个匿名队列（独占、自动删除）绑定到广播交换机，实例下线后队列随之删除，
+ * 收到的事件分发给本实例全部 RoleChangeListener。
+ * 事件只用于尽快失效本地状态，不保证送达：订阅方仍需保留 TTL 或定时重建作为兜底
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "role.change.subscribe.enabled", havingValue = "true")
+public class RoleChangeSubscriber {
+
+    @Autowired(required = false)
+    private List<RoleChangeListener> listeners = Collections.emptyList();
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(value = RabbitMQConfig.ROLE_CHANGE_EXCHANGE, type = ExchangeTypes.FANOUT)))
+    public void onMessage(String messageBody) {
+        List<RoleChangeEvent> events;
+        try {
+            events = JSON.parseArray(messageBody, RoleChangeEvent.class);
+        } catch (Exception e) {
+            log.error("[角色变更] 事件解析失败，已丢弃: error={}", e.getMessage());
+            return;
+        }
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        log.debug("[角色变更] 收到事件: count={}", events.size());
+        for (RoleChangeListener listener : listeners) {
+            try {
+                listener.onRoleChanged(events);
+            } catch (Exception e) {
+                // 单个监听失败不影响其他监听，也不重新投递
+                log.error("[角色变更] 事件处理失败: listener={}, error={}",
+                        listener.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import java.util.List;
@@ -39,6 +40,21 @@ public class GlobalExceptionHandler {
         return ApiResponse.badRequest(e.getMessage());
     }
 
+    /**
+     * 处理限流异常
+     *
+     * @param e        限流异常
+     * @param response HTTP响应，用于写入 Retry-After
+     * @return 标准响应
+     */
+    @ExceptionHandler(RateLimitException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public ApiResponse<Void> handleRateLimitException(RateLimitException e, HttpServletResponse response) {
+        log.warn("请求被限流: {}", e.getMessage());
+        response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+        return ApiResponse.error(HttpStatus.TOO_MANY_REQUESTS.value(), e.getMessage());
+    }
+
     /**
      * 处理参数校验异常（@RequestBody参数校验）
      *
@@ -0,0 +1,26 @@
+package com.ajiang.common.exception;
+
+/**
+ * 限流异常
+ * 请求频率超过限制时抛出，由全局异常处理器转换为 429 响应
+ */
+public class RateLimitException extends BusinessException {
+
+    // 建议客户端重试的等待时间（秒）
+    private final long retryAfterSeconds;
+
+    /**
+     * 构造函数
+     *
+     * @param message           异常信息
+     * @param retryAfterSeconds 建议重试等待时间（秒）
+     */
+    public RateLimitException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ajiang.common.security;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内角色版本号存储，用于测试和单实例部署
+ */
+public class LocalRoleEpochStore implements RoleEpochStore {
+
+    private final Map<Long, AtomicLong> epochs = new ConcurrentHashMap<>();
+
+    @Override
+    public long currentEpoch(Long userId) {
+        AtomicLong epoch = epochs.get(userId);
+        return epoch == null ? 0L : epoch.get();
+    }
+
+    @Override
+    public long bump(Long userId) {
+        return epochs.computeIfAbsent(userId, k -> new AtomicLong()).incrementAndGet();
+    }
+}
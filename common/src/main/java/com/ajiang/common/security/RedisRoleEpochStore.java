@@ -0,0 +1,85 @@
+package com.ajiang.common.security;
+
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 Redis 的角色版本号存储，每个用户一个计数器，读写均为 O(1)
+ */
+public class RedisRoleEpochStore implements RoleEpochStore {
+
+    private static final String KEY_PREFIX = "role:epoch:";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    // 未配置响应式连接时为null
+    private final ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    public RedisRoleEpochStore(StringRedisTemplate stringRedisTemplate) {
+        this(stringRedisTemplate, null);
+    }
+
+    public RedisRoleEpochStore(StringRedisTemplate stringRedisTemplate,
+                               ReactiveStringRedisTemplate reactiveStringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.reactiveStringRedisTemplate = reactiveStringRedisTemplate;
+    }
+
+    @Override
+    public long currentEpoch(Long userId) {
+        String value = stringRedisTemplate.opsForValue().get(KEY_PREFIX + userId);
+        return value == null ? 0L : Long.parseLong(value);
+    }
+
+    @Override
+    public Mono<Long> currentEpochReactive(Long userId) {
+        if (reactiveStringRedisTemplate == null) {
+            return Mono.fromCallable(() -> currentEpoch(userId)).subscribeOn(Schedulers.boundedElastic());
+        }
+        return reactiveStringRedisTemplate.opsForValue().get(KEY_PREFIX + userId)
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L);
+    }
+
+    @Override
+    public long bump(Long userId) {
+        Long epoch = stringRedisTemplate.opsForValue().increment(KEY_PREFIX + userId);
+        return epoch == null ? 0L : epoch;
+    }
+
+    @Override
+    public Map<Long, Long> bumpAll(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Long> orderedUserIds = new ArrayList<>(userIds);
+        // 管道批量 INCR，一次往返
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            public Object execute(RedisOperations operations) {
+                for (Long userId : orderedUserIds) {
+                    operations.opsForValue().increment(KEY_PREFIX + userId);
+                }
+                return null;
+            }
+        });
+        Map<Long, Long> epochs = new HashMap<>(orderedUserIds.size() * 2);
+        for (int i = 0; i < orderedUserIds.size(); i++) {
+            Object epoch = results.get(i);
+            epochs.put(orderedUserIds.get(i), epoch == null ? 0L : ((Number) epoch).longValue());
+        }
+        return epochs;
+    }
+}
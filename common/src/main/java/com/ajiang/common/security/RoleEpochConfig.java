@@ -0,0 +1,35 @@
+package com.ajiang.common.security;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 角色版本号存储配置
+ * role.epoch.store=redis（默认，需引入 Redis）/ local
+ */
+@Configuration
+public class RoleEpochConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "role.epoch.store", havingValue = "local")
+    public RoleEpochStore localRoleEpochStore() {
+        return new LocalRoleEpochStore();
+    }
+
+    @Configuration
+    @ConditionalOnClass(StringRedisTemplate.class)
+    static class RedisRoleEpochConfig {
+
+        @Bean
+        @ConditionalOnProperty(name = "role.epoch.store", havingValue = "redis", matchIfMissing = true)
+        public RoleEpochStore redisRoleEpochStore(StringRedisTemplate stringRedisTemplate,
+                ObjectProvider<ReactiveStringRedisTemplate> reactiveStringRedisTemplate) {
+            return new RedisRoleEpochStore(stringRedisTemplate, reactiveStringRedisTemplate.getIfAvailable());
+        }
+    }
+}
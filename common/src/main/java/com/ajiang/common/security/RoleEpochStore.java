@@ -0,0 +1,56 @@
+package com.ajiang.common.security;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 用户角色版本号存储
+ * 角色变更时递增版本号，令牌中携带签发时的版本号，二者不一致说明令牌中的角色已过期
+ */
+public interface RoleEpochStore {
+
+    /**
+     * 获取用户当前的角色版本号
+     *
+     * @param userId 用户ID
+     * @return 版本号，从未变更过角色时为 0
+     */
+    long currentEpoch(Long userId);
+
+    /**
+     * 非阻塞地获取用户当前的角色版本号，供响应式调用链使用
+     * 默认实现直接调用同步方法，仅适用于不涉及 I/O 的存储
+     *
+     * @param userId 用户ID
+     * @return 版本号
+     */
+    default Mono<Long> currentEpochReactive(Long userId) {
+        return Mono.fromCallable(() -> currentEpoch(userId));
+    }
+
+    /**
+     * 角色变更后递增版本号
+     *
+     * @param userId 用户ID
+     * @return 递增后的版本号
+     */
+    long bump(Long userId);
+
+    /**
+     * 批量角色变更后递增版本号
+     * 默认逐个递增，存储支持时应在一次往返中完成
+     *
+     * @param userIds 用户ID
+     * @return userId -> 递增后的版本号
+     */
+    default Map<Long, Long> bumpAll(Collection<Long> userIds) {
+        Map<Long, Long> epochs = new HashMap<>(userIds.size() * 2);
+        for (Long userId : userIds) {
+            epochs.put(userId, bump(userId));
+        }
+        return epochs;
+    }
+}
@@ -1,14 +1,18 @@
 package com.ajiang.common.util;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.impl.TextCodec;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * AI
@@ -22,10 +26,23 @@ import java.util.Map;
 @Component
 public class JwtUtil {
 
+    public static final String CLAIM_ROLE_CODE = "roleCode";
+
+    // 签发令牌时用户的角色版本号，用于发现角色变更前签发的令牌
+    public static final String CLAIM_ROLE_EPOCH = "roleEpoch";
+
     // 直接在类中设置 JWT 密钥和过期时间（单位：秒）
     private final String secret = "AJiang";   // 签名密钥
     private final Long expiration = 1800L;             // 半小时
 
+    // 密钥只解码一次；jjwt 在每次以字符串密钥签名/解析时都会重新做 Base64 解码
+    private final byte[] secretBytes = TextCodec.BASE64.decode(secret);
+    private final SecretKeySpec signingKey = new SecretKeySpec(secretBytes, SignatureAlgorithm.HS512.getJcaName());
+
+    // 解析器按线程复用，避免每次解析都重新构建
+    private final ThreadLocal<JwtParser> parser = ThreadLocal.withInitial(
+            () -> Jwts.parser().setSigningKey(signingKey));
+
     public Long getUserIdFromToken(String token) {
         Claims claims = getClaimsFromToken(token);
         return Long.parseLong(claims.getSubject());
@@ -33,13 +50,76 @@ public class JwtUtil {
 
     public String getRoleCodeFromToken(String token) {
         Claims claims = getClaimsFromToken(token);
-        return claims.get("roleCode", String.class);
+        return claims.get(CLAIM_ROLE_CODE, String.class);
+    }
+
+    public long getRoleEpochFromToken(String token) {
+        return getRoleEpoch(getClaimsFromToken(token));
+    }
+
+    /**
+     * 从已解析的声明中读取角色版本号，旧令牌没有该声明时视为 0
+     */
+    public static long getRoleEpoch(Claims claims) {
+        Number roleEpoch = claims.get(CLAIM_ROLE_EPOCH, Number.class);
+        return roleEpoch == null ? 0L : roleEpoch.longValue();
     }
 
     public String generateToken(Long userId, String roleCode) {
+        return generateToken(userId, roleCode, 0L);
+    }
+
+    public String generateToken(Long userId, String roleCode, long roleEpoch) {
+        return generateToken(userId, roleCode, roleEpoch, null);
+    }
+
+    public String generateToken(Long userId, String roleCode, long roleEpoch, Map<String, Object> extraClaims) {
+        return generateToken(userId, roleCode, roleEpoch, extraClaims, expiration);
+    }
+
+    /**
+     * 按指定有效期签发令牌，用于给过期时间加随机抖动，避免大量令牌在同一时刻过期
+     */
+    public String generateToken(Long userId, String roleCode, long roleEpoch, Map<String, Object> extraClaims,
+                                long expireSeconds) {
         Map<String, Object> claims = new HashMap<>();
-        claims.put("roleCode", roleCode);
-        return doGenerateToken(claims, userId.toString());
+        if (extraClaims != null) {
+            claims.putAll(extraClaims);
+        }
+        claims.put(CLAIM_ROLE_CODE, roleCode);
+        claims.put(CLAIM_ROLE_EPOCH, roleEpoch);
+        return doGenerateToken(claims, userId.toString(), expireSeconds);
+    }
+
+    /**
+     * 默认有效期（秒）
+     */
+    public long getExpirationSeconds() {
+        return expiration;
+    }
+
+    /**
+     * 默认有效期减去随机提前量，分散同一时刻签发的令牌的过期和刷新时间点
+     *
+     * @param maxJitterSeconds 随机提前量上限（秒），不超过有效期的一半
+     * @return 有效期（秒）
+     */
+    public long getJitteredExpirationSeconds(long maxJitterSeconds) {
+        long jitter = Math.min(maxJitterSeconds, expiration / 2);
+        if (jitter <= 0) {
+            return expiration;
+        }
+        return expiration - ThreadLocalRandom.current().nextLong(jitter + 1);
+    }
+
+    /**
+     * 校验签名和有效期并返回声明，一次解析即可取出全部信息
+     *
+     * @param token 令牌
+     * @return 声明
+     */
+    public Claims parseToken(String token) {
+        return getClaimsFromToken(token);
     }
 
     public Boolean isTokenExpired(String token) {
@@ -50,7 +130,9 @@ public class JwtUtil {
 
     public Boolean validateToken(String token) {
         try {
-            return !isTokenExpired(token);
+            // 解析时已校验签名和有效期
+            getClaimsFromToken(token);
+            return true;
         } catch (Exception e) {
             log.error("JWT验证失败: {}", e.getMessage());
             return false;
@@ -58,22 +140,21 @@ public class JwtUtil {
     }
 
     private Claims getClaimsFromToken(String token) {
-        return Jwts.parser()
-                .setSigningKey(secret)
+        return parser.get()
                 .parseClaimsJws(token)
                 .getBody();
     }
 
-    private String doGenerateToken(Map<String, Object> claims, String subject) {
+    private String doGenerateToken(Map<String, Object> claims, String subject, long expireSeconds) {
         Date now = new Date();
-        Date expirationDate = new Date(now.getTime() + expiration * 1000);
+        Date expirationDate = new Date(now.getTime() + expireSeconds * 1000);
 
         return Jwts.builder()
                 .setClaims(claims)
                 .setSubject(subject)
                 .setIssuedAt(now)
                 .setExpiration(expirationDate)
-                .signWith(SignatureAlgorithm.HS512, secret)
+                .signWith(SignatureAlgorithm.HS512, signingKey)
                 .compact();
     }
 }
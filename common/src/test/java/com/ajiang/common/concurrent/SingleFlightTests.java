@@ -0,0 +1,132 @@
+package com.ajiang.common.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTests {
+
+    private static final int CALLERS = 8;
+
+    private final SingleFlight<String, Object> singleFlight = new SingleFlight<>("test");
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentCallersShareOneExecution() throws Exception {
+        Object value = new Object();
+        List<Object> results = runConcurrently("user:1", () -> value);
+
+        assertEquals(1, loads.get());
+        for (Object result : results) {
+            assertSame(value, result);
+        }
+        assertEquals(1, singleFlight.executedCount());
+        assertEquals(CALLERS - 1, singleFlight.collapsedCount());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void concurrentCallersShareTheFailure() throws Exception {
+        IllegalStateException failure = new IllegalStateException("下游不可用");
+        List<Object> results = runConcurrently("user:1", () -> {
+            throw failure;
+        });
+
+        assertEquals(1, loads.get());
+        for (Object result : results) {
+            assertSame(failure, result);
+        }
+        // 失败后移除进行中的加载，下一次调用重新执行
+        assertEquals(0, singleFlight.inFlightCount());
+        Object value = new Object();
+        assertSame(value, singleFlight.execute("user:1", () -> value));
+        assertEquals(2, singleFlight.executedCount());
+        assertEquals(CALLERS - 1, singleFlight.collapsedCount());
+    }
+
+    @Test
+    void sequentialCallsAndDifferentKeysAreNotCollapsed() {
+        assertEquals("a", singleFlight.execute("user:1", () -> "a"));
+        assertEquals("b", singleFlight.execute("user:1", () -> "b"));
+        assertEquals("c", singleFlight.execute("user:2", () -> "c"));
+
+        assertEquals(3, singleFlight.executedCount());
+        assertEquals(0, singleFlight.collapsedCount());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void loaderExceptionIsRethrownToTheExecutingCaller() {
+        IllegalArgumentException failure = new IllegalArgumentException("参数错误");
+
+        assertSame(failure, assertThrows(IllegalArgumentException.class,
+                () -> singleFlight.execute("user:1", () -> {
+                    throw failure;
+                })));
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    /**
+     * 同一个键并发调用：加载阻塞到其余调用方全部合并进来后才返回
+     *
+     * @return 每个调用方的结果，抛出异常的调用方为异常本身
+     */
+    private List<Object> runConcurrently(String key, Supplier<Object> loader) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                futures.add(pool.submit(() -> singleFlight.execute(key, () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return loader.get();
+                })));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (singleFlight.collapsedCount() < CALLERS - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(CALLERS - 1, singleFlight.collapsedCount());
+            assertEquals(1, singleFlight.inFlightCount());
+            release.countDown();
+
+            List<Object> results = new ArrayList<>();
+            for (Future<Object> future : futures) {
+                try {
+                    results.add(future.get(5, TimeUnit.SECONDS));
+                } catch (ExecutionException e) {
+                    results.add(e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
 /**
@@ -17,6 +18,7 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 @SpringBootApplication(scanBasePackages = { "com.ajiang.permissionservice", "com.ajiang.common" })
 @EnableDiscoveryClient
 @EnableTransactionManagement
+@EnableScheduling
 @MapperScan("com.ajiang.permissionservice.mapper")
 public class PermissionServiceApplication {
 
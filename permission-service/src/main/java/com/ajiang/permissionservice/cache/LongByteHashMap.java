@@ -0,0 +1,204 @@
+package com.ajiang.permissionservice.cache;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * long -> byte 的开放寻址哈希表（线性探测）
+ * 键和值分别存放在 long[] 和 byte[] 中，不装箱、没有 Entry 对象，每个槽位 9 字节，
+ * 负载因子 0.75 时每个键约占 12 字节。
+ * 写入持有写锁，读取使用乐观读，没有写入时读取不加锁。
+ * 只支持写入和覆盖，不支持删除：需要删除时整表重建后替换
+ */
+public class LongByteHashMap {
+
+    // 空槽位标记；键 0 单独存放
+    private static final long EMPTY_KEY = 0L;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private static final int MIN_CAPACITY = 16;
+
+    // 键、值数组和掩码放在同一个对象中，乐观读取时一次性拿到一致的引用，不会越界
+    private static final class Table {
+        private final long[] keys;
+        private final byte[] values;
+        private final int mask;
+
+        Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new byte[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private final StampedLock lock = new StampedLock();
+
+    private volatile Table table;
+
+    private volatile int size;
+
+    private volatile boolean hasZeroKey;
+
+    private volatile byte zeroValue;
+
+    /**
+     * @param expectedSize 预计的键数量，按此预分配避免加载过程中扩容
+     */
+    public LongByteHashMap(int expectedSize) {
+        this.table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * 查询键对应的值
+     *
+     * @param key          键
+     * @param defaultValue 键不存在时返回的值
+     * @return 值
+     */
+    public byte get(long key, byte defaultValue) {
+        long stamp = lock.tryOptimisticRead();
+        byte value = doGet(key, defaultValue);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+        stamp = lock.readLock();
+        try {
+            return doGet(key, defaultValue);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 写入或覆盖
+     *
+     * @param key   键
+     * @param value 值
+     */
+    public void put(long key, byte value) {
+        long stamp = lock.writeLock();
+        try {
+            if (key == EMPTY_KEY) {
+                if (!hasZeroKey) {
+                    size++;
+                }
+                zeroValue = value;
+                hasZeroKey = true;
+                return;
+            }
+            Table current = table;
+            int index = indexOf(current, key);
+            if (current.keys[index] == key) {
+                current.values[index] = value;
+                return;
+            }
+            if ((size + 1) > (current.keys.length * LOAD_FACTOR)) {
+                current = resize(current);
+                index = indexOf(current, key);
+            }
+            current.values[index] = value;
+            current.keys[index] = key;
+            size++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 遍历全部键值，遍历期间持有读锁
+     *
+     * @param consumer 键值处理
+     */
+    public void forEach(LongByteConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            if (hasZeroKey) {
+                consumer.accept(EMPTY_KEY, zeroValue);
+            }
+            Table current = table;
+            for (int i = 0; i < current.keys.length; i++) {
+                if (current.keys[i] != EMPTY_KEY) {
+                    consumer.accept(current.keys[i], current.values[i]);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 键值数组占用的内存（字节）
+     */
+    public long memoryBytes() {
+        return table.keys.length * (long) (Long.BYTES + Byte.BYTES);
+    }
+
+    private byte doGet(long key, byte defaultValue) {
+        if (key == EMPTY_KEY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        Table current = table;
+        int index = mix(key) & current.mask;
+        // 探测次数不超过容量，乐观读期间表被修改时也不会死循环
+        for (int probes = 0; probes <= current.mask; probes++) {
+            long existing = current.keys[index];
+            if (existing == key) {
+                return current.values[index];
+            }
+            if (existing == EMPTY_KEY) {
+                return defaultValue;
+            }
+            index = (index + 1) & current.mask;
+        }
+        return defaultValue;
+    }
+
+    private static int indexOf(Table current, long key) {
+        int index = mix(key) & current.mask;
+        while (current.keys[index] != EMPTY_KEY && current.keys[index] != key) {
+            index = (index + 1) & current.mask;
+        }
+        return index;
+    }
+
+    private Table resize(Table old) {
+        Table resized = new Table(old.keys.length << 1);
+        for (int i = 0; i < old.keys.length; i++) {
+            long key = old.keys[i];
+            if (key != EMPTY_KEY) {
+                int index = indexOf(resized, key);
+                resized.keys[index] = key;
+                resized.values[index] = old.values[i];
+            }
+        }
+        table = resized;
+        return resized;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR);
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // 雪花ID的低位变化有规律，混合高低位后再取槽位
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * 键值遍历回调
+     */
+    @FunctionalInterface
+    public interface LongByteConsumer {
+        void accept(long key, byte value);
+    }
+}
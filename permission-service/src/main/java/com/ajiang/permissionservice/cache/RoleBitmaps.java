@@ -0,0 +1,157 @@
+package com.ajiang.permissionservice.cache;
+
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+
+/**
+ * 按角色划分的用户ID压缩位图
+ * 每个角色一个 Roaring 位图，另有一个全部用户的位图。位图内的用户ID有序，
+ * 总数是一次基数查询，第 N 页是从偏移量开始的 select，分页开销只与页大小有关，与用户总数无关。
+ * Roaring64NavigableMap 在 rank/select 时会更新内部的累计基数缓存，读操作也不是线程安全的，
+ * 因此全部方法互斥；单次操作只涉及一页数据，持锁时间很短
+ */
+public class RoleBitmaps {
+
+    private static final int MAX_ROLE_ID = 255;
+
+    // 下标为角色ID
+    private final Roaring64NavigableMap[] byRole = new Roaring64NavigableMap[MAX_ROLE_ID + 1];
+
+    private final Roaring64NavigableMap allUsers = new Roaring64NavigableMap();
+
+    /**
+     * 用户角色从 oldRoleId 变为 newRoleId
+     *
+     * @param userId    用户ID
+     * @param oldRoleId 原角色ID，新绑定时为 UserRoleIndex.NO_ROLE
+     * @param newRoleId 新角色ID
+     */
+    public synchronized void assign(long userId, int oldRoleId, int newRoleId) {
+        if (oldRoleId != UserRoleIndex.NO_ROLE && byRole[oldRoleId] != null) {
+            byRole[oldRoleId].removeLong(userId);
+        }
+        if (byRole[newRoleId] == null) {
+            byRole[newRoleId] = new Roaring64NavigableMap();
+        }
+        byRole[newRoleId].addLong(userId);
+        allUsers.addLong(userId);
+    }
+
+    /**
+     * 批量加载完成后压缩位图（连续ID段转为 run 编码）
+     */
+    public synchronized void optimize() {
+        for (Roaring64NavigableMap bitmap : byRole) {
+            if (bitmap != null) {
+                bitmap.runOptimize();
+            }
+        }
+        allUsers.runOptimize();
+    }
+
+    /**
+     * 全部用户数
+     */
+    public synchronized long countAll() {
+        return allUsers.getLongCardinality();
+    }
+
+    /**
+     * 按用户ID升序分页读取全部用户
+     *
+     * @param offset 起始位置
+     * @param limit  条数
+     * @return 用户ID
+     */
+    public synchronized long[] pageAll(long offset, int limit) {
+        long end = Math.min(allUsers.getLongCardinality(), offset + limit);
+        long[] page = new long[(int) Math.max(0L, end - offset)];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = allUsers.select(offset + i);
+        }
+        return page;
+    }
+
+    /**
+     * 角色用户与一个额外用户的并集大小
+     *
+     * @param roleId      角色ID
+     * @param extraUserId 额外用户ID，为 null 时只统计角色用户
+     * @return 用户数
+     */
+    public synchronized long countUnion(int roleId, Long extraUserId) {
+        Roaring64NavigableMap bitmap = byRole[roleId];
+        long cardinality = bitmap == null ? 0L : bitmap.getLongCardinality();
+        return isExtra(bitmap, extraUserId) ? cardinality + 1 : cardinality;
+    }
+
+    /**
+     * 按用户ID升序分页读取角色用户与一个额外用户的并集，不物化并集：
+     * 额外用户不在位图中时，按它在位图中的排名插入到对应位置
+     *
+     * @param roleId      角色ID
+     * @param extraUserId 额外用户ID，为 null 时只读取角色用户
+     * @param offset      起始位置
+     * @param limit       条数
+     * @return 用户ID
+     */
+    public synchronized long[] pageUnion(int roleId, Long extraUserId, long offset, int limit) {
+        Roaring64NavigableMap bitmap = byRole[roleId];
+        long cardinality = bitmap == null ? 0L : bitmap.getLongCardinality();
+        boolean extra = isExtra(bitmap, extraUserId);
+        long total = extra ? cardinality + 1 : cardinality;
+        // 额外用户在并集中的位置：位图中比它小的用户数
+        long extraPosition = !extra ? -1L : (bitmap == null ? 0L : bitmap.rankLong(extraUserId));
+
+        long end = Math.min(total, offset + limit);
+        long[] page = new long[(int) Math.max(0L, end - offset)];
+        for (int i = 0; i < page.length; i++) {
+            long position = offset + i;
+            if (!extra || position < extraPosition) {
+                page[i] = bitmap.select(position);
+            } else if (position == extraPosition) {
+                page[i] = extraUserId;
+            } else {
+                page[i] = bitmap.select(position - 1);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * 存在位图的角色ID
+     */
+    public synchronized int[] roleIds() {
+        int count = 0;
+        for (Roaring64NavigableMap bitmap : byRole) {
+            if (bitmap != null) {
+                count++;
+            }
+        }
+        int[] roleIds = new int[count];
+        for (int roleId = 0, i = 0; roleId < byRole.length; roleId++) {
+            if (byRole[roleId] != null) {
+                roleIds[i++] = roleId;
+            }
+        }
+        return roleIds;
+    }
+
+    /**
+     * 角色位图占用的内存（字节）
+     */
+    public synchronized long memoryBytes(int roleId) {
+        Roaring64NavigableMap bitmap = byRole[roleId];
+        return bitmap == null ? 0L : bitmap.getLongSizeInBytes();
+    }
+
+    /**
+     * 全部用户位图占用的内存（字节）
+     */
+    public synchronized long allUsersMemoryBytes() {
+        return allUsers.getLongSizeInBytes();
+    }
+
+    private static boolean isExtra(Roaring64NavigableMap bitmap, Long extraUserId) {
+        return extraUserId != null && (bitmap == null || !bitmap.contains(extraUserId));
+    }
+}
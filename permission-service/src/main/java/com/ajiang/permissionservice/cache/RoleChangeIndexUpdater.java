@@ -0,0 +1,97 @@
+package com.ajiang.permissionservice.cache;
+
+import com.ajiang.common.event.RoleChangeEvent;
+import com.ajiang.common.event.RoleChangeListener;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 将其他实例发布的角色变更应用到本实例的用户角色索引
+ * 本实例发布的事件同样会收到，重复写入同一角色不改变索引。
+ * 索引加载期间收到的事件同样写入，由索引的 pendingWrites 在重建完成后重放；
+ * 按用户记录最近应用的版本号，版本号不大于已应用版本的乱序事件直接丢弃。事件丢失由索引的定时重建兜底
+ */
+@Slf4j
+@Component
+public class RoleChangeIndexUpdater implements RoleChangeListener {
+
+    @Autowired
+    private UserRoleIndex userRoleIndex;
+
+    @Autowired
+    private RoleTable roleTable;
+
+    // 已应用版本号的保留时间（毫秒），超过后由索引的定时重建保证正确性
+    @Value("${role.change.version-retention-ms:600000}")
+    private long versionRetentionMs;
+
+    // userId -> 最近应用的版本号
+    private final Map<Long, AppliedVersion> appliedVersions = new ConcurrentHashMap<>();
+
+    private static final class AppliedVersion {
+        private final long version;
+        private final long appliedAt;
+
+        AppliedVersion(long version, long appliedAt) {
+            this.version = version;
+            this.appliedAt = appliedAt;
+        }
+    }
+
+    @Override
+    public void onRoleChanged(List<RoleChangeEvent> events) {
+        // 同一批次内按目标角色分组，每个角色一次写入
+        Map<Integer, List<Long>> userIdsByRole = new HashMap<>();
+        for (RoleChangeEvent event : events) {
+            Integer roleId = roleTable.idOf(event.getNewRole());
+            if (event.getUserId() == null || roleId == null) {
+                log.warn("[角色变更] 忽略无法解析的事件: event={}", event);
+                continue;
+            }
+            if (!isNewer(event)) {
+                log.debug("[角色变更] 忽略过期的事件: event={}", event);
+                continue;
+            }
+            userIdsByRole.computeIfAbsent(roleId, k -> new ArrayList<>()).add(event.getUserId());
+        }
+        userIdsByRole.forEach((roleId, userIds) -> userRoleIndex.afterCommitPut(userIds, roleId));
+    }
+
+    /**
+     * 定期清理过期的版本记录
+     */
+    @Scheduled(fixedDelayString = "${role.change.version-retention-ms:600000}")
+    public void evictAppliedVersions() {
+        long expireBefore = System.currentTimeMillis() - versionRetentionMs;
+        appliedVersions.values().removeIf(applied -> applied.appliedAt < expireBefore);
+    }
+
+    /**
+     * 判断事件是否比已应用的版本新，是则记录为已应用
+     * 没有版本号的事件（版本号递增失败）总是应用，但不更新记录
+     */
+    private boolean isNewer(RoleChangeEvent event) {
+        Long version = event.getVersion();
+        if (version == null) {
+            return true;
+        }
+        boolean[] newer = {false};
+        appliedVersions.compute(event.getUserId(), (userId, applied) -> {
+            if (applied != null && applied.version >= version) {
+                return applied;
+            }
+            newer[0] = true;
+            return new AppliedVersion(version, System.currentTimeMillis());
+        });
+        return newer[0];
+    }
+}
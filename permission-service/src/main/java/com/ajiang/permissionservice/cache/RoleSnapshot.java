@@ -0,0 +1,74 @@
+package com.ajiang.permissionservice.cache;
+
+import com.ajiang.permissionservice.entity.Role;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 角色表的不可变快照
+ * 角色ID是很小的整数，角色码按角色ID直接存放在数组中，查找只需一次数组下标访问
+ */
+public final class RoleSnapshot {
+
+    static final RoleSnapshot EMPTY = new RoleSnapshot(new String[0], Collections.emptyMap());
+
+    // 下标为角色ID
+    private final String[] codesById;
+
+    private final Map<String, Integer> idsByCode;
+
+    private RoleSnapshot(String[] codesById, Map<String, Integer> idsByCode) {
+        this.codesById = codesById;
+        this.idsByCode = idsByCode;
+    }
+
+    /**
+     * 由角色表全部记录构建快照
+     *
+     * @param roles 角色记录
+     * @return 快照
+     */
+    static RoleSnapshot of(List<Role> roles) {
+        int maxRoleId = -1;
+        for (Role role : roles) {
+            if (role.getRoleId() != null && role.getRoleId() >= 0) {
+                maxRoleId = Math.max(maxRoleId, role.getRoleId());
+            }
+        }
+        String[] codesById = new String[maxRoleId + 1];
+        Map<String, Integer> idsByCode = new HashMap<>(roles.size() * 2);
+        for (Role role : roles) {
+            if (role.getRoleId() != null && role.getRoleId() >= 0) {
+                codesById[role.getRoleId()] = role.getRoleCode();
+                idsByCode.put(role.getRoleCode(), role.getRoleId());
+            }
+        }
+        return new RoleSnapshot(codesById, Collections.unmodifiableMap(idsByCode));
+    }
+
+    /**
+     * @param roleId 角色ID
+     * @return 角色码，角色不存在时返回 null
+     */
+    public String codeOf(Integer roleId) {
+        if (roleId == null || roleId < 0 || roleId >= codesById.length) {
+            return null;
+        }
+        return codesById[roleId];
+    }
+
+    /**
+     * @param roleCode 角色码
+     * @return 角色ID，角色不存在时返回 null
+     */
+    public Integer idOf(String roleCode) {
+        return idsByCode.get(roleCode);
+    }
+
+    public int size() {
+        return idsByCode.size();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ajiang.permissionservice.cache;
+
+import com.ajiang.permissionservice.entity.Role;
+import com.ajiang.permissionservice.mapper.RoleMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * 进程内角色表
+ * 角色表只有几行且几乎不变，启动时整表加载为不可变快照，所有角色解析都从快照读取，不再逐次查询角色表。
+ * 快照定时整表刷新；查找不到的角色ID会触发一次同步刷新，新增的角色无需等待定时任务
+ */
+@Slf4j
+@Component
+public class RoleTable {
+
+    @Autowired
+    private RoleMapper roleMapper;
+
+    private volatile RoleSnapshot snapshot = RoleSnapshot.EMPTY;
+
+    @PostConstruct
+    public void init() {
+        refresh();
+    }
+
+    /**
+     * 定时刷新快照
+     */
+    @Scheduled(initialDelayString = "${role.snapshot.refresh-interval-ms:60000}",
+            fixedDelayString = "${role.snapshot.refresh-interval-ms:60000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // 刷新失败时继续使用旧快照
+            log.error("[角色快照] 定时刷新失败: error={}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 整表重新加载快照，角色表变更后调用
+     */
+    public synchronized void refresh() {
+        long startTime = System.currentTimeMillis();
+        List<Role> roles = roleMapper.selectList(null);
+        snapshot = RoleSnapshot.of(roles);
+        log.debug("[角色快照] 加载完成: count={}, 耗时={}ms", roles.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 按角色ID查询角色码
+     *
+     * @param roleId 角色ID
+     * @return 角色码，刷新后仍不存在时返回 null
+     */
+    public String codeOf(Integer roleId) {
+        String roleCode = snapshot.codeOf(roleId);
+        if (roleCode == null && roleId != null) {
+            refresh();
+            roleCode = snapshot.codeOf(roleId);
+        }
+        return roleCode;
+    }
+
+    /**
+     * 按角色码查询角色ID
+     *
+     * @param roleCode 角色码
+     * @return 角色ID，刷新后仍不存在时返回 null
+     */
+    public Integer idOf(String roleCode) {
+        Integer roleId = snapshot.idOf(roleCode);
+        if (roleId == null && roleCode != null) {
+            refresh();
+            roleId = snapshot.idOf(roleCode);
+        }
+        return roleId;
+    }
+
+    /**
+     * 当前快照，批量解析时使用同一个快照
+     */
+    public RoleSnapshot snapshot() {
+        return snapshot;
+    }
+}
@@ -0,0 +1,216 @@
+package com.ajiang.permissionservice.cache;
+
+import com.ajiang.permissionservice.mapper.UserRoleMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内用户角色索引
+ * 包含 userId -> roleId 的哈希表和按角色划分的用户ID位图，两者同时更新。
+ * 启动后流式读取 user_roles 整表构建，之后由本实例的角色写入（绑定、变更）在事务提交后增量更新，
+ * 并定时整表重建，吸收其他实例的写入和被删除的绑定。
+ * 其他实例上的角色变更最多延迟一个重建周期可见；索引尚未加载完成时调用方应回退到数据库查询
+ */
+@Slf4j
+@Component
+public class UserRoleIndex {
+
+    // 未绑定角色
+    public static final int NO_ROLE = 0;
+
+    @Autowired
+    private UserRoleMapper userRoleMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${role.index.enabled:true}")
+    private boolean enabled;
+
+    // 预计用户数，用于预分配哈希表容量
+    @Value("${role.index.expected-users:1000000}")
+    private int expectedUsers;
+
+    private volatile LongByteHashMap index = new LongByteHashMap(0);
+
+    private volatile RoleBitmaps bitmaps = new RoleBitmaps();
+
+    // 已注册内存指标的角色
+    private final Set<Integer> meteredRoleIds = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean ready;
+
+    // 整表重建期间的增量写入，重建完成后在新表上重放，避免被旧快照覆盖
+    private Map<Long, Byte> pendingWrites;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("role.index.size", this, self -> self.index.size())
+                .description("用户角色索引中的用户数")
+                .register(meterRegistry);
+        Gauge.builder("role.index.memory", this, self -> self.index.memoryBytes())
+                .description("用户角色索引占用的内存（字节）")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("role.bitmap.memory", this, self -> self.bitmaps.allUsersMemoryBytes())
+                .description("角色位图占用的内存（字节）")
+                .tag("role", "all")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 索引是否可用
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 查询用户的角色ID
+     *
+     * @param userId 用户ID
+     * @return 角色ID，未绑定时返回 NO_ROLE
+     */
+    public int roleIdOf(long userId) {
+        return index.get(userId, (byte) NO_ROLE) & 0xFF;
+    }
+
+    /**
+     * 当前的角色位图，用于可见用户查询
+     */
+    public RoleBitmaps bitmaps() {
+        return bitmaps;
+    }
+
+    /**
+     * 记录角色写入，在当前事务提交后生效，回滚的写入不会进入索引
+     *
+     * @param userIds 用户ID
+     * @param roleId  角色ID
+     */
+    public void afterCommitPut(List<Long> userIds, int roleId) {
+        afterCommit(userIds, roleId, false);
+    }
+
+    /**
+     * 记录默认角色绑定，在当前事务提交后生效
+     * 绑定语句跳过已绑定的用户，索引中同样只写入尚未绑定的用户
+     *
+     * @param userIds 用户ID
+     * @param roleId  角色ID
+     */
+    public void afterCommitBind(List<Long> userIds, int roleId) {
+        afterCommit(userIds, roleId, true);
+    }
+
+    /**
+     * 流式读取整表重建索引，启动后立即执行一次
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${role.index.reconcile-interval-ms:600000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                pendingWrites = new HashMap<>();
+            }
+            LongByteHashMap rebuilt = new LongByteHashMap(Math.max(expectedUsers, index.size()));
+            RoleBitmaps rebuiltBitmaps = new RoleBitmaps();
+            userRoleMapper.streamAll(context -> {
+                Long userId = context.getResultObject().getUserId();
+                Integer roleId = context.getResultObject().getRoleId();
+                if (userId != null && roleId != null) {
+                    apply(rebuilt, rebuiltBitmaps, userId, roleId);
+                }
+            });
+            rebuiltBitmaps.optimize();
+            synchronized (this) {
+                pendingWrites.forEach((userId, roleId) -> apply(rebuilt, rebuiltBitmaps, userId, roleId & 0xFF));
+                index = rebuilt;
+                bitmaps = rebuiltBitmaps;
+                ready = true;
+            }
+            registerBitmapGauges();
+            log.info("[角色索引] 重建完成: users={}, memory={}KB, bitmapMemory={}KB, 耗时={}ms",
+                    rebuilt.size(), rebuilt.memoryBytes() / 1024, rebuiltBitmaps.allUsersMemoryBytes() / 1024,
+                    System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            // 重建失败时继续使用旧索引
+            log.error("[角色索引] 重建失败: error={}", e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                pendingWrites = null;
+            }
+        }
+    }
+
+    private void afterCommit(List<Long> userIds, int roleId, boolean onlyIfAbsent) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(userIds, roleId, onlyIfAbsent);
+                }
+            });
+        } else {
+            put(userIds, roleId, onlyIfAbsent);
+        }
+    }
+
+    private synchronized void put(List<Long> userIds, int roleId, boolean onlyIfAbsent) {
+        LongByteHashMap currentIndex = index;
+        RoleBitmaps currentBitmaps = bitmaps;
+        for (Long userId : userIds) {
+            if (onlyIfAbsent && (currentIndex.get(userId, (byte) NO_ROLE) & 0xFF) != NO_ROLE) {
+                continue;
+            }
+            apply(currentIndex, currentBitmaps, userId, roleId);
+            if (pendingWrites != null) {
+                pendingWrites.put(userId, (byte) roleId);
+            }
+        }
+        registerBitmapGauges();
+    }
+
+    private static void apply(LongByteHashMap targetIndex, RoleBitmaps targetBitmaps, long userId, int roleId) {
+        int oldRoleId = targetIndex.get(userId, (byte) NO_ROLE) & 0xFF;
+        if (oldRoleId == roleId) {
+            return;
+        }
+        targetIndex.put(userId, (byte) roleId);
+        targetBitmaps.assign(userId, oldRoleId, roleId);
+    }
+
+    // 每个出现过的角色注册一个位图内存指标
+    private void registerBitmapGauges() {
+        for (int roleId : bitmaps.roleIds()) {
+            if (meteredRoleIds.add(roleId)) {
+                Gauge.builder("role.bitmap.memory", this, self -> self.bitmaps.memoryBytes(roleId))
+                        .description("角色位图占用的内存（字节）")
+                        .tag("role", String.valueOf(roleId))
+                        .baseUnit("bytes")
+                        .register(meterRegistry);
+            }
+        }
+    }
+}
@@ -3,12 +3,17 @@ package com.ajiang.permissionservice.controller;
 import com.ajiang.common.exception.BusinessException;
 import com.ajiang.common.model.ApiResponse;
 import com.ajiang.common.model.PageResult;
+import com.ajiang.common.security.RoleEpochStore;
 import com.ajiang.common.util.JwtUtil;
+import com.ajiang.permissionservice.dto.RoleChangeResultDto;
 import com.ajiang.permissionservice.serivce.RoleService;
+import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 权限服务控制器
@@ -29,6 +34,9 @@ public class RoleController {
     @Autowired
     JwtUtil jwtUtil;
 
+    @Autowired
+    RoleEpochStore roleEpochStore;
+
     /**
      * @description: 绑定默认角色
      * @author: ajiang
@@ -44,6 +52,24 @@ public class RoleController {
         return ApiResponse.success();
     }
 
+    /**
+     * @description: 批量绑定默认角色
+     * @author: ajiang
+     * @date: 2026/10/19 13:05
+     * @param: [userIds]
+     * @return: com.ajiang.common.model.ApiResponse<java.lang.Integer>
+     **/
+    @PostMapping("/bind/batch")
+    public ApiResponse<Integer> bindDefaultRoles(@RequestBody List<Long> userIds) {
+        log.info("批量绑定默认角色请求: count={}", userIds.size());
+        if (userIds.size() > 1000) {
+            throw new BusinessException("单次批量绑定不能超过1000个用户");
+        }
+        int inserted = roleService.bindDefaultRoles(userIds);
+        log.info("批量绑定默认角色成功: inserted={}", inserted);
+        return ApiResponse.success(inserted);
+    }
+
     /**
      * @description: 查询用户角色码
      * @author: ajiang
@@ -59,15 +85,44 @@ public class RoleController {
         return roleCode;
     }
 
+    /**
+     * @description: 签发令牌时查询用户角色码，读取数据库而不是进程内索引
+     * @author: ajiang
+     * @date: 2026/10/19 18:20
+     * @param: [userId]
+     * @return: java.lang.String
+     **/
+    @GetMapping("/code/{userId}/issue")
+    public String getUserRoleCodeForIssue(@PathVariable Long userId) {
+        log.debug("签发令牌查询用户角色码请求: userId={}", userId);
+        return roleService.getUserRoleCodeForIssue(userId);
+    }
+
+    /**
+     * @description: 批量查询用户角色码
+     * @author: ajiang
+     * @date: 2026/10/19 10:12
+     * @param: [userIds]
+     * @return: java.util.Map<java.lang.Long,java.lang.String>
+     **/
+    @PostMapping("/codes")
+    public Map<Long, String> getUserRoleCodes(@RequestBody List<Long> userIds) {
+        log.debug("批量查询用户角色码请求: count={}", userIds.size());
+        if (userIds.size() > 1000) {
+            throw new BusinessException("单次批量查询不能超过1000个用户");
+        }
+        return roleService.getUserRoleCodes(userIds);
+    }
+
     /**
      * @description: 升级管理员
      * @author: ajiang
      * @date: 2025/6/22 13:08
      * @param: [userId, request]
-     * @return: com.ajiang.common.model.ApiResponse<java.lang.Void>
+     * @return: com.ajiang.common.model.ApiResponse<com.ajiang.permissionservice.dto.RoleChangeResultDto>
      **/
     @PostMapping("/upgrade/{userId}")
-    public ApiResponse<Void> upgradeToAdmin(@PathVariable Long userId, HttpServletRequest request) {
+    public ApiResponse<RoleChangeResultDto> upgradeToAdmin(@PathVariable Long userId, HttpServletRequest request) {
         log.info("升级用户为管理员请求: userId={}", userId);
 
         // 从token获取当前用户信息并验证权限
@@ -76,9 +131,9 @@ public class RoleController {
 
         log.info("当前操作用户: userId={}, role={}", currentUserId, currentUserRole);
 
-        roleService.upgradeToAdmin(currentUserId, currentUserRole, userId);
-        log.info("升级用户为管理员成功: userId={}", userId);
-        return ApiResponse.success();
+        RoleChangeResultDto result = roleService.upgradeToAdmin(currentUserId, currentUserRole, userId);
+        log.info("升级用户为管理员成功: userId={}, tokensRevoked={}", userId, result.getTokensRevoked());
+        return ApiResponse.success(result);
     }
 
     /**
@@ -86,10 +141,10 @@ public class RoleController {
      * @author: ajiang
      * @date: 2025/6/22 13:08
      * @param: [userId, request]
-     * @return: com.ajiang.common.model.ApiResponse<java.lang.Void>
+     * @return: com.ajiang.common.model.ApiResponse<com.ajiang.permissionservice.dto.RoleChangeResultDto>
      **/
     @PostMapping("/downgrade/{userId}")
-    public ApiResponse<Void> downgradeToUser(@PathVariable Long userId, HttpServletRequest request) {
+    public ApiResponse<RoleChangeResultDto> downgradeToUser(@PathVariable Long userId, HttpServletRequest request) {
         log.info("降级用户为普通用户请求: userId={}", userId);
 
         // 从token获取当前用户信息并验证权限
@@ -98,9 +153,57 @@ public class RoleController {
 
         log.info("当前操作用户: userId={}, role={}", currentUserId, currentUserRole);
 
-        roleService.downgradeToUser(currentUserId, currentUserRole, userId);
-        log.info("降级用户为普通用户成功: userId={}", userId);
-        return ApiResponse.success();
+        RoleChangeResultDto result = roleService.downgradeToUser(currentUserId, currentUserRole, userId);
+        log.info("降级用户为普通用户成功: userId={}, tokensRevoked={}", userId, result.getTokensRevoked());
+        return ApiResponse.success(result);
+    }
+
+    /**
+     * @description: 批量升级管理员
+     * @author: ajiang
+     * @date: 2026/10/19 16:40
+     * @param: [userIds, request]
+     * @return: com.ajiang.common.model.ApiResponse<java.util.List<com.ajiang.permissionservice.dto.RoleChangeResultDto>>
+     **/
+    @PostMapping("/upgrade/batch")
+    public ApiResponse<List<RoleChangeResultDto>> batchUpgradeToAdmin(@RequestBody List<Long> userIds,
+                                                                      HttpServletRequest request) {
+        log.info("批量升级用户为管理员请求: count={}", userIds.size());
+        if (userIds.size() > 1000) {
+            throw new BusinessException("单次批量变更不能超过1000个用户");
+        }
+
+        // 从token获取当前用户信息并验证权限
+        Long currentUserId = getCurrentUserIdFromToken(request);
+        String currentUserRole = getCurrentUserRoleFromToken(request);
+
+        List<RoleChangeResultDto> results = roleService.batchUpgradeToAdmin(currentUserId, currentUserRole, userIds);
+        log.info("批量升级用户为管理员完成: count={}, currentUserId={}", results.size(), currentUserId);
+        return ApiResponse.success(results);
+    }
+
+    /**
+     * @description: 批量降级普通用户
+     * @author: ajiang
+     * @date: 2026/10/19 16:40
+     * @param: [userIds, request]
+     * @return: com.ajiang.common.model.ApiResponse<java.util.List<com.ajiang.permissionservice.dto.RoleChangeResultDto>>
+     **/
+    @PostMapping("/downgrade/batch")
+    public ApiResponse<List<RoleChangeResultDto>> batchDowngradeToUser(@RequestBody List<Long> userIds,
+                                                                       HttpServletRequest request) {
+        log.info("批量降级用户为普通用户请求: count={}", userIds.size());
+        if (userIds.size() > 1000) {
+            throw new BusinessException("单次批量变更不能超过1000个用户");
+        }
+
+        // 从token获取当前用户信息并验证权限
+        Long currentUserId = getCurrentUserIdFromToken(request);
+        String currentUserRole = getCurrentUserRoleFromToken(request);
+
+        List<RoleChangeResultDto> results = roleService.batchDowngradeToUser(currentUserId, currentUserRole, userIds);
+        log.info("批量降级用户为普通用户完成: count={}, currentUserId={}", results.size(), currentUserId);
+        return ApiResponse.success(results);
     }
 
     /**
@@ -185,17 +288,25 @@ public class RoleController {
     /**
      * AI
      * 从token中获取当前用户角色
+     * 令牌签发后发生过角色变更（角色版本号落后）时拒绝使用令牌中的角色
      *
      * @param request HTTP请求对象
      * @return 当前用户角色
      */
     private String getCurrentUserRoleFromToken(HttpServletRequest request) {
+        Claims claims;
         try {
             String token = getTokenFromRequest(request);
-            return jwtUtil.getRoleCodeFromToken(token);
+            claims = jwtUtil.parseToken(token);
         } catch (Exception e) {
             log.error("获取当前用户角色失败: {}", e.getMessage());
             throw new BusinessException("获取当前用户角色信息失败");
         }
+        Long userId = Long.parseLong(claims.getSubject());
+        if (JwtUtil.getRoleEpoch(claims) < roleEpochStore.currentEpoch(userId)) {
+            log.warn("令牌签发后角色已变更: userId={}", userId);
+            throw new BusinessException("用户角色已变更，请重新登录");
+        }
+        return claims.get(JwtUtil.CLAIM_ROLE_CODE, String.class);
     }
 }
@@ -0,0 +1,32 @@
+package com.ajiang.permissionservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 批量角色变更中单个用户的结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoleChangeResultDto {
+
+    private Long userId;
+
+    private Boolean success;
+
+    // 失败原因或提示，成功且旧令牌已吊销时为 null
+    private String message;
+
+    // 变更前签发的令牌是否已失效（角色版本号已递增），失败时为 null
+    private Boolean tokensRevoked;
+
+    public static RoleChangeResultDto success(Long userId) {
+        return new RoleChangeResultDto(userId, true, null, true);
+    }
+
+    public static RoleChangeResultDto failure(Long userId, String message) {
+        return new RoleChangeResultDto(userId, false, message, null);
+    }
+}
@@ -2,10 +2,82 @@ package com.ajiang.permissionservice.mapper;
 
 import com.ajiang.permissionservice.entity.UserRole;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
 @Mapper
 public interface UserRoleMapper extends BaseMapper<UserRole> {
+
+    /**
+     * 用户未绑定角色时插入绑定（单条SQL，幂等）
+     * 依赖 user_roles.user_id 上的唯一索引：已绑定的用户被忽略，并发重试也不会产生重复绑定
+     *
+     * @param userId 用户ID
+     * @param roleId 角色ID
+     * @return 插入行数，已绑定时为 0
+     */
+    @Insert("INSERT IGNORE INTO user_roles (user_id, role_id) VALUES (#{userId}, #{roleId})")
+    int insertIgnore(@Param("userId") Long userId, @Param("roleId") Integer roleId);
+
+    /**
+     * 多行插入用户角色绑定（单条SQL，幂等），已绑定的用户被忽略
+     *
+     * @param userIds 用户ID列表
+     * @param roleId  角色ID
+     * @return 插入行数
+     */
+    @Insert("<script>"
+            + "INSERT IGNORE INTO user_roles (user_id, role_id) VALUES "
+            + "<foreach collection='userIds' item='userId' separator=','>(#{userId}, #{roleId})</foreach>"
+            + "</script>")
+    int insertBatch(@Param("userIds") List<Long> userIds, @Param("roleId") Integer roleId);
+
+    /**
+     * 多行插入用户角色绑定（普通 INSERT），用于 Seata 全局事务内：调用方需先过滤已绑定的用户
+     *
+     * @param userIds 用户ID列表
+     * @param roleId  角色ID
+     * @return 插入行数
+     */
+    @Insert("<script>"
+            + "INSERT INTO user_roles (user_id, role_id) VALUES "
+            + "<foreach collection='userIds' item='userId' separator=','>(#{userId}, #{roleId})</foreach>"
+            + "</script>")
+    int insertAll(@Param("userIds") List<Long> userIds, @Param("roleId") Integer roleId);
+
+    /**
+     * 流式读取全部用户角色绑定
+     * fetchSize 为 Integer.MIN_VALUE 时 MySQL 驱动逐行返回结果，不会把整表加载到内存
+     *
+     * @param handler 逐行处理
+     */
+    @Select("SELECT user_id, role_id FROM user_roles")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(UserRole.class)
+    void streamAll(ResultHandler<UserRole> handler);
+
+    /**
+     * 批量变更用户角色（单条SQL）
+     * 条件中带上原角色，校验之后被并发修改的用户不会被覆盖
+     *
+     * @param userIds    用户ID列表
+     * @param fromRoleId 原角色ID
+     * @param toRoleId   目标角色ID
+     * @return 更新行数
+     */
+    @Update("<script>"
+            + "UPDATE user_roles SET role_id = #{toRoleId} WHERE role_id = #{fromRoleId} AND user_id IN "
+            + "<foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach>"
+            + "</script>")
+    int updateRoleBatch(@Param("userIds") List<Long> userIds, @Param("fromRoleId") Integer fromRoleId,
+                        @Param("toRoleId") Integer toRoleId);
 }
@@ -0,0 +1,125 @@
+package com.ajiang.permissionservice.mq;
+
+import com.ajiang.common.config.RabbitMQConfig;
+import com.ajiang.common.event.RoleChangeEvent;
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 角色变更事件发布
+ * 事件在事务提交后进入缓冲区，第一个事件到达后等待一个很短的合并窗口再发送，
+ * 窗口内的事件合并为一条消息（单条上限 max-batch-size），突发的批量变更不会产生大量小消息。
+ * 发送失败只记录日志：订阅方以定时重建或 TTL 兜底
+ */
+@Slf4j
+@Component
+public class RoleChangePublisher {
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Value("${role.change.publish.enabled:true}")
+    private boolean enabled;
+
+    // 合并窗口（毫秒）
+    @Value("${role.change.publish.linger-ms:10}")
+    private long lingerMs;
+
+    // 单条消息最多包含的事件数
+    @Value("${role.change.publish.max-batch-size:500}")
+    private int maxBatchSize;
+
+    private final ConcurrentLinkedQueue<RoleChangeEvent> buffer = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    private final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "role-change-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 在当前事务提交后发布事件，没有事务时立即进入缓冲区
+     *
+     * @param events 角色变更事件
+     */
+    public void publishAfterCommit(List<RoleChangeEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(events);
+                }
+            });
+        } else {
+            publish(events);
+        }
+    }
+
+    /**
+     * 立即进入缓冲区，用于已在事务提交回调中的调用方
+     * 提交回调中注册的新同步不会再被执行，不能在其中调用 publishAfterCommit
+     *
+     * @param events 角色变更事件
+     */
+    public void publish(List<RoleChangeEvent> events) {
+        if (!enabled || events.isEmpty()) {
+            return;
+        }
+        buffer.addAll(events);
+        if (flushScheduled.compareAndSet(false, true)) {
+            flushExecutor.schedule(this::flush, lingerMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush() {
+        // 先清除标记再取数据，取数据期间到达的事件会触发下一次发送，不会滞留
+        flushScheduled.set(false);
+        List<RoleChangeEvent> batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+        RoleChangeEvent event;
+        while ((event = buffer.poll()) != null) {
+            batch.add(event);
+            if (batch.size() >= maxBatchSize) {
+                send(batch);
+                batch = new ArrayList<>(Math.min(maxBatchSize, 64));
+            }
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<RoleChangeEvent> batch) {
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.ROLE_CHANGE_EXCHANGE, "", JSON.toJSONString(batch));
+            log.debug("[角色变更] 事件已发布: count={}", batch.size());
+        } catch (Exception e) {
+            log.error("[角色变更] 事件发布失败: count={}, error={}", batch.size(), e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flushExecutor.shutdown();
+        flush();
+    }
+}
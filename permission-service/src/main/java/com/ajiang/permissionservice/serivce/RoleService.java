@@ -1,6 +1,7 @@
 package com.ajiang.permissionservice.serivce;
 
 import com.ajiang.common.model.PageResult;
+import com.ajiang.permissionservice.dto.RoleChangeResultDto;
 import com.ajiang.permissionservice.entity.Role;
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -21,11 +22,74 @@ public interface RoleService extends IService<Role> {
 
     void bindDefaultRole(Long userId);
 
+    /**
+     * 批量绑定默认角色，已绑定的用户跳过
+     *
+     * @param userIds 用户ID列表
+     * @return 新绑定的用户数
+     */
+    int bindDefaultRoles(List<Long> userIds);
+
     String getUserRoleCode(Long userId);
 
-    void upgradeToAdmin(Long currentUserId, String currentUserRole, Long targetUserId);
+    /**
+     * 签发令牌时查询用户角色码，直接读取数据库，不读进程内索引
+     * 索引由异步事件更新，可能尚未应用刚提交的角色变更
+     *
+     * @param userId 用户ID
+     * @return 角色码，未绑定角色时返回默认角色 user
+     */
+    String getUserRoleCodeForIssue(Long userId);
+
+    /**
+     * 批量查询用户角色码，未绑定角色的用户返回默认角色 user
+     *
+     * @param userIds 用户ID列表
+     * @return userId -> roleCode
+     */
+    Map<Long, String> getUserRoleCodes(List<Long> userIds);
+
+    /**
+     * 升级为管理员，角色变更提交后旧令牌吊销失败时在结果中说明，不抛出异常
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param targetUserId    目标用户ID
+     * @return 变更结果
+     */
+    RoleChangeResultDto upgradeToAdmin(Long currentUserId, String currentUserRole, Long targetUserId);
+
+    /**
+     * 降级为普通用户，角色变更提交后旧令牌吊销失败时在结果中说明，不抛出异常
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param targetUserId    目标用户ID
+     * @return 变更结果
+     */
+    RoleChangeResultDto downgradeToUser(Long currentUserId, String currentUserRole, Long targetUserId);
+
+    /**
+     * 批量升级为管理员，只有普通用户会被升级，其余用户在结果中说明原因
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param targetUserIds   目标用户ID列表
+     * @return 每个用户的结果
+     */
+    List<RoleChangeResultDto> batchUpgradeToAdmin(Long currentUserId, String currentUserRole,
+                                                  List<Long> targetUserIds);
 
-    void downgradeToUser(Long currentUserId, String currentUserRole, Long targetUserId);
+    /**
+     * 批量降级为普通用户，只有管理员会被降级，其余用户在结果中说明原因
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param targetUserIds   目标用户ID列表
+     * @return 每个用户的结果
+     */
+    List<RoleChangeResultDto> batchDowngradeToUser(Long currentUserId, String currentUserRole,
+                                                   List<Long> targetUserIds);
 
     PageResult<Long> getVisibleUserIds(
             @RequestParam Long currentUserId,
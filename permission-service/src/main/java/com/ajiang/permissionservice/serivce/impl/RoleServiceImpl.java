@@ -1,26 +1,40 @@
 package com.ajiang.permissionservice.serivce.impl;
 
+import com.ajiang.common.event.RoleChangeEvent;
 import com.ajiang.common.exception.BusinessException;
 import com.ajiang.common.model.PageResult;
+import com.ajiang.common.security.RoleEpochStore;
+import com.ajiang.permissionservice.cache.RoleBitmaps;
+import com.ajiang.permissionservice.cache.RoleSnapshot;
+import com.ajiang.permissionservice.cache.RoleTable;
+import com.ajiang.permissionservice.cache.UserRoleIndex;
+import com.ajiang.permissionservice.dto.RoleChangeResultDto;
 import com.ajiang.permissionservice.entity.Role;
 import com.ajiang.permissionservice.entity.UserRole;
 import com.ajiang.permissionservice.mapper.RoleMapper;
 import com.ajiang.permissionservice.mapper.UserRoleMapper;
+import com.ajiang.permissionservice.mq.RoleChangePublisher;
 import com.ajiang.permissionservice.serivce.RoleService;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.seata.core.context.RootContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -36,12 +50,24 @@ import java.util.stream.Collectors;
 @Service
 public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements RoleService {
 
+    // 批量变更后递增角色版本号的最大尝试次数
+    private static final int BUMP_ATTEMPTS = 3;
+
+    @Autowired
+    RoleTable roleTable;
+
     @Autowired
-    RoleMapper roleMapper;
+    UserRoleIndex userRoleIndex;
 
     @Autowired
     UserRoleMapper userRoleMapper;
 
+    @Autowired
+    RoleEpochStore roleEpochStore;
+
+    @Autowired
+    RoleChangePublisher roleChangePublisher;
+
     @Override
     @Transactional(rollbackFor = Exception.class)
     public void bindDefaultRole(Long userId) {
@@ -49,40 +75,24 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         log.info("[业务开始] 绑定默认角色: userId={}", userId);
 
         try {
-            // 检查用户是否已经有角色绑定
-            long queryStartTime = System.currentTimeMillis();
-            LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.eq(UserRole::getUserId, userId);
-            long existingCount = userRoleMapper.selectCount(queryWrapper);
-            long queryTime = System.currentTimeMillis() - queryStartTime;
-            log.debug("[数据库查询] 检查用户角色绑定: userId={}, count={}, 耗时={}ms",
-                    userId, existingCount, queryTime);
+            int inserted;
+            if (RootContext.inGlobalTransaction()) {
+                // Seata AT 按插入返回的自增主键构建后镜像，INSERT IGNORE 被忽略的行没有主键，全局事务内先查询再插入
+                inserted = bindDefaultRoles(Collections.singletonList(userId), false);
+            } else {
+                // 单条语句插入默认角色绑定，已绑定的用户被忽略（依赖 user_id 唯一索引）
+                inserted = userRoleMapper.insertIgnore(userId, 2);
+            }
+            long totalTime = System.currentTimeMillis() - startTime;
 
-            if (existingCount > 0) {
-                long totalTime = System.currentTimeMillis() - startTime;
+            if (inserted == 0) {
                 log.info("[业务结束] 用户已存在角色绑定: userId={}, 总耗时={}ms", userId, totalTime);
                 return;
             }
 
-            // 插入默认角色绑定
-            long insertStartTime = System.currentTimeMillis();
-            UserRole userRole = UserRole.builder()
-                    .userId(userId)
-                    .roleId(2)
-                    .build();
-
-            int insertResult = userRoleMapper.insert(userRole);
-            long insertTime = System.currentTimeMillis() - insertStartTime;
-
-            if (insertResult <= 0) {
-                log.error("[数据库操作] 绑定默认角色失败: userId={}, roleCode=user, insertResult={}",
-                        userId, insertResult);
-                throw new BusinessException("绑定默认角色失败");
-            }
-
-            long totalTime = System.currentTimeMillis() - startTime;
-            log.info("[业务结束] 绑定默认角色成功: userId={}, roleId={}, roleCode=user, 插入耗时={}ms, 总耗时={}ms",
-                    userId, userRole.getRoleId(), insertTime, totalTime);
+            userRoleIndex.afterCommitBind(Collections.singletonList(userId), 2);
+            log.info("[业务结束] 绑定默认角色成功: userId={}, roleId=2, roleCode=user, 总耗时={}ms",
+                    userId, totalTime);
 
         } catch (Exception e) {
             long totalTime = System.currentTimeMillis() - startTime;
@@ -92,47 +102,95 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         }
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public int bindDefaultRoles(List<Long> userIds) {
+        long startTime = System.currentTimeMillis();
+        if (CollectionUtils.isEmpty(userIds)) {
+            return 0;
+        }
+        log.info("[业务开始] 批量绑定默认角色: count={}", userIds.size());
+
+        List<Long> toBind = userIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        int inserted = bindDefaultRoles(toBind, !RootContext.inGlobalTransaction());
+        if (inserted > 0) {
+            userRoleIndex.afterCommitBind(toBind, 2);
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.info("[业务结束] 批量绑定默认角色成功: requested={}, inserted={}, 总耗时={}ms",
+                userIds.size(), inserted, totalTime);
+        return inserted;
+    }
+
+    /**
+     * 插入默认角色绑定
+     *
+     * @param userIds     去重后的用户ID
+     * @param ignoreBound true 时单条多行 INSERT IGNORE，已绑定的用户被忽略；
+     *                    false 时先一次IN查询过滤已绑定的用户再普通插入，用于 Seata 全局事务内
+     * @return 插入行数
+     */
+    private int bindDefaultRoles(List<Long> userIds, boolean ignoreBound) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        if (ignoreBound) {
+            return userRoleMapper.insertBatch(userIds, 2);
+        }
+        Set<Long> boundUserIds = selectRoleIds(userIds).keySet();
+        List<Long> unbound = userIds.stream()
+                .filter(userId -> !boundUserIds.contains(userId))
+                .collect(Collectors.toList());
+        return unbound.isEmpty() ? 0 : userRoleMapper.insertAll(unbound, 2);
+    }
+
     @Override
     public String getUserRoleCode(Long userId) {
         long startTime = System.currentTimeMillis();
         log.debug("[业务开始] 查询用户角色码: userId={}", userId);
 
         try {
-            // 查询用户角色关系
-            long userRoleQueryStart = System.currentTimeMillis();
-            LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
-            queryWrapper.select(UserRole::getRoleId)
-                    .eq(UserRole::getUserId, userId);
-            UserRole userRole = userRoleMapper.selectOne(queryWrapper);
-            long userRoleQueryTime = System.currentTimeMillis() - userRoleQueryStart;
-
-            log.debug("[数据库查询] 用户角色关系: userId={}, roleId={}, 耗时={}ms",
-                    userId, userRole != null ? userRole.getRoleId() : null, userRoleQueryTime);
+            Integer roleId;
+            if (userRoleIndex.isReady()) {
+                // 从进程内索引读取，不查询数据库
+                int indexedRoleId = userRoleIndex.roleIdOf(userId);
+                roleId = indexedRoleId == UserRoleIndex.NO_ROLE ? null : indexedRoleId;
+            } else {
+                // 索引加载完成前查询用户角色关系
+                long userRoleQueryStart = System.currentTimeMillis();
+                LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
+                queryWrapper.select(UserRole::getRoleId)
+                        .eq(UserRole::getUserId, userId);
+                UserRole userRole = userRoleMapper.selectOne(queryWrapper);
+                long userRoleQueryTime = System.currentTimeMillis() - userRoleQueryStart;
+                roleId = userRole != null ? userRole.getRoleId() : null;
+
+                log.debug("[数据库查询] 用户角色关系: userId={}, roleId={}, 耗时={}ms",
+                        userId, roleId, userRoleQueryTime);
+            }
 
-            if (userRole == null) {
+            if (roleId == null) {
                 long totalTime = System.currentTimeMillis() - startTime;
                 log.warn("[业务结束] 用户未绑定任何角色，返回默认角色: userId={}, defaultRole=user, 总耗时={}ms",
                         userId, totalTime);
                 return "user";
             }
 
-            // 查询角色信息
-            long roleQueryStart = System.currentTimeMillis();
-            Role role = roleMapper.selectById(userRole.getRoleId());
-            long roleQueryTime = System.currentTimeMillis() - roleQueryStart;
-
-            log.debug("[数据库查询] 角色信息: roleId={}, roleCode={}, 耗时={}ms",
-                    userRole.getRoleId(), role != null ? role.getRoleCode() : null, roleQueryTime);
-
-            if (role == null) {
-                log.error("[数据异常] 角色信息不存在: userId={}, roleId={}", userId, userRole.getRoleId());
+            // 从角色快照解析角色码，不查询角色表
+            String roleCode = roleTable.codeOf(roleId);
+            if (roleCode == null) {
+                log.error("[数据异常] 角色信息不存在: userId={}, roleId={}", userId, roleId);
                 throw new BusinessException("角色信息不存在");
             }
 
             long totalTime = System.currentTimeMillis() - startTime;
             log.debug("[业务结束] 查询用户角色码成功: userId={}, roleCode={}, 总耗时={}ms",
-                    userId, role.getRoleCode(), totalTime);
-            return role.getRoleCode();
+                    userId, roleCode, totalTime);
+            return roleCode;
 
         } catch (Exception e) {
             long totalTime = System.currentTimeMillis() - startTime;
@@ -142,6 +200,71 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         }
     }
 
+    @Override
+    public String getUserRoleCodeForIssue(Long userId) {
+        long startTime = System.currentTimeMillis();
+        // 不读进程内索引：其他实例提交的角色变更通过异步事件或定时重建才会应用到本实例的索引，
+        // 调用方已读到新的角色版本号，读到旧角色会签发携带旧角色和新版本号的令牌
+        LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(UserRole::getRoleId)
+                .eq(UserRole::getUserId, userId);
+        UserRole userRole = userRoleMapper.selectOne(queryWrapper);
+        if (userRole == null) {
+            log.warn("[业务结束] 签发令牌时用户未绑定任何角色，返回默认角色: userId={}", userId);
+            return "user";
+        }
+
+        String roleCode = roleTable.codeOf(userRole.getRoleId());
+        if (roleCode == null) {
+            log.error("[数据异常] 角色信息不存在: userId={}, roleId={}", userId, userRole.getRoleId());
+            throw new BusinessException("角色信息不存在");
+        }
+        log.debug("[数据库查询] 签发令牌查询用户角色码: userId={}, roleCode={}, 耗时={}ms",
+                userId, roleCode, System.currentTimeMillis() - startTime);
+        return roleCode;
+    }
+
+    @Override
+    public Map<Long, String> getUserRoleCodes(List<Long> userIds) {
+        long startTime = System.currentTimeMillis();
+        if (CollectionUtils.isEmpty(userIds)) {
+            return Collections.emptyMap();
+        }
+        log.debug("[业务开始] 批量查询用户角色码: count={}", userIds.size());
+
+        // 整批使用同一个角色快照
+        RoleSnapshot roleSnapshot = roleTable.snapshot();
+
+        Map<Long, String> result = new HashMap<>(userIds.size() * 2);
+        if (userRoleIndex.isReady()) {
+            for (Long userId : userIds) {
+                String roleCode = roleSnapshot.codeOf(userRoleIndex.roleIdOf(userId));
+                if (roleCode != null) {
+                    result.put(userId, roleCode);
+                }
+            }
+        } else {
+            // 索引加载完成前一次IN查询获取全部用户角色关系
+            LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(UserRole::getUserId, UserRole::getRoleId)
+                    .in(UserRole::getUserId, userIds);
+            for (UserRole userRole : userRoleMapper.selectList(queryWrapper)) {
+                String roleCode = roleSnapshot.codeOf(userRole.getRoleId());
+                if (roleCode != null) {
+                    result.put(userRole.getUserId(), roleCode);
+                }
+            }
+        }
+        // 未绑定角色的用户与单个查询保持一致，返回默认角色
+        for (Long userId : userIds) {
+            result.putIfAbsent(userId, "user");
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.debug("[业务结束] 批量查询用户角色码成功: count={}, 总耗时={}ms", result.size(), totalTime);
+        return result;
+    }
+
     private void changeUserRole(Long userId, int roleId) {
 
         LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
@@ -174,12 +297,15 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
             throw new BusinessException("更新用户角色失败");
         }
 
+        userRoleIndex.afterCommitPut(Collections.singletonList(userId), roleId);
+
         log.debug("[数据库操作] 更新用户角色成功: userId={}, targetRoleId={}, 耗时={}ms",
                 userId, roleId, updateTime);
     }
 
     @Override
-    public void upgradeToAdmin(Long currentUserId, String currentUserRole, Long targetUserId) {
+    @Transactional(rollbackFor = Exception.class)
+    public RoleChangeResultDto upgradeToAdmin(Long currentUserId, String currentUserRole, Long targetUserId) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 升级用户为管理员: currentUserId={}, currentUserRole={}, targetUserId={}",
                 currentUserId, currentUserRole, targetUserId);
@@ -204,9 +330,14 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
             changeUserRole(targetUserId, 3);
             long upgradeTime = System.currentTimeMillis() - upgradeStart;
 
+            // 4. 提交后递增角色版本号并发布角色变更事件，版本号递增失败时在结果中说明，不再抛出异常
+            RoleChangeResultDto result = RoleChangeResultDto.success(targetUserId);
+            revokeAndPublishAfterCommit(Collections.singletonMap(targetUserId, result), 2, 3);
+
             long totalTime = System.currentTimeMillis() - startTime;
             log.info("[业务结束] 升级用户为管理员成功: targetUserId={}, 升级耗时={}ms, 总耗时={}ms",
                     targetUserId, upgradeTime, totalTime);
+            return result;
 
         } catch (Exception e) {
             long totalTime = System.currentTimeMillis() - startTime;
@@ -217,7 +348,8 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
     }
 
     @Override
-    public void downgradeToUser(Long currentUserId, String currentUserRole, Long targetUserId) {
+    @Transactional(rollbackFor = Exception.class)
+    public RoleChangeResultDto downgradeToUser(Long currentUserId, String currentUserRole, Long targetUserId) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 降级用户为普通用户: currentUserId={}, currentUserRole={}, targetUserId={}",
                 currentUserId, currentUserRole, targetUserId);
@@ -242,9 +374,14 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
             changeUserRole(targetUserId, 2);
             long downgradeTime = System.currentTimeMillis() - downgradeStart;
 
+            // 4. 提交后递增角色版本号并发布角色变更事件，版本号递增失败时在结果中说明，不再抛出异常
+            RoleChangeResultDto result = RoleChangeResultDto.success(targetUserId);
+            revokeAndPublishAfterCommit(Collections.singletonMap(targetUserId, result), 3, 2);
+
             long totalTime = System.currentTimeMillis() - startTime;
             log.info("[业务结束] 降级用户为普通用户成功: targetUserId={}, 降级耗时={}ms, 总耗时={}ms",
                     targetUserId, downgradeTime, totalTime);
+            return result;
 
         } catch (Exception e) {
             long totalTime = System.currentTimeMillis() - startTime;
@@ -254,6 +391,195 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         }
     }
 
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<RoleChangeResultDto> batchUpgradeToAdmin(Long currentUserId, String currentUserRole,
+                                                         List<Long> targetUserIds) {
+        return batchChangeRole(currentUserId, currentUserRole, targetUserIds, 2, 3,
+                "批量升级为管理员", "只有普通用户可以升级为管理员");
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public List<RoleChangeResultDto> batchDowngradeToUser(Long currentUserId, String currentUserRole,
+                                                          List<Long> targetUserIds) {
+        return batchChangeRole(currentUserId, currentUserRole, targetUserIds, 3, 2,
+                "批量降级为普通用户", "只有管理员可以降级为普通用户");
+    }
+
+    /**
+     * 批量变更角色：一次IN查询校验全部目标用户的当前角色，一条UPDATE变更符合条件的用户，
+     * 事务提交后批量递增角色版本号
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param targetUserIds   目标用户ID列表
+     * @param fromRoleId      允许变更的原角色ID
+     * @param toRoleId        目标角色ID
+     * @param operation       操作名称，用于日志
+     * @param ruleMessage     原角色不符合时的提示
+     * @return 每个用户的结果，顺序与请求一致（重复的用户ID只返回一次）
+     */
+    private List<RoleChangeResultDto> batchChangeRole(Long currentUserId, String currentUserRole,
+                                                      List<Long> targetUserIds, int fromRoleId, int toRoleId,
+                                                      String operation, String ruleMessage) {
+        long startTime = System.currentTimeMillis();
+        log.info("[业务开始] {}: currentUserId={}, currentUserRole={}, count={}",
+                operation, currentUserId, currentUserRole, targetUserIds.size());
+
+        // 1. 验证当前用户是否为超级管理员
+        validateSuperAdminPermission(currentUserId, currentUserRole);
+
+        List<Long> userIds = targetUserIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // 2. 一次IN查询校验全部目标用户的当前角色
+        long queryStartTime = System.currentTimeMillis();
+        Map<Long, Integer> currentRoleIds = selectRoleIds(userIds);
+        log.debug("[数据库查询] 批量查询目标用户角色: count={}, found={}, 耗时={}ms",
+                userIds.size(), currentRoleIds.size(), System.currentTimeMillis() - queryStartTime);
+
+        Map<Long, RoleChangeResultDto> results = new LinkedHashMap<>(userIds.size() * 2);
+        List<Long> eligibleUserIds = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            Integer roleId = currentRoleIds.get(userId);
+            if (roleId == null) {
+                results.put(userId, RoleChangeResultDto.failure(userId, "用户未绑定任何角色，请先绑定默认角色"));
+            } else if (roleId != fromRoleId) {
+                results.put(userId, RoleChangeResultDto.failure(userId,
+                        ruleMessage + "，当前用户角色为: " + roleTable.codeOf(roleId)));
+            } else {
+                results.put(userId, null);
+                eligibleUserIds.add(userId);
+            }
+        }
+
+        // 3. 一条UPDATE变更全部符合条件的用户
+        List<Long> changedUserIds = Collections.emptyList();
+        if (!eligibleUserIds.isEmpty()) {
+            long updateStartTime = System.currentTimeMillis();
+            int updated = userRoleMapper.updateRoleBatch(eligibleUserIds, fromRoleId, toRoleId);
+            log.debug("[数据库操作] 批量更新用户角色: eligible={}, updated={}, 耗时={}ms",
+                    eligibleUserIds.size(), updated, System.currentTimeMillis() - updateStartTime);
+            if (updated == eligibleUserIds.size()) {
+                changedUserIds = eligibleUserIds;
+            } else {
+                // 校验之后有用户的角色被并发修改，重新读取确认本次实际变更的用户
+                Map<Long, Integer> updatedRoleIds = selectRoleIds(eligibleUserIds);
+                changedUserIds = eligibleUserIds.stream()
+                        .filter(userId -> Objects.equals(updatedRoleIds.get(userId), toRoleId))
+                        .collect(Collectors.toList());
+            }
+        }
+        for (Long userId : changedUserIds) {
+            results.put(userId, RoleChangeResultDto.success(userId));
+        }
+        results.replaceAll((userId, result) ->
+                result != null ? result : RoleChangeResultDto.failure(userId, "用户角色已被并发修改，请重试"));
+
+        // 4. 提交后更新索引并递增角色版本号，变更前签发的令牌将被要求重新登录；随后发布角色变更事件
+        if (!changedUserIds.isEmpty()) {
+            userRoleIndex.afterCommitPut(changedUserIds, toRoleId);
+            Map<Long, RoleChangeResultDto> changedResults = new LinkedHashMap<>(changedUserIds.size() * 2);
+            for (Long userId : changedUserIds) {
+                changedResults.put(userId, results.get(userId));
+            }
+            revokeAndPublishAfterCommit(changedResults, fromRoleId, toRoleId);
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.info("[业务结束] {}完成: requested={}, changed={}, 总耗时={}ms",
+                operation, userIds.size(), changedUserIds.size(), totalTime);
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * 事务提交后递增角色版本号，变更前签发的令牌将被要求重新登录；随后发布角色变更事件
+     * 提交回调在响应返回前同步执行，版本号递增失败时直接修改已生成的结果，不抛出异常（角色变更已提交）
+     *
+     * @param results    已变更用户的结果，userId -> 结果
+     * @param fromRoleId 原角色ID
+     * @param toRoleId   目标角色ID
+     */
+    private void revokeAndPublishAfterCommit(Map<Long, RoleChangeResultDto> results, int fromRoleId, int toRoleId) {
+        List<Long> userIds = new ArrayList<>(results.keySet());
+        String oldRole = roleTable.codeOf(fromRoleId);
+        String newRole = roleTable.codeOf(toRoleId);
+        afterCommit(() -> {
+            Map<Long, Long> roleEpochs = bumpAllWithRetry(userIds);
+            if (roleEpochs == null) {
+                for (RoleChangeResultDto result : results.values()) {
+                    result.setTokensRevoked(false);
+                    result.setMessage("角色已变更，但旧令牌吊销失败，请强制该用户重新登录");
+                }
+                roleEpochs = Collections.emptyMap();
+            }
+            List<RoleChangeEvent> events = new ArrayList<>(userIds.size());
+            for (Long userId : userIds) {
+                events.add(new RoleChangeEvent(userId, oldRole, newRole, roleEpochs.get(userId)));
+            }
+            roleChangePublisher.publish(events);
+        });
+    }
+
+    /**
+     * 批量递增角色版本号，失败时重试
+     *
+     * @param userIds 用户ID列表
+     * @return userId -> 新版本号，重试后仍失败时返回 null
+     */
+    private Map<Long, Long> bumpAllWithRetry(List<Long> userIds) {
+        for (int attempt = 1; attempt <= BUMP_ATTEMPTS; attempt++) {
+            try {
+                return roleEpochStore.bumpAll(userIds);
+            } catch (Exception e) {
+                log.error("[角色版本] 批量递增角色版本号失败: count={}, attempt={}, error={}",
+                        userIds.size(), attempt, e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 一次IN查询读取用户的角色ID
+     *
+     * @param userIds 用户ID列表
+     * @return userId -> roleId，未绑定的用户不在结果中
+     */
+    private Map<Long, Integer> selectRoleIds(List<Long> userIds) {
+        LambdaQueryWrapper<UserRole> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.select(UserRole::getUserId, UserRole::getRoleId)
+                .in(UserRole::getUserId, userIds);
+        Map<Long, Integer> roleIds = new HashMap<>(userIds.size() * 2);
+        for (UserRole userRole : userRoleMapper.selectList(queryWrapper)) {
+            roleIds.put(userRole.getUserId(), userRole.getRoleId());
+        }
+        return roleIds;
+    }
+
+    /**
+     * 当前事务提交后执行，没有事务时立即执行
+     *
+     * @param action 操作
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
     /**
      * AI
      * @description:
@@ -267,45 +593,71 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         log.info("分页查询可见用户ID: currentUserId={}, role={}, pageNo={}, pageSize={}",
                 currentUserId, currentUserRole, pageNo, pageSize);
 
-        // 1. 构建基础查询条件
-        LambdaQueryWrapper<UserRole> wrapper = new LambdaQueryWrapper<>();
-        wrapper.select(UserRole::getUserId); // 只查询userId字段
-
-        // 2. 根据角色过滤
-        if ("admin".equals(currentUserRole)) {
-            // 管理员：可以查看普通用户(roleId=2)和自己(可能是roleId=3)
-            wrapper.and(w -> w.eq(UserRole::getRoleId, 2)
-                    .or().eq(UserRole::getUserId, currentUserId));
-        } else if ("super_admin".equals(currentUserRole)) {
-            // 超管：查看所有用户（无过滤条件）
-            log.debug("超管查询所有用户");
-        } else {
-            // 普通用户：只能查看自己
-            wrapper.eq(UserRole::getUserId, currentUserId);
-        }
-
-        // 3. 查询所有符合条件的用户ID并去重
-        List<UserRole> allUserRoles = userRoleMapper.selectList(wrapper);
-        List<Long> allDistinctUserIds = allUserRoles.stream()
-                .map(UserRole::getUserId)
-                .distinct()
-                .sorted() // 排序保证分页的一致性
-                .collect(Collectors.toList());
-
-        long totalDistinctUsers = allDistinctUserIds.size();
-        log.debug("去重后的总用户数: {}", totalDistinctUsers);
-
-        // 4. 对去重后的用户ID列表进行内存分页
-        int startIndex = (pageNo - 1) * pageSize;
-        int endIndex = Math.min(startIndex + pageSize, allDistinctUserIds.size());
-
         List<Long> pagedUserIds;
-        if (startIndex >= allDistinctUserIds.size()) {
-            // 超出范围，返回空列表
-            pagedUserIds = new ArrayList<>();
+        long totalDistinctUsers;
+        if (userRoleIndex.isReady()) {
+            // 从角色位图读取：总数为基数查询，当前页按排名选取，不查询数据库
+            long offset = Math.max(0L, (long) (pageNo - 1) * pageSize);
+            long[] page;
+            if ("super_admin".equals(currentUserRole)) {
+                RoleBitmaps bitmaps = userRoleIndex.bitmaps();
+                totalDistinctUsers = bitmaps.countAll();
+                page = bitmaps.pageAll(offset, pageSize);
+            } else if ("admin".equals(currentUserRole)) {
+                // 普通用户(roleId=2)与自己的并集
+                RoleBitmaps bitmaps = userRoleIndex.bitmaps();
+                Long self = isBound(currentUserId) ? currentUserId : null;
+                totalDistinctUsers = bitmaps.countUnion(2, self);
+                page = bitmaps.pageUnion(2, self, offset, pageSize);
+            } else {
+                long[] visibleUserIds = isBound(currentUserId) ? new long[]{currentUserId} : new long[0];
+                totalDistinctUsers = visibleUserIds.length;
+                page = offset == 0 ? visibleUserIds : new long[0];
+            }
+            pagedUserIds = new ArrayList<>(page.length);
+            for (long userId : page) {
+                pagedUserIds.add(userId);
+            }
         } else {
-            // 获取当前页的用户ID
-            pagedUserIds = allDistinctUserIds.subList(startIndex, endIndex);
+            // 1. 构建基础查询条件
+            LambdaQueryWrapper<UserRole> wrapper = new LambdaQueryWrapper<>();
+            wrapper.select(UserRole::getUserId); // 只查询userId字段
+
+            // 2. 根据角色过滤
+            if ("admin".equals(currentUserRole)) {
+                // 管理员：可以查看普通用户(roleId=2)和自己(可能是roleId=3)
+                wrapper.and(w -> w.eq(UserRole::getRoleId, 2)
+                        .or().eq(UserRole::getUserId, currentUserId));
+            } else if ("super_admin".equals(currentUserRole)) {
+                // 超管：查看所有用户（无过滤条件）
+                log.debug("超管查询所有用户");
+            } else {
+                // 普通用户：只能查看自己
+                wrapper.eq(UserRole::getUserId, currentUserId);
+            }
+
+            // 3. 查询所有符合条件的用户ID并去重
+            List<UserRole> allUserRoles = userRoleMapper.selectList(wrapper);
+            List<Long> allDistinctUserIds = allUserRoles.stream()
+                    .map(UserRole::getUserId)
+                    .distinct()
+                    .sorted() // 排序保证分页的一致性
+                    .collect(Collectors.toList());
+
+            totalDistinctUsers = allDistinctUserIds.size();
+            log.debug("去重后的总用户数: {}", totalDistinctUsers);
+
+            // 4. 对去重后的用户ID列表进行内存分页
+            int startIndex = (pageNo - 1) * pageSize;
+            int endIndex = Math.min(startIndex + pageSize, allDistinctUserIds.size());
+
+            if (startIndex >= allDistinctUserIds.size()) {
+                // 超出范围，返回空列表
+                pagedUserIds = new ArrayList<>();
+            } else {
+                // 获取当前页的用户ID
+                pagedUserIds = allDistinctUserIds.subList(startIndex, endIndex);
+            }
         }
 
         // 5. 构建结果
@@ -321,6 +673,15 @@ public class RoleServiceImpl extends ServiceImpl<RoleMapper, Role> implements Ro
         return pageResult;
     }
 
+    /**
+     * 用户是否已绑定角色（按索引判断）
+     *
+     * @param userId 用户ID
+     */
+    private boolean isBound(Long userId) {
+        return userId != null && userRoleIndex.roleIdOf(userId) != UserRoleIndex.NO_ROLE;
+    }
+
     /**
      * 验证超级管理员权限
      *
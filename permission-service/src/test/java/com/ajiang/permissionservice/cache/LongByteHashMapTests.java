@@ -0,0 +1,126 @@
+package com.ajiang.permissionservice.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongByteHashMapTests {
+
+    private static final byte MISSING = (byte) -1;
+
+    @Test
+    void missingKeyReturnsTheDefaultValue() {
+        LongByteHashMap map = new LongByteHashMap(4);
+        map.put(7L, (byte) 2);
+
+        assertEquals(MISSING, map.get(8L, MISSING));
+        assertEquals((byte) 0, map.get(8L, (byte) 0));
+        assertEquals((byte) 2, map.get(7L, MISSING));
+    }
+
+    @Test
+    void zeroKeyIsStoredApartFromTheEmptySlotMarker() {
+        LongByteHashMap map = new LongByteHashMap(4);
+        // 键 0 与空槽位标记相同，写入前必须返回默认值而不是 0
+        assertEquals(MISSING, map.get(0L, MISSING));
+
+        map.put(0L, (byte) 3);
+        map.put(0L, (byte) 4);
+        map.put(5L, (byte) 1);
+
+        assertEquals((byte) 4, map.get(0L, MISSING));
+        assertEquals(2, map.size());
+        Map<Long, Byte> entries = new HashMap<>();
+        map.forEach(entries::put);
+        assertEquals((byte) 4, entries.get(0L).byteValue());
+        assertEquals((byte) 1, entries.get(5L).byteValue());
+    }
+
+    @Test
+    void overwriteKeepsTheSize() {
+        LongByteHashMap map = new LongByteHashMap(4);
+        map.put(11L, (byte) 1);
+        map.put(11L, (byte) 2);
+
+        assertEquals(1, map.size());
+        assertEquals((byte) 2, map.get(11L, MISSING));
+    }
+
+    @Test
+    void growsBeyondTheInitialCapacity() {
+        LongByteHashMap map = new LongByteHashMap(1);
+        long initialMemory = map.memoryBytes();
+        for (long key = 1; key <= 10000; key++) {
+            map.put(key * 4096, (byte) (key % 3 + 1));
+        }
+
+        assertEquals(10000, map.size());
+        assertTrue(map.memoryBytes() > initialMemory);
+        for (long key = 1; key <= 10000; key++) {
+            assertEquals((byte) (key % 3 + 1), map.get(key * 4096, MISSING));
+        }
+        assertEquals(MISSING, map.get(10001L * 4096, MISSING));
+    }
+
+    @Test
+    void optimisticReadsStayConsistentWhileResizing() throws Exception {
+        // 从最小容量开始，写入过程中多次扩容
+        LongByteHashMap map = new LongByteHashMap(1);
+        int keys = 200000;
+        // 已写入完成的最大键
+        AtomicLong written = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        int readers = 4;
+        CountDownLatch started = new CountDownLatch(readers);
+        ExecutorService executor = Executors.newFixedThreadPool(readers);
+        try {
+            Future<?>[] futures = new Future<?>[readers];
+            for (int r = 0; r < readers; r++) {
+                long seed = r;
+                futures[r] = executor.submit(() -> {
+                    started.countDown();
+                    long probe = seed;
+                    while (!done.get()) {
+                        long high = written.get();
+                        if (high == 0) {
+                            continue;
+                        }
+                        // 已写入的键必须读到正确的值，尚未写入的键只能读到默认值
+                        probe = probe * 6364136223846793005L + 1442695040888963407L;
+                        long key = 1 + Math.floorMod(probe, high);
+                        assertEquals(valueOf(key), map.get(key, MISSING), "key=" + key);
+                        assertEquals(MISSING, map.get(keys + key, MISSING));
+                    }
+                });
+            }
+            started.await();
+            for (long key = 1; key <= keys; key++) {
+                map.put(key, valueOf(key));
+                written.set(key);
+            }
+            done.set(true);
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            done.set(true);
+            executor.shutdownNow();
+        }
+        assertEquals(keys, map.size());
+    }
+
+    private static byte valueOf(long key) {
+        return (byte) (key % 7 + 1);
+    }
+}
@@ -0,0 +1,138 @@
+package com.ajiang.permissionservice.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RoleBitmapsTests {
+
+    private static final int USER = 3;
+
+    private static final int ADMIN = 2;
+
+    @Test
+    void pageAllWalksUsersInAscendingOrder() {
+        RoleBitmaps bitmaps = new RoleBitmaps();
+        bitmaps.assign(30L, UserRoleIndex.NO_ROLE, USER);
+        bitmaps.assign(10L, UserRoleIndex.NO_ROLE, ADMIN);
+        bitmaps.assign(20L, UserRoleIndex.NO_ROLE, USER);
+
+        assertEquals(3, bitmaps.countAll());
+        assertArrayEquals(new long[]{10L, 20L}, bitmaps.pageAll(0, 2));
+        assertArrayEquals(new long[]{30L}, bitmaps.pageAll(2, 2));
+        assertArrayEquals(new long[0], bitmaps.pageAll(3, 2));
+        assertArrayEquals(new long[0], bitmaps.pageAll(10, 2));
+    }
+
+    @Test
+    void unionWithoutSelfPagesTheRoleOnly() {
+        RoleBitmaps bitmaps = bitmaps(USER, 10L, 20L, 30L);
+
+        assertEquals(3, bitmaps.countUnion(USER, null));
+        assertArrayEquals(new long[]{10L, 20L}, bitmaps.pageUnion(USER, null, 0, 2));
+        assertArrayEquals(new long[]{30L}, bitmaps.pageUnion(USER, null, 2, 2));
+    }
+
+    @Test
+    void selfOutsideTheRoleIsInsertedAtItsRank() {
+        RoleBitmaps bitmaps = bitmaps(USER, 10L, 20L, 30L);
+
+        // 排在最前、中间、最后
+        assertEquals(4, bitmaps.countUnion(USER, 5L));
+        assertArrayEquals(new long[]{5L, 10L, 20L, 30L}, bitmaps.pageUnion(USER, 5L, 0, 10));
+        assertArrayEquals(new long[]{10L, 15L, 20L, 30L}, bitmaps.pageUnion(USER, 15L, 0, 10));
+        assertArrayEquals(new long[]{10L, 20L, 30L, 35L}, bitmaps.pageUnion(USER, 35L, 0, 10));
+
+        // 跨页：插入位置之后的用户整体后移一位
+        assertArrayEquals(new long[]{10L, 15L}, bitmaps.pageUnion(USER, 15L, 0, 2));
+        assertArrayEquals(new long[]{20L, 30L}, bitmaps.pageUnion(USER, 15L, 2, 2));
+        assertArrayEquals(new long[]{15L, 20L}, bitmaps.pageUnion(USER, 15L, 1, 2));
+        assertArrayEquals(new long[]{35L}, bitmaps.pageUnion(USER, 35L, 3, 2));
+        assertArrayEquals(new long[0], bitmaps.pageUnion(USER, 35L, 4, 2));
+    }
+
+    @Test
+    void selfAlreadyInTheRoleIsNotDuplicated() {
+        RoleBitmaps bitmaps = bitmaps(USER, 10L, 20L, 30L);
+
+        assertEquals(3, bitmaps.countUnion(USER, 20L));
+        assertArrayEquals(new long[]{10L, 20L, 30L}, bitmaps.pageUnion(USER, 20L, 0, 10));
+    }
+
+    @Test
+    void roleWithoutBitmapContainsOnlySelf() {
+        RoleBitmaps bitmaps = bitmaps(USER, 10L);
+
+        assertEquals(0, bitmaps.countUnion(ADMIN, null));
+        assertArrayEquals(new long[0], bitmaps.pageUnion(ADMIN, null, 0, 10));
+        assertEquals(1, bitmaps.countUnion(ADMIN, 10L));
+        assertArrayEquals(new long[]{10L}, bitmaps.pageUnion(ADMIN, 10L, 0, 10));
+        assertArrayEquals(new long[0], bitmaps.pageUnion(ADMIN, 10L, 1, 10));
+    }
+
+    @Test
+    void assignMovesUsersBetweenRoles() {
+        RoleBitmaps bitmaps = bitmaps(USER, 10L, 20L);
+        bitmaps.assign(20L, USER, ADMIN);
+
+        assertArrayEquals(new long[]{10L}, bitmaps.pageUnion(USER, null, 0, 10));
+        assertArrayEquals(new long[]{20L}, bitmaps.pageUnion(ADMIN, null, 0, 10));
+        // 角色变更不改变全部用户
+        assertEquals(2, bitmaps.countAll());
+    }
+
+    @Test
+    void pagingMatchesTheMaterializedUnion() {
+        Random random = new Random(42);
+        RoleBitmaps bitmaps = new RoleBitmaps();
+        TreeSet<Long> role = new TreeSet<>();
+        for (int i = 0; i < 500; i++) {
+            // 混合连续段和稀疏ID，覆盖位图的不同容器
+            long userId = i < 250 ? 1000L + i : Math.abs(random.nextLong() % (1L << 40));
+            bitmaps.assign(userId, UserRoleIndex.NO_ROLE, USER);
+            role.add(userId);
+        }
+        bitmaps.optimize();
+
+        List<Long> selves = new ArrayList<>();
+        selves.add(null);
+        selves.add(role.first());
+        selves.add(1100L);
+        selves.add(role.first() - 1);
+        selves.add(role.last() + 1);
+        selves.add(1000L + 250);
+        for (int i = 0; i < 5; i++) {
+            selves.add(Math.abs(random.nextLong() % (1L << 40)));
+        }
+        for (Long self : selves) {
+            TreeSet<Long> union = new TreeSet<>(role);
+            if (self != null) {
+                union.add(self);
+            }
+            long[] expected = union.stream().mapToLong(Long::longValue).toArray();
+            assertEquals(expected.length, bitmaps.countUnion(USER, self));
+            for (int limit : new int[]{1, 7, 50}) {
+                for (int offset = 0; offset <= expected.length; offset += limit) {
+                    long[] page = bitmaps.pageUnion(USER, self, offset, limit);
+                    long[] expectedPage = new long[Math.min(limit, expected.length - offset)];
+                    System.arraycopy(expected, offset, expectedPage, 0, expectedPage.length);
+                    assertArrayEquals(expectedPage, page, "self=" + self + ", offset=" + offset);
+                }
+            }
+        }
+    }
+
+    private static RoleBitmaps bitmaps(int roleId, long... userIds) {
+        RoleBitmaps bitmaps = new RoleBitmaps();
+        for (long userId : userIds) {
+            bitmaps.assign(userId, UserRoleIndex.NO_ROLE, roleId);
+        }
+        return bitmaps;
+    }
+}
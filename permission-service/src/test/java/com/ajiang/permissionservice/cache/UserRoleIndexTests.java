@@ -0,0 +1,187 @@
+package com.ajiang.permissionservice.cache;
+
+import com.ajiang.permissionservice.entity.UserRole;
+import com.ajiang.permissionservice.mapper.UserRoleMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 整表重建与重建期间增量写入的重放
+ * 测试中没有事务同步，afterCommitPut/afterCommitBind 立即生效
+ */
+class UserRoleIndexTests {
+
+    private static final int ADMIN = 2;
+
+    private static final int USER = 3;
+
+    // 每次 streamAll 依次返回的行；行为 null 时执行 duringStream 模拟并发写入
+    private List<UserRole> rows = new ArrayList<>();
+
+    private Runnable duringStream = () -> {
+    };
+
+    private final UserRoleIndex index = index();
+
+    @Test
+    void reconcileLoadsTheTable() {
+        rows = rows(row(1L, USER), row(2L, USER), row(3L, ADMIN));
+        assertFalse(index.isReady());
+
+        index.reconcile();
+
+        assertTrue(index.isReady());
+        assertEquals(USER, index.roleIdOf(1L));
+        assertEquals(ADMIN, index.roleIdOf(3L));
+        assertEquals(UserRoleIndex.NO_ROLE, index.roleIdOf(4L));
+        assertEquals(3, index.bitmaps().countAll());
+        assertArrayEquals(new long[]{1L, 2L}, index.bitmaps().pageUnion(USER, null, 0, 10));
+    }
+
+    @Test
+    void writesDuringRebuildAreReplayedOverTheSnapshot() {
+        rows = rows(row(1L, USER), row(2L, USER), row(3L, ADMIN));
+        index.reconcile();
+
+        // 快照在写入提交前开始读取：用户1的旧行已读过，用户2的旧行还没读到
+        rows = rows(row(1L, USER), null, row(2L, USER), row(3L, ADMIN), row(4L, USER));
+        duringStream = () -> {
+            index.afterCommitPut(Collections.singletonList(1L), ADMIN);
+            index.afterCommitPut(Collections.singletonList(2L), ADMIN);
+            index.afterCommitBind(Collections.singletonList(5L), USER);
+            // 重建期间旧索引照常更新
+            assertEquals(ADMIN, index.roleIdOf(1L));
+            assertEquals(USER, index.roleIdOf(5L));
+        };
+        index.reconcile();
+
+        assertEquals(ADMIN, index.roleIdOf(1L));
+        assertEquals(ADMIN, index.roleIdOf(2L));
+        assertEquals(ADMIN, index.roleIdOf(3L));
+        assertEquals(USER, index.roleIdOf(4L));
+        assertEquals(USER, index.roleIdOf(5L));
+        // 位图与哈希表一致
+        assertArrayEquals(new long[]{1L, 2L, 3L}, index.bitmaps().pageUnion(ADMIN, null, 0, 10));
+        assertArrayEquals(new long[]{4L, 5L}, index.bitmaps().pageUnion(USER, null, 0, 10));
+        assertArrayEquals(new long[]{1L, 2L, 3L, 4L, 5L}, index.bitmaps().pageAll(0, 10));
+    }
+
+    @Test
+    void writesBeforeRebuildAreNotReplayed() {
+        rows = rows(row(1L, USER));
+        index.reconcile();
+        index.afterCommitPut(Collections.singletonList(1L), ADMIN);
+
+        // 重建开始前的写入已包含在快照中，之后以数据库为准（例如其他实例又改回了原角色）
+        rows = rows(row(1L, USER));
+        index.reconcile();
+
+        assertEquals(USER, index.roleIdOf(1L));
+        assertEquals(1, index.bitmaps().countUnion(USER, null));
+        assertEquals(0, index.bitmaps().countUnion(ADMIN, null));
+    }
+
+    @Test
+    void bindSkipsUsersAlreadyBound() {
+        rows = rows(row(1L, ADMIN));
+        index.reconcile();
+
+        index.afterCommitBind(Arrays.asList(1L, 2L), USER);
+
+        assertEquals(ADMIN, index.roleIdOf(1L));
+        assertEquals(USER, index.roleIdOf(2L));
+    }
+
+    @Test
+    void failedRebuildKeepsTheCurrentIndex() {
+        rows = rows(row(1L, USER));
+        index.reconcile();
+
+        rows = rows(row(1L, ADMIN), null);
+        duringStream = () -> {
+            throw new IllegalStateException("连接中断");
+        };
+        index.reconcile();
+
+        assertTrue(index.isReady());
+        assertEquals(USER, index.roleIdOf(1L));
+        // 失败的重建不再记录增量写入
+        assertNull(ReflectionTestUtils.getField(index, "pendingWrites"));
+    }
+
+    private UserRoleIndex index() {
+        UserRoleIndex userRoleIndex = new UserRoleIndex();
+        ReflectionTestUtils.setField(userRoleIndex, "userRoleMapper", mapper());
+        ReflectionTestUtils.setField(userRoleIndex, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(userRoleIndex, "enabled", true);
+        ReflectionTestUtils.setField(userRoleIndex, "expectedUsers", 16);
+        userRoleIndex.init();
+        return userRoleIndex;
+    }
+
+    @SuppressWarnings("unchecked")
+    private UserRoleMapper mapper() {
+        return (UserRoleMapper) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{UserRoleMapper.class}, (proxy, method, args) -> {
+                    if (!"streamAll".equals(method.getName())) {
+                        throw new UnsupportedOperationException("未模拟的方法: " + method.getName());
+                    }
+                    ResultHandler<UserRole> handler = (ResultHandler<UserRole>) args[0];
+                    int count = 0;
+                    for (UserRole row : rows) {
+                        if (row == null) {
+                            duringStream.run();
+                        } else {
+                            handler.handleResult(context(row, ++count));
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private static ResultContext<UserRole> context(UserRole row, int count) {
+        return new ResultContext<UserRole>() {
+            @Override
+            public UserRole getResultObject() {
+                return row;
+            }
+
+            @Override
+            public int getResultCount() {
+                return count;
+            }
+
+            @Override
+            public boolean isStopped() {
+                return false;
+            }
+
+            @Override
+            public void stop() {
+            }
+        };
+    }
+
+    private static List<UserRole> rows(UserRole... rows) {
+        return new ArrayList<>(Arrays.asList(rows));
+    }
+
+    private static UserRole row(Long userId, Integer roleId) {
+        return UserRole.builder().userId(userId).roleId(roleId).build();
+    }
+}
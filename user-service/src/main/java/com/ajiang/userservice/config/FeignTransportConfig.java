@@ -0,0 +1,81 @@
+package com.ajiang.userservice.config;
+
+import com.ajiang.userservice.feignclient.MethodOptionsCapability;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.openfeign.support.FeignHttpClientProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feign 连接池传输配置
+ * feign.httpclient.enabled=true（默认）时 Spring Cloud 使用 Apache HttpClient 连接池替代 HttpURLConnection：
+ * 连接复用（keep-alive），总连接数和单个实例（route）连接数受 feign.httpclient.max-connections*
+ * 限制。这里自行创建连接池和 HttpClient，补充从连接池获取连接的超时、闲置连接回收、连接池指标和按方法的超时
+ */
+@Configuration
+@EnableConfigurationProperties(FeignTransportProperties.class)
+public class FeignTransportConfig {
+
+    @Bean
+    public MethodOptionsCapability methodOptionsCapability(FeignTransportProperties properties) {
+        return new MethodOptionsCapability(properties);
+    }
+
+    /**
+     * 连接池：总连接数和单个实例（route）的连接数上限、连接存活时间沿用 feign.httpclient.*
+     */
+    @Bean
+    @ConditionalOnProperty(name = "feign.httpclient.enabled", matchIfMissing = true)
+    public PoolingHttpClientConnectionManager feignConnectionManager(FeignHttpClientProperties httpClientProperties) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                httpClientProperties.getTimeToLive(), httpClientProperties.getTimeToLiveUnit());
+        connectionManager.setMaxTotal(httpClientProperties.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(httpClientProperties.getMaxConnectionsPerRoute());
+        // 复用闲置超过该时间的连接前先检查是否已被服务端关闭
+        connectionManager.setValidateAfterInactivity(2000);
+        return connectionManager;
+    }
+
+    /**
+     * 替代 Spring Cloud 默认创建的 HttpClient（提供该 Bean 后默认配置不再生效）：
+     * 连接池耗尽时最多等待 pool-timeout-ms，避免单个实例变慢时请求线程在连接池上无限排队；
+     * 后台线程定期关闭过期和闲置的连接
+     */
+    @Bean
+    @ConditionalOnProperty(name = "feign.httpclient.enabled", matchIfMissing = true)
+    public CloseableHttpClient feignHttpClient(PoolingHttpClientConnectionManager feignConnectionManager,
+                                               FeignHttpClientProperties httpClientProperties,
+                                               FeignTransportProperties transportProperties) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(httpClientProperties.getConnectionTimeout())
+                .setConnectionRequestTimeout(transportProperties.getPoolTimeoutMs())
+                .setRedirectsEnabled(httpClientProperties.isFollowRedirects())
+                .build();
+        return HttpClientBuilder.create()
+                .setConnectionManager(feignConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableCookieManagement()
+                .evictExpiredConnections()
+                .evictIdleConnections(transportProperties.getMaxIdleSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 连接池指标：httpcomponents.httpclient.pool.total.connections（state=leased/available）、
+     * httpcomponents.httpclient.pool.total.pending、httpcomponents.httpclient.pool.total.max
+     */
+    @Bean
+    @ConditionalOnProperty(name = "feign.httpclient.enabled", matchIfMissing = true)
+    public MeterBinder feignConnectionPoolMetrics(PoolingHttpClientConnectionManager feignConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(feignConnectionManager, "feign");
+    }
+}
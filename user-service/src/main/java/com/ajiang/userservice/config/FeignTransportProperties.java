@@ -0,0 +1,33 @@
+package com.ajiang.userservice.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Feign 传输配置
+ * 连接池大小、连接存活时间沿用 feign.httpclient.*，这里只配置 Spring Cloud 没有提供的部分
+ */
+@Data
+@ConfigurationProperties(prefix = "user.feign")
+public class FeignTransportProperties {
+
+    // 从连接池获取连接的最长等待时间（毫秒），超过后立即失败，不无限排队
+    private int poolTimeoutMs = 1000;
+
+    // 闲置超过该时间（秒）的连接由后台线程关闭
+    private long maxIdleSeconds = 30;
+
+    // 按方法名配置的超时，未配置的方法使用 feign.client.config 中的客户端级超时
+    private Map<String, MethodTimeout> methods = new HashMap<>();
+
+    @Data
+    public static class MethodTimeout {
+
+        private Integer connectTimeoutMs;
+
+        private Integer readTimeoutMs;
+    }
+}
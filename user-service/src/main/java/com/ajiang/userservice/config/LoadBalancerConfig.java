@@ -0,0 +1,17 @@
+package com.ajiang.userservice.config;
+
+import com.ajiang.userservice.loadbalancer.LatencyAwareLoadBalancerConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClient;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 权限服务的负载均衡策略
+ * user.loadbalancer.strategy=latency（默认）时使用基于延迟的 power of two choices，
+ * 设为 round-robin 恢复 Spring Cloud LoadBalancer 的默认轮询
+ */
+@Configuration
+@ConditionalOnProperty(name = "user.loadbalancer.strategy", havingValue = "latency", matchIfMissing = true)
+@LoadBalancerClient(name = "permission-service", configuration = LatencyAwareLoadBalancerConfiguration.class)
+public class LoadBalancerConfig {
+}
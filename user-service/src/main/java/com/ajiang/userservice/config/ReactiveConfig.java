@@ -0,0 +1,36 @@
+package com.ajiang.userservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * 响应式调用链配置
+ * 提供经过服务发现负载均衡的 WebClient，以及隔离阻塞 JDBC 调用的有界调度器
+ */
+@Configuration
+public class ReactiveConfig {
+
+    // 执行阻塞 JDBC 调用的线程数上限，不超过数据库连接池大小
+    @Value("${user.login.reactive.jdbc-threads:32}")
+    private int jdbcThreads;
+
+    // 等待 JDBC 线程的任务数上限，超过后直接拒绝
+    @Value("${user.login.reactive.jdbc-queue-size:2000}")
+    private int jdbcQueueSize;
+
+    @Bean
+    @LoadBalanced
+    public WebClient.Builder loadBalancedWebClientBuilder() {
+        return WebClient.builder();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public Scheduler jdbcScheduler() {
+        return Schedulers.newBoundedElastic(jdbcThreads, jdbcQueueSize, "login-jdbc");
+    }
+}
@@ -1,5 +1,6 @@
 package com.ajiang.userservice.config;
 
+import com.ajiang.userservice.interceptor.ConcurrencyLimitInterceptor;
 import com.ajiang.userservice.interceptor.TokenValidationInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
@@ -17,13 +18,21 @@ public class WebConfig implements WebMvcConfigurer {
     @Autowired
     private TokenValidationInterceptor tokenValidationInterceptor;
 
+    @Autowired
+    private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // 先做并发限制，过载时被拒绝的请求不再校验令牌
+        registry.addInterceptor(concurrencyLimitInterceptor)
+                .addPathPatterns("/user/**");
         registry.addInterceptor(tokenValidationInterceptor)
                 .addPathPatterns("/user/**") // 拦截所有用户相关接口
                 .excludePathPatterns(
                         "/user/login", // 排除登录接口
-                        "/user/register" // 排除注册接口
+                        "/user/register", // 排除注册接口
+                        "/user/refresh", // 排除刷新令牌接口（凭刷新令牌鉴权）
+                        "/user/token/validate" // 排除令牌校验接口（自行校验）
                 );
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.ajiang.userservice.controller;
+
+import com.ajiang.common.model.ApiResponse;
+import com.ajiang.userservice.dto.UserLoginDto;
+import com.ajiang.userservice.dto.UserTokenDto;
+import com.ajiang.userservice.limiter.LoginThrottle;
+import com.ajiang.userservice.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.util.Map;
+
+/**
+ * 登录接口（servlet 模式，默认）
+ * 在请求线程上同步执行并直接返回结果，不经过异步分派；reactive 模式由 ReactiveLoginController 提供同一接口
+ */
+@Slf4j
+@RestController
+@RequestMapping("/user")
+@ConditionalOnProperty(name = "user.login.mode", havingValue = "servlet", matchIfMissing = true)
+public class LoginController {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    /**
+     * @description: 用户登录
+     * @author: ajiang
+     * @date: 2025/6/21 17:39
+     * @param: [loginDto, request]
+     * @return: com.ajiang.common.model.ApiResponse<java.util.Map<java.lang.String,java.lang.String>>
+     **/
+    @PostMapping("/login")
+    public ApiResponse<Map<String, String>> login(@RequestBody @Valid UserLoginDto loginDto,
+                                                  HttpServletRequest request) {
+        log.info("用户登录请求: {}", loginDto.getUsername());
+        // 限流使用连接对端地址（可信代理后才采信 X-Forwarded-For），客户端无法伪造
+        String ip = loginThrottle.clientIp(request);
+        // 限流在查询用户、校验密码之前，被拒绝的请求不占用数据库和加密资源
+        loginThrottle.check(ip, loginDto.getUsername());
+        UserTokenDto userToken = userService.login(loginDto, ip);
+        log.info("用户登录成功: {}", loginDto.getUsername());
+        return ApiResponse.success(userToken.toResult());
+    }
+}
@@ -0,0 +1,54 @@
+package com.ajiang.userservice.controller;
+
+import com.ajiang.common.model.ApiResponse;
+import com.ajiang.userservice.dto.UserLoginDto;
+import com.ajiang.userservice.limiter.LoginThrottle;
+import com.ajiang.userservice.service.ReactiveLoginService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.validation.Valid;
+import java.util.Map;
+
+/**
+ * 登录接口（reactive 模式）
+ * 登录走非阻塞调用链，请求线程在等待 I/O 期间即被释放
+ */
+@Slf4j
+@RestController
+@RequestMapping("/user")
+@ConditionalOnProperty(name = "user.login.mode", havingValue = "reactive")
+public class ReactiveLoginController {
+
+    @Autowired
+    private ReactiveLoginService reactiveLoginService;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    /**
+     * @description: 用户登录（非阻塞）
+     * @author: ajiang
+     * @date: 2026/10/19 14:20
+     * @param: [loginDto, request]
+     * @return: reactor.core.publisher.Mono<com.ajiang.common.model.ApiResponse<java.util.Map<java.lang.String,java.lang.String>>>
+     **/
+    @PostMapping("/login")
+    public Mono<ApiResponse<Map<String, String>>> login(@RequestBody @Valid UserLoginDto loginDto,
+                                                        HttpServletRequest request) {
+        log.info("用户登录请求: {}", loginDto.getUsername());
+        String ip = loginThrottle.clientIp(request);
+        loginThrottle.check(ip, loginDto.getUsername());
+        return reactiveLoginService.login(loginDto, ip).map(token -> {
+            log.info("用户登录成功: {}", loginDto.getUsername());
+            return ApiResponse.success(token.toResult());
+        });
+    }
+}
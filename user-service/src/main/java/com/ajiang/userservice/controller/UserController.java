@@ -1,22 +1,40 @@
 package com.ajiang.userservice.controller;
 
+import com.ajiang.common.exception.BusinessException;
 import com.ajiang.common.model.ApiResponse;
 import com.ajiang.common.model.PageParams;
 import com.ajiang.common.model.PageResult;
 import com.ajiang.common.util.JwtUtil;
 import com.ajiang.userservice.dto.PasswordResetDto;
-import com.ajiang.userservice.dto.UserLoginDto;
+import com.ajiang.userservice.dto.TokenRefreshDto;
+import com.ajiang.userservice.dto.TokenValidationDto;
+import com.ajiang.userservice.dto.UserImportResultDto;
 import com.ajiang.userservice.dto.UserRegisterDto;
 import com.ajiang.userservice.dto.UserResponseDto;
+import com.ajiang.userservice.dto.UserTokenDto;
 import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.idempotency.IdempotencyExecutor;
+import com.ajiang.userservice.interceptor.TokenValidationInterceptor;
+import com.ajiang.userservice.service.ReactiveLoginService;
+import com.ajiang.userservice.service.UserExportService;
+import com.ajiang.userservice.service.UserImportService;
+import com.ajiang.userservice.service.UserSearchService;
 import com.ajiang.userservice.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
@@ -27,58 +45,111 @@ public class UserController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private UserExportService userExportService;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private UserImportService userImportService;
+
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private IdempotencyExecutor idempotencyExecutor;
+
+    @Autowired
+    private ReactiveLoginService reactiveLoginService;
+
+    // 注册模式：seata（全局事务同步绑定角色）/ outbox（本地事务 + 发件箱异步投递）
+    @Value("${user.register.mode:seata}")
+    private String registerMode;
+
     /**
      * @description: 用户注册
      * @author: ajiang
      * @date: 2025/6/21 17:39
-     * @param: [registerDto, request]
+     * @param: [registerDto, idempotencyKey, request]
      * @return: com.ajiang.common.model.ApiResponse<java.lang.Long>
      **/
     @PostMapping("/register")
-    public ApiResponse<Long> register(@RequestBody @Valid UserRegisterDto registerDto, HttpServletRequest request) {
+    public ApiResponse<Long> register(@RequestBody @Valid UserRegisterDto registerDto,
+                                     @RequestHeader(value = IdempotencyExecutor.HEADER, required = false) String idempotencyKey,
+                                     HttpServletRequest request) {
         log.info("用户注册请求: {}", registerDto.getUsername());
         String ip = getClientIp(request);
-        Long userId = userService.register(registerDto, ip);
-        log.info("用户注册成功: {}, userId={}", registerDto.getUsername(), userId);
-        return ApiResponse.success(userId);
+        return idempotencyExecutor.execute("register", idempotencyKey, registerDto, Long.class, () -> {
+            Long userId = "outbox".equals(registerMode)
+                    ? userService.registerWithOutbox(registerDto, ip)
+                    : userService.register(registerDto, ip);
+            log.info("用户注册成功: {}, userId={}", registerDto.getUsername(), userId);
+            return ApiResponse.success(userId);
+        });
     }
 
     /**
-     * @description: 用户登录
+     * @description: 批量导入用户（NDJSON，每行一个注册对象）
      * @author: ajiang
-     * @date: 2025/6/21 17:39
-     * @param: [loginDto, request]
-     * @return: com.ajiang.common.model.ApiResponse<java.util.Map<java.lang.String,java.lang.String>>
+     * @date: 2026/10/19 14:10
+     * @param: [request]
+     * @return: com.ajiang.common.model.ApiResponse<com.ajiang.userservice.dto.UserImportResultDto>
      **/
-    @PostMapping("/login")
-    public ApiResponse<Map<String, String>> login(@RequestBody @Valid UserLoginDto loginDto,
-                                                  HttpServletRequest request) {
-        log.info("用户登录请求: {}", loginDto.getUsername());
+    @PostMapping("/import")
+    public ApiResponse<UserImportResultDto> importUsers(HttpServletRequest request) throws IOException {
+        log.info("批量导入用户请求");
+        Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
         String ip = getClientIp(request);
-        String token = userService.login(loginDto, ip);
-
-        Map<String, String> result = new HashMap<>();
-        result.put("token", token);
-        log.info("用户登录成功: {}", loginDto.getUsername());
+        UserImportResultDto result = userImportService.importUsers(request.getInputStream(), currentUserId,
+                currentUserRole, ip);
+        log.info("批量导入用户完成: total={}, success={}", result.getTotal(), result.getSuccessCount());
         return ApiResponse.success(result);
     }
 
+    /**
+     * @description: 非阻塞校验令牌，供网关和其他服务调用
+     * @author: ajiang
+     * @date: 2026/10/19 14:20
+     * @param: [request]
+     * @return: reactor.core.publisher.Mono<com.ajiang.common.model.ApiResponse<com.ajiang.userservice.dto.TokenValidationDto>>
+     **/
+    @GetMapping("/token/validate")
+    public Mono<ApiResponse<TokenValidationDto>> validateToken(HttpServletRequest request) {
+        String token = getTokenFromRequest(request);
+        return reactiveLoginService.validate(token).map(ApiResponse::success);
+    }
+
+    /**
+     * @description: 刷新令牌，访问令牌过期前调用，无需重新登录
+     * @author: ajiang
+     * @date: 2025/7/2 10:15
+     * @param: [refreshDto, request]
+     * @return: com.ajiang.common.model.ApiResponse<java.util.Map<java.lang.String,java.lang.String>>
+     **/
+    @PostMapping("/refresh")
+    public ApiResponse<Map<String, String>> refresh(@RequestBody @Valid TokenRefreshDto refreshDto,
+                                                    HttpServletRequest request) {
+        String ip = getClientIp(request);
+        UserTokenDto userToken = userService.refreshToken(refreshDto.getRefreshToken(), ip);
+        return ApiResponse.success(userToken.toResult());
+    }
+
     /**
      * @description: 用户登出
      * @author: ajiang
      * @date: 2025/6/21 17:39
-     * @param: [request]
+     * @param: [refreshDto, request]
      * @return: com.ajiang.common.model.ApiResponse<java.lang.Boolean>
      **/
     @PostMapping("/logout")
-    public ApiResponse<Boolean> logout(HttpServletRequest request) {
+    public ApiResponse<Boolean> logout(@RequestBody(required = false) TokenRefreshDto refreshDto,
+                                       HttpServletRequest request) {
         log.info("用户登出请求");
         String token = getTokenFromRequest(request);
         String ip = getClientIp(request);
-        userService.logout(token, ip);
+        userService.logout(token, refreshDto != null ? refreshDto.getRefreshToken() : null, ip);
         log.info("用户登出成功");
         return ApiResponse.success(true);
     }
@@ -94,12 +165,66 @@ public class UserController {
     public ApiResponse<PageResult<User>> getUserList(PageParams pageParams, HttpServletRequest request) {
         log.info("获取用户列表请求: pageNo={}, pageSize={}", pageParams.getPageNo(), pageParams.getPageSize());
         Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
         String ip = getClientIp(request);
-        PageResult<User> userList = userService.getUserList(pageParams, currentUserId, ip);
+        PageResult<User> userList = userService.getUserList(pageParams, currentUserId, currentUserRole, ip);
         log.info("获取用户列表成功: 共{}条记录", userList.getCounts());
         return ApiResponse.success(userList);
     }
 
+    /**
+     * @description: 按用户名/邮箱/手机号搜索用户ID
+     * @author: ajiang
+     * @date: 2026/10/19 11:30
+     * @param: [keyword, limit, request]
+     * @return: com.ajiang.common.model.ApiResponse<java.util.List<java.lang.Long>>
+     **/
+    @GetMapping("/search")
+    public ApiResponse<List<Long>> searchUsers(@RequestParam("q") String keyword,
+                                               @RequestParam(defaultValue = "20") int limit,
+                                               HttpServletRequest request) {
+        log.info("搜索用户请求: keyword={}, limit={}", keyword, limit);
+        if (limit <= 0 || limit > 100) {
+            throw new BusinessException("返回数量必须在1-100之间");
+        }
+        Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
+        List<Long> userIds = userSearchService.searchUserIds(currentUserId, currentUserRole, keyword, limit);
+        return ApiResponse.success(userIds);
+    }
+
+    /**
+     * @description: 流式导出用户（ndjson / csv）
+     * @author: ajiang
+     * @date: 2026/10/19 10:45
+     * @param: [format, request]
+     * @return: org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody>
+     **/
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(defaultValue = UserExportService.FORMAT_NDJSON) String format,
+            HttpServletRequest request) {
+        log.info("导出用户请求: format={}", format);
+        if (!UserExportService.FORMAT_NDJSON.equalsIgnoreCase(format)
+                && !UserExportService.FORMAT_CSV.equalsIgnoreCase(format)) {
+            throw new BusinessException("不支持的导出格式: " + format);
+        }
+        // 异步写出线程中拿不到request，提前解析
+        Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
+        String ip = getClientIp(request);
+        boolean csv = UserExportService.FORMAT_CSV.equalsIgnoreCase(format);
+
+        StreamingResponseBody body = out -> userExportService.exportUsers(currentUserId, currentUserRole,
+                format, ip, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=users." + (csv ? "csv" : "ndjson"))
+                .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                        : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
     /**
      * @description: 获取用户信息
      * @author: ajiang
@@ -111,8 +236,9 @@ public class UserController {
     public ApiResponse<UserResponseDto> getUserInfo(@PathVariable Long userId, HttpServletRequest request) {
         log.info("获取用户信息请求: userId={}", userId);
         Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
         String ip = getClientIp(request);
-        UserResponseDto userInfo = userService.getUserInfo(currentUserId, userId, ip);
+        UserResponseDto userInfo = userService.getUserInfo(currentUserId, currentUserRole, userId, ip);
         log.info("获取用户信息成功: userId={}", userId);
         return ApiResponse.success(userInfo);
     }
@@ -121,44 +247,55 @@ public class UserController {
      * @description: 修改用户信息
      * @author: ajiang
      * @date: 2025/6/21 17:38
-     * @param: [userId, user, request]
+     * @param: [userId, user, idempotencyKey, request]
      * @return: com.ajiang.common.model.ApiResponse<java.lang.Boolean>
      **/
     @PutMapping("/{userId}")
     public ApiResponse<Boolean> updateUser(
             @PathVariable Long userId,
             @RequestBody User user,
+            @RequestHeader(value = IdempotencyExecutor.HEADER, required = false) String idempotencyKey,
             HttpServletRequest request) {
         log.info("修改用户信息请求: userId={}", userId);
         Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
         String ip = getClientIp(request);
 
         // 设置用户ID，确保与路径参数一致
         user.setUserId(userId);
 
-        boolean result = userService.updateUser(userId, user, currentUserId, ip);
-        log.info("修改用户信息{}: userId={}", result ? "成功" : "失败", userId);
-        return ApiResponse.success(result);
+        // 幂等键按操作者隔离
+        return idempotencyExecutor.execute("update:" + currentUserId, idempotencyKey, user, Boolean.class, () -> {
+            boolean result = userService.updateUser(userId, user, currentUserId, currentUserRole, ip);
+            log.info("修改用户信息{}: userId={}", result ? "成功" : "失败", userId);
+            return ApiResponse.success(result);
+        });
     }
 
     /**
      * @description: 重置密码
      * @author: ajiang
      * @date: 2025/6/21 17:38
-     * @param: [passwordResetDto, request]
+     * @param: [passwordResetDto, idempotencyKey, request]
      * @return: com.ajiang.common.model.ApiResponse<java.lang.Boolean>
      **/
     @PostMapping("/reset-password")
     public ApiResponse<Boolean> resetPassword(
             @RequestBody @Valid PasswordResetDto passwordResetDto,
+            @RequestHeader(value = IdempotencyExecutor.HEADER, required = false) String idempotencyKey,
             HttpServletRequest request) {
         log.info("重置密码请求: userId={}", passwordResetDto.getUserId());
         Long currentUserId = getCurrentUserId(request);
+        String currentUserRole = getCurrentUserRole(request);
         String ip = getClientIp(request);
 
-        boolean result = userService.resetPassword(passwordResetDto, currentUserId, ip);
-        log.info("重置密码{}: userId={}", result ? "成功" : "失败", passwordResetDto.getUserId());
-        return ApiResponse.success(result);
+        return idempotencyExecutor.execute("reset-password:" + currentUserId, idempotencyKey, passwordResetDto,
+                Boolean.class, () -> {
+                    boolean result = userService.resetPassword(passwordResetDto, currentUserId, currentUserRole,
+                            ip);
+                    log.info("重置密码{}: userId={}", result ? "成功" : "失败", passwordResetDto.getUserId());
+                    return ApiResponse.success(result);
+                });
     }
 
     /**
@@ -169,10 +306,30 @@ public class UserController {
      * @return: java.lang.Long
      **/
     private Long getCurrentUserId(HttpServletRequest request) {
+        Object currentUserId = request.getAttribute(TokenValidationInterceptor.ATTR_CURRENT_USER_ID);
+        if (currentUserId != null) {
+            return (Long) currentUserId;
+        }
         String token = getTokenFromRequest(request);
         return jwtUtil.getUserIdFromToken(token);
     }
 
+    /**
+     * @description: 从已校验的Token中获取当前用户角色，无需远程查询
+     * @author: ajiang
+     * @date: 2026/10/19 16:10
+     * @param: [request]
+     * @return: java.lang.String
+     **/
+    private String getCurrentUserRole(HttpServletRequest request) {
+        Object currentUserRole = request.getAttribute(TokenValidationInterceptor.ATTR_CURRENT_USER_ROLE);
+        if (currentUserRole != null) {
+            return (String) currentUserRole;
+        }
+        String token = getTokenFromRequest(request);
+        return jwtUtil.getRoleCodeFromToken(token);
+    }
+
     /**
      * @description: 从请求中获取Token
      * @author: ajiang
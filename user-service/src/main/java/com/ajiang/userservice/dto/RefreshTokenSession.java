@@ -0,0 +1,24 @@
+package com.ajiang.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 刷新令牌对应的会话信息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefreshTokenSession {
+
+    private Long userId;
+
+    // 签发时的角色，角色版本号未变化时刷新无需远程查询
+    private String roleCode;
+
+    private Long roleEpoch;
+
+    // 首次登录时间（毫秒），用于限制刷新链的最长存活时间
+    private Long loginTime;
+}
@@ -0,0 +1,11 @@
+package com.ajiang.userservice.dto;
+
+import lombok.Data;
+import javax.validation.constraints.NotBlank;
+
+@Data
+public class TokenRefreshDto {
+
+    @NotBlank(message = "刷新令牌不能为空")
+    private String refreshToken;
+}
@@ -0,0 +1,25 @@
+package com.ajiang.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 令牌校验结果
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TokenValidationDto {
+
+    private Boolean valid;
+
+    // 以下字段仅在令牌有效时返回
+    private Long userId;
+
+    private String roleCode;
+
+    public static TokenValidationDto invalid() {
+        return new TokenValidationDto(false, null, null);
+    }
+}
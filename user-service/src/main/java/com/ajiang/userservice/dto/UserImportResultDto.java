@@ -0,0 +1,34 @@
+package com.ajiang.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportResultDto {
+
+    private Integer total;
+
+    private Integer successCount;
+
+    private Integer failedCount;
+
+    private Long elapsedMs;
+
+    // 吞吐量（用户/分钟）
+    private Long usersPerMinute;
+
+    // 是否因超过最大行数而未处理完，已处理部分已提交
+    private Boolean truncated;
+
+    // 第一个未处理的行号，未截断时为空
+    private Integer truncatedAtLine;
+
+    private List<UserImportRowResult> rows;
+}
@@ -0,0 +1,27 @@
+package com.ajiang.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserImportRowResult {
+
+    public static final String STATUS_SUCCESS = "SUCCESS";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // 输入中的行号，从1开始
+    private Integer line;
+
+    private String username;
+
+    private String status;
+
+    private Long userId;
+
+    private String message;
+}
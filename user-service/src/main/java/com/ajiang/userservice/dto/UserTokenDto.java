@@ -0,0 +1,37 @@
+package com.ajiang.userservice.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 登录/刷新返回的令牌
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserTokenDto {
+
+    // 访问令牌
+    private String token;
+
+    // 刷新令牌，每次刷新后更换
+    private String refreshToken;
+
+    // 访问令牌有效期（秒）
+    private Long expiresIn;
+
+    /**
+     * 组装登录/刷新接口返回的令牌信息
+     */
+    public Map<String, String> toResult() {
+        Map<String, String> result = new HashMap<>();
+        result.put("token", token);
+        result.put("refreshToken", refreshToken);
+        result.put("expiresIn", String.valueOf(expiresIn));
+        return result;
+    }
+}
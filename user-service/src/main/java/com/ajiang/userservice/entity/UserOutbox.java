@@ -0,0 +1,66 @@
+package com.ajiang.userservice.entity;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 用户注册事件发件箱
+ * 与 users 按 user_id 使用相同的分片规则并配置为绑定表，注册时与用户数据在同一本地事务中写入
+ *
+ * <pre>
+ * CREATE TABLE user_outbox_0 (
+ *   id              BIGINT      NOT NULL PRIMARY KEY,
+ *   user_id         BIGINT      NOT NULL,
+ *   event_type      VARCHAR(32) NOT NULL,
+ *   payload         VARCHAR(1024),
+ *   status          TINYINT     NOT NULL DEFAULT 0,
+ *   retry_count     INT         NOT NULL DEFAULT 0,
+ *   next_retry_time DATETIME    NOT NULL,
+ *   claim_token     VARCHAR(32),
+ *   gmt_create      DATETIME    NOT NULL,
+ *   KEY idx_status_next_retry (status, next_retry_time)
+ * );  -- db_user0/db_user1 中各建 user_outbox_0、user_outbox_1
+ * </pre>
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@TableName("user_outbox")
+public class UserOutbox {
+
+    public static final String EVENT_USER_REGISTERED = "USER_REGISTERED";
+
+    public static final int STATUS_PENDING = 0;
+    public static final int STATUS_DELIVERED = 1;
+    public static final int STATUS_FAILED = 2;
+
+    @TableId(value = "id", type = IdType.ASSIGN_ID)
+    private Long id;
+
+    // 分片键，与 users 保持一致
+    private Long userId;
+
+    private String eventType;
+
+    // 事件内容（JSON）
+    private String payload;
+
+    private Integer status;
+
+    private Integer retryCount;
+
+    private LocalDateTime nextRetryTime;
+
+    // 最近一次认领该事件的中继批次标识
+    private String claimToken;
+
+    private LocalDateTime gmtCreate;
+}
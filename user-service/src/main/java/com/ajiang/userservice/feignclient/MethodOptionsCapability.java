@@ -0,0 +1,53 @@
+package com.ajiang.userservice.feignclient;
+
+import com.ajiang.userservice.config.FeignTransportProperties;
+import com.ajiang.userservice.config.FeignTransportProperties.MethodTimeout;
+import feign.Capability;
+import feign.Client;
+import feign.MethodMetadata;
+import feign.Request;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按方法设置 Feign 的连接和读取超时
+ * 包装最终的 Client（含负载均衡），按请求对应的接口方法名查找 user.feign.methods 中的配置，
+ * 例如查询角色使用短超时，批量绑定使用长超时；未配置的方法保持客户端级超时
+ */
+public class MethodOptionsCapability implements Capability {
+
+    private final FeignTransportProperties properties;
+
+    public MethodOptionsCapability(FeignTransportProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Client enrich(Client client) {
+        Map<String, MethodTimeout> methods = properties.getMethods();
+        if (methods.isEmpty()) {
+            return client;
+        }
+        return (request, options) -> client.execute(request, optionsFor(request, options, methods));
+    }
+
+    private static Request.Options optionsFor(Request request, Request.Options options,
+                                              Map<String, MethodTimeout> methods) {
+        MethodMetadata metadata = request.requestTemplate() == null ? null
+                : request.requestTemplate().methodMetadata();
+        if (metadata == null || metadata.method() == null) {
+            return options;
+        }
+        MethodTimeout timeout = methods.get(metadata.method().getName());
+        if (timeout == null) {
+            return options;
+        }
+        long connectTimeoutMs = timeout.getConnectTimeoutMs() != null
+                ? timeout.getConnectTimeoutMs() : options.connectTimeoutMillis();
+        long readTimeoutMs = timeout.getReadTimeoutMs() != null
+                ? timeout.getReadTimeoutMs() : options.readTimeoutMillis();
+        return new Request.Options(connectTimeoutMs, TimeUnit.MILLISECONDS, readTimeoutMs, TimeUnit.MILLISECONDS,
+                options.isFollowRedirects());
+    }
+}
@@ -0,0 +1,139 @@
+package com.ajiang.userservice.feignclient;
+
+import com.ajiang.common.event.RoleChangeEvent;
+import com.ajiang.common.event.RoleChangeListener;
+import com.ajiang.common.model.PageResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 权限服务查询结果的最近一次成功值
+ * 每次远程查询成功后写入，权限服务不可用时由降级逻辑读取；超过 max-stale-ms 的值不再使用。
+ * 收到角色变更事件时同步更新角色码、清空可见用户分页，降级期间已知的角色变更不会被旧值覆盖
+ */
+@Slf4j
+@Component
+public class PermissionLastKnownGood implements RoleChangeListener {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 降级时可使用的最大数据年龄（毫秒）
+    @Value("${user.permission-fallback.max-stale-ms:600000}")
+    private long maxStaleMs;
+
+    @Value("${user.permission-fallback.max-role-entries:100000}")
+    private int maxRoleEntries;
+
+    @Value("${user.permission-fallback.max-page-entries:10000}")
+    private int maxPageEntries;
+
+    private final Map<Long, Entry<String>> roleCodes = new ConcurrentHashMap<>();
+
+    private final Map<String, Entry<PageResult<Long>>> visibleUserPages = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("user.permission.fallback.entries", roleCodes, Map::size)
+                .description("可用于降级的最近成功结果数量")
+                .tag("type", "role-code")
+                .register(meterRegistry);
+        Gauge.builder("user.permission.fallback.entries", visibleUserPages, Map::size)
+                .description("可用于降级的最近成功结果数量")
+                .tag("type", "visible-users")
+                .register(meterRegistry);
+    }
+
+    public void putRoleCode(Long userId, String roleCode) {
+        if (userId != null && roleCode != null) {
+            put(roleCodes, userId, roleCode, maxRoleEntries);
+        }
+    }
+
+    public void putRoleCodes(Map<Long, String> userRoleCodes) {
+        userRoleCodes.forEach(this::putRoleCode);
+    }
+
+    public void putVisibleUserIds(Long currentUserId, String currentUserRole, int pageNo, int pageSize,
+                                  PageResult<Long> page) {
+        if (page != null) {
+            put(visibleUserPages, pageKey(currentUserId, currentUserRole, pageNo, pageSize), page, maxPageEntries);
+        }
+    }
+
+    /**
+     * 未过期的角色码
+     *
+     * @param userId 用户ID
+     * @return 角色码，没有或已过期时返回 null
+     */
+    public String getRoleCode(Long userId) {
+        return get(roleCodes, userId);
+    }
+
+    /**
+     * 未过期的可见用户分页
+     *
+     * @return 分页结果，没有或已过期时返回 null
+     */
+    public PageResult<Long> getVisibleUserIds(Long currentUserId, String currentUserRole, int pageNo, int pageSize) {
+        return get(visibleUserPages, pageKey(currentUserId, currentUserRole, pageNo, pageSize));
+    }
+
+    @Override
+    public void onRoleChanged(List<RoleChangeEvent> events) {
+        for (RoleChangeEvent event : events) {
+            if (event.getUserId() != null && event.getNewRole() != null) {
+                // 只更新已缓存的用户，不因事件扩大缓存
+                roleCodes.computeIfPresent(event.getUserId(), (userId, entry) -> new Entry<>(event.getNewRole()));
+            }
+        }
+        // 角色变更改变了可见用户集合，已缓存的分页全部作废
+        visibleUserPages.clear();
+        log.debug("[权限降级] 已应用角色变更事件: count={}", events.size());
+    }
+
+    private <K, V> void put(Map<K, Entry<V>> cache, K key, V value, int maxEntries) {
+        if (cache.size() >= maxEntries && !cache.containsKey(key)) {
+            // 超出容量时随机淘汰一个，避免无界增长
+            Iterator<K> iterator = cache.keySet().iterator();
+            if (iterator.hasNext()) {
+                cache.remove(iterator.next());
+            }
+        }
+        cache.put(key, new Entry<>(value));
+    }
+
+    private <K, V> V get(Map<K, Entry<V>> cache, K key) {
+        Entry<V> entry = cache.get(key);
+        if (entry == null || System.currentTimeMillis() - entry.storedAt > maxStaleMs) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    private static String pageKey(Long currentUserId, String currentUserRole, int pageNo, int pageSize) {
+        return currentUserId + ":" + currentUserRole + ":" + pageNo + ":" + pageSize;
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+
+        private final long storedAt = System.currentTimeMillis();
+
+        private Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -13,7 +13,8 @@ import java.util.Map;
  */
 @FeignClient(name = "permission-service", // 服务名称
         contextId = "permissionService", // 上下文ID防止冲突
-        fallbackFactory = PermissionServiceFallbackFactory.class // 降级处理
+        fallbackFactory = PermissionServiceFallbackFactory.class, // 降级处理
+        primary = false // 注入时使用带熔断的 ResilientPermissionServiceClient
 )
 public interface PermissionServiceClient {
 
@@ -21,9 +22,19 @@ public interface PermissionServiceClient {
     @PostMapping("/role/bind/{userId}")
     void bindDefaultRole(@PathVariable("userId") Long userId);
 
+    @PostMapping("/role/bind/batch")
+    void bindDefaultRoles(@RequestBody List<Long> userIds);
+
     @GetMapping("/role/code/{userId}")
     String getUserRoleCode(@PathVariable("userId") Long userId);
 
+    // 签发令牌时使用，权限服务读取数据库而不是进程内索引
+    @GetMapping("/role/code/{userId}/issue")
+    String getUserRoleCodeForIssue(@PathVariable("userId") Long userId);
+
+    @PostMapping("/role/codes")
+    Map<Long, String> getUserRoleCodes(@RequestBody List<Long> userIds);
+
     @PostMapping("/role/upgrade/{userId}")
     void upgradeToAdmin(@PathVariable("userId") Long userId);
 
@@ -1,15 +1,22 @@
 package com.ajiang.userservice.feignclient;
 
+import com.ajiang.common.exception.BusinessException;
 import com.ajiang.common.model.PageResult;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cloud.openfeign.FallbackFactory;
 import org.springframework.stereotype.Component;
+
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 
 /**
  * AI
- * @description:
+ * @description: 权限服务降级。查询类接口返回最近一次成功的结果（见 PermissionLastKnownGood），
+ * 没有可用结果时抛出异常，不返回可能越权的默认值
  * @author: ajiang
  * @date: 2025/6/21 17:41
  * @param:
@@ -19,6 +26,9 @@ import java.util.Collections;
 @Component
 public class PermissionServiceFallbackFactory implements FallbackFactory<PermissionServiceClient> {
 
+    @Autowired
+    private PermissionLastKnownGood lastKnownGood;
+
     @Override
     public PermissionServiceClient create(Throwable cause) {
         log.error("PermissionService调用失败: {}", cause.getMessage());
@@ -29,10 +39,42 @@ public class PermissionServiceFallbackFactory implements FallbackFactory<Permiss
                 log.warn("bindDefaultRole降级处理: userId={}", userId);
             }
 
+            @Override
+            public void bindDefaultRoles(List<Long> userIds) {
+                log.warn("bindDefaultRoles降级处理: count={}", userIds.size());
+                throw new IllegalStateException("权限服务不可用，批量绑定默认角色失败", cause);
+            }
+
             @Override
             public String getUserRoleCode(Long userId) {
-                log.warn("getUserRoleCode降级处理: userId={}", userId);
-                return "user";
+                String roleCode = lastKnownGood.getRoleCode(userId);
+                log.warn("getUserRoleCode降级处理: userId={}, staleRoleCode={}", userId, roleCode);
+                if (roleCode == null) {
+                    // 默认角色可能高于目标用户的实际权限边界（管理员被当作普通用户），不能作为降级值
+                    throw new BusinessException("权限服务暂不可用，请稍后重试");
+                }
+                return roleCode;
+            }
+
+            @Override
+            public String getUserRoleCodeForIssue(Long userId) {
+                // 签发令牌不使用最近成功值，过期的角色会被写入携带当前角色版本号的令牌
+                log.warn("getUserRoleCodeForIssue降级处理: userId={}", userId);
+                throw new BusinessException("权限服务暂不可用，请稍后重试");
+            }
+
+            @Override
+            public Map<Long, String> getUserRoleCodes(List<Long> userIds) {
+                // 降级时只返回有最近结果的用户，其余用户调用方按不可见处理，避免越权
+                Map<Long, String> result = new HashMap<>(userIds.size() * 2);
+                for (Long userId : userIds) {
+                    String roleCode = lastKnownGood.getRoleCode(userId);
+                    if (roleCode != null) {
+                        result.put(userId, roleCode);
+                    }
+                }
+                log.warn("getUserRoleCodes降级处理: count={}, stale={}", userIds.size(), result.size());
+                return result;
             }
 
             @Override
@@ -48,10 +90,20 @@ public class PermissionServiceFallbackFactory implements FallbackFactory<Permiss
             @Override
             public PageResult<Long> getVisibleUserIds(Long currentUserId, String currentUserRole, int pageNo,
                                                       int pageSize) {
-                log.warn("getVisibleUserIds降级处理: currentUserId={}, role={}", currentUserId, currentUserRole);
-                // 降级时只返回当前用户自己的ID
+                PageResult<Long> stale = lastKnownGood.getVisibleUserIds(currentUserId, currentUserRole, pageNo,
+                        pageSize);
+                log.warn("getVisibleUserIds降级处理: currentUserId={}, role={}, stale={}",
+                        currentUserId, currentUserRole, stale != null);
+                if (stale != null) {
+                    return stale;
+                }
+                if (!"user".equals(currentUserRole)) {
+                    // 管理员的可见范围无法在本地推断，只返回自己会让列表看起来“正常但不完整”
+                    throw new BusinessException("权限服务暂不可用，请稍后重试");
+                }
+                // 普通用户只能看到自己
                 PageResult<Long> result = new PageResult<>();
-                result.setItems(Collections.singletonList(currentUserId));
+                result.setItems(pageNo <= 1 ? Collections.singletonList(currentUserId) : Collections.emptyList());
                 result.setCounts(1L);
                 result.setPage(pageNo);
                 result.setPageSize(pageSize);
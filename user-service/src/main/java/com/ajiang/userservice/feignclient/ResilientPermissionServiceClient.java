@@ -0,0 +1,244 @@
+package com.ajiang.userservice.feignclient;
+
+import com.ajiang.common.model.PageResult;
+import com.ajiang.userservice.limiter.LatencyCircuitBreaker;
+import com.ajiang.userservice.loadbalancer.HedgedExecutor;
+import feign.FeignException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 带熔断和过期数据降级的权限服务客户端
+ * 查询类接口经过基于延迟的熔断器：权限服务变慢或不可用时熔断器迅速打开，之后的请求不再等待超时，
+ * 直接由 PermissionServiceFallbackFactory 返回最近一次成功的结果；降级返回过的角色查询记录下来，
+ * 由后台任务在熔断器允许时重新查询（同时作为半开探测），恢复后数据立即刷新。
+ * 写类接口直接调用远程服务，失败时抛出异常，不降级。
+ * 签发令牌时的角色查询不经过本类，直接使用 Feign 客户端，权限服务不可用时失败，不使用过期角色
+ */
+@Slf4j
+@Primary
+@Component
+public class ResilientPermissionServiceClient implements PermissionServiceClient {
+
+    private static final IllegalStateException CIRCUIT_OPEN = new IllegalStateException("权限服务熔断中");
+
+    @Autowired
+    @Qualifier("permissionServiceFeignClient")
+    private PermissionServiceClient remote;
+
+    @Autowired
+    private PermissionServiceFallbackFactory fallbackFactory;
+
+    @Autowired
+    private PermissionLastKnownGood lastKnownGood;
+
+    @Autowired
+    private HedgedExecutor hedgedExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.permission-fallback.breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${user.permission-fallback.breaker.min-calls:10}")
+    private int minCalls;
+
+    // 超过该耗时的调用记为慢调用（毫秒）
+    @Value("${user.permission-fallback.breaker.slow-call-ms:500}")
+    private long slowCallMs;
+
+    @Value("${user.permission-fallback.breaker.slow-rate-threshold:0.5}")
+    private double slowRateThreshold;
+
+    @Value("${user.permission-fallback.breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    // 打开后多久进入半开状态（毫秒）
+    @Value("${user.permission-fallback.breaker.open-ms:5000}")
+    private long openMs;
+
+    // 每轮后台重新查询的最大用户数
+    @Value("${user.permission-fallback.revalidate-batch-size:200}")
+    private int revalidateBatchSize;
+
+    private LatencyCircuitBreaker breaker;
+
+    // 熔断期间复用同一个降级实例，避免每次请求创建并打印错误日志
+    private PermissionServiceClient openCircuitFallback;
+
+    // 降级返回过角色码、等待后台重新查询的用户
+    private final Map<Long, Boolean> pendingRevalidation = new ConcurrentHashMap<>();
+
+    private Counter staleServedCounter;
+
+    private Counter fallbackFailedCounter;
+
+    @PostConstruct
+    public void init() {
+        breaker = new LatencyCircuitBreaker("permission-service", windowSize, minCalls, slowCallMs,
+                slowRateThreshold, failureRateThreshold, openMs);
+        openCircuitFallback = fallbackFactory.create(CIRCUIT_OPEN);
+        Gauge.builder("user.permission.circuit.state", breaker, b -> b.getState().ordinal())
+                .description("权限服务熔断器状态：0 关闭，1 打开，2 半开")
+                .register(meterRegistry);
+        staleServedCounter = Counter.builder("user.permission.fallback")
+                .description("权限服务查询降级次数")
+                .tag("result", "stale")
+                .register(meterRegistry);
+        fallbackFailedCounter = Counter.builder("user.permission.fallback")
+                .description("权限服务查询降级次数")
+                .tag("result", "unavailable")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void bindDefaultRole(Long userId) {
+        remote.bindDefaultRole(userId);
+    }
+
+    @Override
+    public void bindDefaultRoles(List<Long> userIds) {
+        remote.bindDefaultRoles(userIds);
+    }
+
+    @Override
+    public String getUserRoleCode(Long userId) {
+        // 幂等查询，慢时可发出对冲请求；只有远程调用成功的结果才写入最近成功值，降级值不刷新其时间
+        return call(client -> {
+            String roleCode = hedgedExecutor.execute(() -> client.getUserRoleCode(userId));
+            lastKnownGood.putRoleCode(userId, roleCode);
+            return roleCode;
+        }, fallback -> {
+            pendingRevalidation.put(userId, Boolean.TRUE);
+            return fallback.getUserRoleCode(userId);
+        });
+    }
+
+    @Override
+    public String getUserRoleCodeForIssue(Long userId) {
+        // 签发令牌不降级，也不写入最近成功值
+        return remote.getUserRoleCodeForIssue(userId);
+    }
+
+    @Override
+    public Map<Long, String> getUserRoleCodes(List<Long> userIds) {
+        return call(client -> {
+            Map<Long, String> roleCodes = client.getUserRoleCodes(userIds);
+            if (roleCodes != null) {
+                lastKnownGood.putRoleCodes(roleCodes);
+            }
+            return roleCodes;
+        }, fallback -> fallback.getUserRoleCodes(userIds));
+    }
+
+    @Override
+    public void upgradeToAdmin(Long userId) {
+        remote.upgradeToAdmin(userId);
+    }
+
+    @Override
+    public void downgradeToUser(Long userId) {
+        remote.downgradeToUser(userId);
+    }
+
+    @Override
+    public PageResult<Long> getVisibleUserIds(Long currentUserId, String currentUserRole, int pageNo, int pageSize) {
+        return call(client -> {
+            PageResult<Long> page = client.getVisibleUserIds(currentUserId, currentUserRole, pageNo, pageSize);
+            lastKnownGood.putVisibleUserIds(currentUserId, currentUserRole, pageNo, pageSize, page);
+            return page;
+        }, fallback -> fallback.getVisibleUserIds(currentUserId, currentUserRole, pageNo, pageSize));
+    }
+
+    /**
+     * 后台重新查询降级返回过的角色码，熔断器打开时跳过，半开时作为探测调用
+     */
+    @Scheduled(fixedDelayString = "${user.permission-fallback.revalidate-interval-ms:1000}")
+    public void revalidate() {
+        Iterator<Long> iterator = pendingRevalidation.keySet().iterator();
+        int count = 0;
+        while (iterator.hasNext() && count < revalidateBatchSize) {
+            Long userId = iterator.next();
+            if (!breaker.tryAcquire()) {
+                return;
+            }
+            count++;
+            long startTime = System.nanoTime();
+            try {
+                String roleCode = remote.getUserRoleCode(userId);
+                breaker.onSuccess(System.nanoTime() - startTime);
+                lastKnownGood.putRoleCode(userId, roleCode);
+                iterator.remove();
+            } catch (Exception e) {
+                onFailure(e, System.nanoTime() - startTime);
+                log.debug("[权限降级] 后台重新查询失败: userId={}, error={}", userId, e.getMessage());
+                return;
+            }
+        }
+        if (count > 0) {
+            log.info("[权限降级] 后台重新查询完成: count={}, pending={}", count, pendingRevalidation.size());
+        }
+    }
+
+    private <T> T call(Function<PermissionServiceClient, T> action, Function<PermissionServiceClient, T> fallback) {
+        if (!breaker.tryAcquire()) {
+            return fallback(() -> fallback.apply(openCircuitFallback));
+        }
+        long startTime = System.nanoTime();
+        try {
+            T result = action.apply(remote);
+            breaker.onSuccess(System.nanoTime() - startTime);
+            return result;
+        } catch (RuntimeException e) {
+            if (!onFailure(e, System.nanoTime() - startTime)) {
+                throw e;
+            }
+            return fallback(() -> fallback.apply(fallbackFactory.create(e)));
+        }
+    }
+
+    /**
+     * 记录失败调用
+     *
+     * @return 是否应降级；4xx 为请求本身的问题，说明服务可用，不降级也不计入失败
+     */
+    private boolean onFailure(Exception e, long elapsedNanos) {
+        if (e instanceof FeignException) {
+            int status = ((FeignException) e).status();
+            if (status >= 400 && status < 500) {
+                breaker.onSuccess(elapsedNanos);
+                return false;
+            }
+        }
+        breaker.onFailure();
+        return true;
+    }
+
+    private <T> T fallback(Supplier<T> supplier) {
+        try {
+            T result = supplier.get();
+            staleServedCounter.increment();
+            return result;
+        } catch (RuntimeException e) {
+            fallbackFailedCounter.increment();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.ajiang.userservice.idempotency;
+
+import cn.hutool.crypto.digest.HMac;
+import cn.hutool.crypto.digest.HmacAlgorithm;
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.common.model.ApiResponse;
+import com.alibaba.fastjson.JSON;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Idempotency-Key 请求头的幂等执行器
+ * 1. 同一实例内的并发重复请求等待首个请求的执行结果（in-flight 去重）
+ * 2. 跨实例通过存储中的“处理中”占位互斥，后到的请求轮询等待结果
+ * 3. 成功的响应按 TTL 保存，重试直接回放，不再走完整写路径
+ * 执行失败时删除占位，客户端可以用同一个键重试
+ * 请求指纹是完整请求内容（含密码字段）以服务端密钥计算的 HMAC，不知道密钥无法从存储中离线猜测明文
+ */
+@Slf4j
+@Component
+public class IdempotencyExecutor {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    // 存储值：处理中标记，或 结果标记 + 请求指纹 + 响应JSON
+    private static final String PROCESSING = "P";
+    private static final char RESULT_MARK = 'R';
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private static final long POLL_INTERVAL_MS = 50;
+
+    @Autowired
+    private IdempotencyStore idempotencyStore;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 响应保存时间（秒）
+    @Value("${idempotency.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    // 处理中占位的过期时间（秒），防止实例宕机后键被永久占用
+    @Value("${idempotency.in-flight-ttl-seconds:30}")
+    private long inFlightTtlSeconds;
+
+    // 重复请求等待首个请求完成的最长时间
+    @Value("${idempotency.wait-timeout-ms:10000}")
+    private long waitTimeoutMs;
+
+    // 请求指纹的 HMAC 密钥，多实例之间必须一致，没有默认值，必须在配置中提供
+    @Value("${idempotency.fingerprint-secret}")
+    private String fingerprintSecret;
+
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * 幂等执行
+     *
+     * @param scope          接口范围，如 register
+     * @param idempotencyKey 客户端提供的幂等键，为空时直接执行
+     * @param request        请求内容，用于校验同一个键没有被不同请求复用
+     * @param dataType       响应数据类型，用于回放时反序列化
+     * @param action         实际执行的操作
+     * @return 响应
+     */
+    public <T> ApiResponse<T> execute(String scope, String idempotencyKey, Object request, Class<T> dataType,
+                                      Supplier<ApiResponse<T>> action) {
+        if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new BusinessException("Idempotency-Key 长度不能超过" + MAX_KEY_LENGTH);
+        }
+        String key = scope + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        JavaType responseType = objectMapper.getTypeFactory().constructParametricType(ApiResponse.class, dataType);
+
+        // 同一实例内的重复请求直接等待首个请求
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            log.info("[幂等] 等待同一实例内的首个请求: key={}", key);
+            return replay(key, awaitLocal(existing), fingerprint, responseType);
+        }
+
+        try {
+            String stored = idempotencyStore.get(key);
+            if (stored == null && !idempotencyStore.putIfAbsent(key, PROCESSING, inFlightTtlSeconds)) {
+                stored = idempotencyStore.get(key);
+            }
+            if (stored != null) {
+                // 已完成，或其他实例正在处理
+                if (PROCESSING.equals(stored)) {
+                    log.info("[幂等] 等待其他实例的首个请求: key={}", key);
+                    stored = awaitRemote(key);
+                }
+                mine.complete(stored);
+                return replay(key, stored, fingerprint, responseType);
+            }
+
+            ApiResponse<T> response;
+            try {
+                response = action.get();
+            } catch (RuntimeException e) {
+                idempotencyStore.remove(key);
+                mine.completeExceptionally(e);
+                throw e;
+            }
+            // 操作已提交，保存结果失败也返回本次的结果，只是之后的重试不能回放
+            try {
+                String value = RESULT_MARK + fingerprint + serialize(response);
+                mine.complete(value);
+                idempotencyStore.put(key, value, ttlSeconds);
+            } catch (RuntimeException e) {
+                log.error("[幂等] 保存响应失败，释放占位: key={}", key, e);
+                mine.completeExceptionally(e);
+                releaseQuietly(key);
+            }
+            return response;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (fingerprintSecret == null || fingerprintSecret.trim().isEmpty()) {
+            throw new IllegalStateException("idempotency.fingerprint-secret 未配置");
+        }
+    }
+
+    /**
+     * 计算请求指纹：完整请求内容用服务端密钥做 HMAC-SHA256
+     * 密码等字段必须参与计算，否则同一个键携带不同密码的请求会被当作重复请求回放
+     */
+    private String fingerprint(Object request) {
+        String content = JSON.toJSONString(request);
+        HMac hmac = new HMac(HmacAlgorithm.HmacSHA256, fingerprintSecret.getBytes(StandardCharsets.UTF_8));
+        return hmac.digestHex(content).substring(0, FINGERPRINT_LENGTH);
+    }
+
+    private void releaseQuietly(String key) {
+        try {
+            idempotencyStore.remove(key);
+        } catch (RuntimeException e) {
+            log.error("[幂等] 释放占位失败，等待占位过期: key={}", key, e);
+        }
+    }
+
+    private String awaitLocal(CompletableFuture<String> future) {
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            // 首个请求失败时，重复请求得到同样的异常
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new BusinessException("请求处理失败，请重试", e.getCause());
+        } catch (TimeoutException e) {
+            throw new BusinessException("相同请求正在处理中，请稍后重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("相同请求正在处理中，请稍后重试");
+        }
+    }
+
+    private String awaitRemote(String key) {
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            String stored = idempotencyStore.get(key);
+            if (stored == null) {
+                // 首个请求失败并释放了占位
+                throw new BusinessException("请求处理失败，请重试");
+            }
+            if (!PROCESSING.equals(stored)) {
+                return stored;
+            }
+        }
+        throw new BusinessException("相同请求正在处理中，请稍后重试");
+    }
+
+    private <T> ApiResponse<T> replay(String key, String stored, String fingerprint, JavaType responseType) {
+        if (!stored.startsWith(RESULT_MARK + fingerprint)) {
+            log.warn("[幂等] 幂等键被不同的请求复用: key={}", key);
+            throw new BusinessException("Idempotency-Key 已被用于不同的请求");
+        }
+        try {
+            log.info("[幂等] 回放已保存的响应: key={}", key);
+            return objectMapper.readValue(stored.substring(1 + FINGERPRINT_LENGTH), responseType);
+        } catch (IOException e) {
+            throw new BusinessException("幂等响应解析失败", e);
+        }
+    }
+
+    private String serialize(ApiResponse<?> response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (IOException e) {
+            throw new BusinessException("幂等响应序列化失败", e);
+        }
+    }
+}
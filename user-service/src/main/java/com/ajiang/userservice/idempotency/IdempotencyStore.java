@@ -0,0 +1,42 @@
+package com.ajiang.userservice.idempotency;
+
+/**
+ * 幂等结果存储
+ * 每个幂等键只保存一个字符串值：处理中标记或已完成请求的响应
+ */
+public interface IdempotencyStore {
+
+    /**
+     * 读取幂等键当前的值
+     *
+     * @param key 幂等键
+     * @return 值，不存在时返回 null
+     */
+    String get(String key);
+
+    /**
+     * 键不存在时写入值（占位）
+     *
+     * @param key        幂等键
+     * @param value      值
+     * @param ttlSeconds 过期时间（秒）
+     * @return 是否写入成功
+     */
+    boolean putIfAbsent(String key, String value, long ttlSeconds);
+
+    /**
+     * 写入值（覆盖）
+     *
+     * @param key        幂等键
+     * @param value      值
+     * @param ttlSeconds 过期时间（秒）
+     */
+    void put(String key, String value, long ttlSeconds);
+
+    /**
+     * 删除幂等键
+     *
+     * @param key 幂等键
+     */
+    void remove(String key);
+}
@@ -0,0 +1,72 @@
+package com.ajiang.userservice.idempotency;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内幂等结果存储，用于测试和单实例部署
+ */
+@Component
+@ConditionalOnProperty(name = "idempotency.store", havingValue = "local")
+public class LocalIdempotencyStore implements IdempotencyStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static final class Entry {
+        private final String value;
+        private final long expireAt;
+
+        Entry(String value, long ttlSeconds) {
+            this.value = value;
+            this.expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expireAt;
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value, long ttlSeconds) {
+        Entry created = new Entry(value, ttlSeconds);
+        long now = System.currentTimeMillis();
+        Entry result = entries.compute(key, (k, old) -> old == null || old.isExpired(now) ? created : old);
+        return result == created;
+    }
+
+    @Override
+    public void put(String key, String value, long ttlSeconds) {
+        entries.put(key, new Entry(value, ttlSeconds));
+    }
+
+    @Override
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 定时清理过期条目
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+}
@@ -0,0 +1,42 @@
+package com.ajiang.userservice.idempotency;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Redis 的幂等结果存储，多实例共享
+ */
+@Component
+@ConditionalOnProperty(name = "idempotency.store", havingValue = "redis", matchIfMissing = true)
+public class RedisIdempotencyStore implements IdempotencyStore {
+
+    private static final String KEY_PREFIX = "idem:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public String get(String key) {
+        return stringRedisTemplate.opsForValue().get(KEY_PREFIX + key);
+    }
+
+    @Override
+    public boolean putIfAbsent(String key, String value, long ttlSeconds) {
+        return Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(KEY_PREFIX + key, value, ttlSeconds, TimeUnit.SECONDS));
+    }
+
+    @Override
+    public void put(String key, String value, long ttlSeconds) {
+        stringRedisTemplate.opsForValue().set(KEY_PREFIX + key, value, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void remove(String key) {
+        stringRedisTemplate.delete(KEY_PREFIX + key);
+    }
+}
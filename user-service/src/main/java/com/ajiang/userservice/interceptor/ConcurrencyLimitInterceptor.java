@@ -0,0 +1,190 @@
+package com.ajiang.userservice.interceptor;
+
+import com.ajiang.userservice.limiter.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 并发限制拦截器
+ * 按接口分组（认证、读、管理写）各自使用自适应并发限制器，超出当前上限的请求立即返回 503，
+ * 不占用 Tomcat 线程排队等待下游。登出和令牌校验走独立的优先通道（固定名额），不受过载影响。
+ * 导出和导入可能持续数分钟，走单独的固定名额通道，不计入自适应限制器的延迟样本。
+ * 需注册在令牌校验拦截器之前，被拒绝的请求不再访问 Redis。
+ * 异步请求（如响应式登录）在异步处理完成后才释放名额
+ */
+@Slf4j
+@Component
+public class ConcurrencyLimitInterceptor implements AsyncHandlerInterceptor {
+
+    private static final String ATTR_PERMIT = ConcurrencyLimitInterceptor.class.getName() + ".permit";
+
+    /**
+     * 接口分组
+     */
+    enum Group {
+        // 登出、令牌校验
+        PRIORITY,
+        // 登录、注册、刷新令牌
+        AUTH,
+        // 查询类接口
+        READ,
+        // 修改用户、重置密码
+        ADMIN_WRITE,
+        // 导出、导入
+        BULK
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.limiter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${user.limiter.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${user.limiter.min-limit:4}")
+    private int minLimit;
+
+    @Value("${user.limiter.auth.max-limit:200}")
+    private int authMaxLimit;
+
+    @Value("${user.limiter.read.max-limit:400}")
+    private int readMaxLimit;
+
+    @Value("${user.limiter.admin-write.max-limit:50}")
+    private int adminWriteMaxLimit;
+
+    // 统计延迟、调整上限的时间窗（毫秒）
+    @Value("${user.limiter.window-ms:100}")
+    private long windowMs;
+
+    // 允许短期延迟超过长期基线的倍数
+    @Value("${user.limiter.tolerance:1.5}")
+    private double tolerance;
+
+    // 优先通道的并发名额
+    @Value("${user.limiter.priority-permits:32}")
+    private int priorityPermits;
+
+    private final Map<Group, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(Group.class);
+
+    private final Map<Group, Counter> rejectedCounters = new EnumMap<>(Group.class);
+
+    // 导出、导入通道的并发名额
+    @Value("${user.limiter.bulk-permits:2}")
+    private int bulkPermits;
+
+    // 固定名额的通道：优先通道、批量通道
+    private final Map<Group, Semaphore> fixedLanes = new EnumMap<>(Group.class);
+
+    @PostConstruct
+    public void init() {
+        limiters.put(Group.AUTH, newLimiter("auth", authMaxLimit));
+        limiters.put(Group.READ, newLimiter("read", readMaxLimit));
+        limiters.put(Group.ADMIN_WRITE, newLimiter("admin-write", adminWriteMaxLimit));
+        fixedLanes.put(Group.PRIORITY, new Semaphore(priorityPermits));
+        fixedLanes.put(Group.BULK, new Semaphore(bulkPermits));
+
+        for (Group group : Group.values()) {
+            rejectedCounters.put(group, Counter.builder("user.limiter.rejected")
+                    .description("因超过并发上限被拒绝的请求数")
+                    .tag("group", group.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        for (AdaptiveConcurrencyLimiter limiter : limiters.values()) {
+            Gauge.builder("user.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("当前并发上限")
+                    .tag("group", limiter.getName())
+                    .register(meterRegistry);
+            Gauge.builder("user.limiter.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("正在处理的请求数")
+                    .tag("group", limiter.getName())
+                    .register(meterRegistry);
+        }
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws Exception {
+        // 异步请求的再次分派已经持有名额
+        if (!enabled || request.getAttribute(ATTR_PERMIT) != null) {
+            return true;
+        }
+        Group group = classify(request);
+        Semaphore fixedLane = fixedLanes.get(group);
+        boolean acquired = fixedLane != null ? fixedLane.tryAcquire() : limiters.get(group).tryAcquire();
+        if (!acquired) {
+            rejectedCounters.get(group).increment();
+            log.warn("请求超过并发上限被拒绝: group={}, URI={}", group, request.getRequestURI());
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            response.setContentType("application/json;charset=UTF-8");
+            response.getWriter().write("{\"code\":503,\"message\":\"服务繁忙，请稍后重试\",\"data\":null}");
+            return false;
+        }
+        request.setAttribute(ATTR_PERMIT, new Permit(group, System.nanoTime()));
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        Object attribute = request.getAttribute(ATTR_PERMIT);
+        if (!(attribute instanceof Permit)) {
+            return;
+        }
+        request.removeAttribute(ATTR_PERMIT);
+        Permit permit = (Permit) attribute;
+        Semaphore fixedLane = fixedLanes.get(permit.group);
+        if (fixedLane != null) {
+            fixedLane.release();
+        } else {
+            limiters.get(permit.group).release(System.nanoTime() - permit.startNanos);
+        }
+    }
+
+    private static Group classify(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        if (uri.endsWith("/user/logout") || uri.endsWith("/user/token/validate")) {
+            return Group.PRIORITY;
+        }
+        if (uri.endsWith("/user/login") || uri.endsWith("/user/register") || uri.endsWith("/user/refresh")) {
+            return Group.AUTH;
+        }
+        if (uri.endsWith("/user/export") || uri.endsWith("/user/import")) {
+            return Group.BULK;
+        }
+        return "GET".equalsIgnoreCase(request.getMethod()) ? Group.READ : Group.ADMIN_WRITE;
+    }
+
+    private AdaptiveConcurrencyLimiter newLimiter(String name, int maxLimit) {
+        return new AdaptiveConcurrencyLimiter(name, Math.min(initialLimit, maxLimit), minLimit, maxLimit, windowMs,
+                tolerance);
+    }
+
+    private static final class Permit {
+
+        private final Group group;
+
+        private final long startNanos;
+
+        private Permit(Group group, long startNanos) {
+            this.group = group;
+            this.startNanos = startNanos;
+        }
+    }
+}
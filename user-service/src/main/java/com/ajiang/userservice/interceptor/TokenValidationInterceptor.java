@@ -1,8 +1,11 @@
 package com.ajiang.userservice.interceptor;
 
 import com.ajiang.common.exception.BusinessException;
+import com.ajiang.common.security.RoleEpochStore;
 import com.ajiang.common.util.JwtUtil;
-import com.ajiang.userservice.service.TokenWhitelistService;
+import com.ajiang.userservice.lookup.CoalescingLookups;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -20,11 +23,18 @@ import javax.servlet.http.HttpServletResponse;
 @Component
 public class TokenValidationInterceptor implements HandlerInterceptor {
 
+    // 验证通过后写入请求属性，供控制器直接使用，无需再次解析令牌或远程查询角色
+    public static final String ATTR_CURRENT_USER_ID = "currentUserId";
+    public static final String ATTR_CURRENT_USER_ROLE = "currentUserRole";
+
     @Autowired
     private JwtUtil jwtUtil;
 
     @Autowired
-    private TokenWhitelistService tokenWhitelistService;
+    private CoalescingLookups coalescingLookups;
+
+    @Autowired
+    private RoleEpochStore roleEpochStore;
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
@@ -42,16 +52,28 @@ public class TokenValidationInterceptor implements HandlerInterceptor {
                 throw new BusinessException("未提供认证token");
             }
 
-            // 验证JWT token的格式和签名
-            if (!jwtUtil.validateToken(token)) {
+            // 验证JWT token的格式、签名和有效期，只解析一次，后续校验都使用解析出的声明
+            Claims claims;
+            try {
+                claims = jwtUtil.parseToken(token);
+            } catch (JwtException | IllegalArgumentException e) {
+                log.debug("JWT验证失败: {}", e.getMessage());
                 throw new BusinessException("无效的token");
             }
 
-            // 检查token是否在Redis白名单中
-            if (!tokenWhitelistService.isTokenInWhitelist(token)) {
+            // 检查token是否在Redis白名单中（同一令牌的并发请求合并为一次检查）
+            if (!coalescingLookups.isTokenInWhitelist(token, claims)) {
                 throw new BusinessException("token已失效，请重新登录");
             }
 
+            // 令牌中的角色只在签发后未发生角色变更时可信
+            Long userId = Long.parseLong(claims.getSubject());
+            if (JwtUtil.getRoleEpoch(claims) < roleEpochStore.currentEpoch(userId)) {
+                throw new BusinessException("用户角色已变更，请重新登录");
+            }
+            request.setAttribute(ATTR_CURRENT_USER_ID, userId);
+            request.setAttribute(ATTR_CURRENT_USER_ROLE, claims.get(JwtUtil.CLAIM_ROLE_CODE, String.class));
+
             // 验证通过，继续处理请求
             return true;
 
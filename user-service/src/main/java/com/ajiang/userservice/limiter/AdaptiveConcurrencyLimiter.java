@@ -0,0 +1,126 @@
+package com.ajiang.userservice.limiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基于延迟梯度的自适应并发限制器
+ * 按时间窗统计请求延迟：短期延迟（当前窗口平均值）与长期基线（指数滑动平均）的比值作为梯度，
+ * 延迟上升时按梯度收缩并发上限，延迟平稳时以 sqrt(limit) 的步长试探增长。
+ * 超过上限的请求立即拒绝，不排队，保证已放行请求的延迟稳定
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // 新上限在旧上限上的权重，避免单个窗口的抖动造成上限大幅波动
+    private static final double SMOOTHING = 0.2;
+
+    // 长期基线的滑动窗口数
+    private static final int LONG_WINDOW = 600;
+
+    // 单次收缩的下限：每个窗口最多收缩一半
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final String name;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long windowNanos;
+
+    // 允许短期延迟超过长期基线的倍数，超过后开始收缩
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+
+    // 以下为当前窗口的统计，读写时持有 this 锁
+    private long windowStart = System.nanoTime();
+
+    private long rttSum;
+
+    private int rttCount;
+
+    private int maxInFlight;
+
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit, long windowMillis,
+                                      double tolerance) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowMillis * 1_000_000L;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 尝试占用一个并发名额
+     *
+     * @return false 表示已达到当前上限，请求应被拒绝
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求完成，释放名额并记录延迟样本
+     *
+     * @param rttNanos 请求耗时（纳秒）
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        synchronized (this) {
+            rttSum += rttNanos;
+            rttCount++;
+            maxInFlight = Math.max(maxInFlight, current);
+            long now = System.nanoTime();
+            if (now - windowStart >= windowNanos) {
+                updateLimit();
+                windowStart = now;
+                rttSum = 0;
+                rttCount = 0;
+                maxInFlight = 0;
+            }
+        }
+    }
+
+    private void updateLimit() {
+        double shortRtt = (double) rttSum / rttCount;
+        longRtt = longRtt == 0 ? shortRtt : longRtt + (shortRtt - longRtt) / LONG_WINDOW;
+        // 负载下降后长期基线明显高于当前延迟时，让基线更快回落
+        if (longRtt > shortRtt * 2) {
+            longRtt *= 0.95;
+        }
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        // 实际并发远低于上限时，延迟样本不能说明上限还可以更高
+        if (newLimit > limit && maxInFlight < limit / 2) {
+            return;
+        }
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,158 @@
+package com.ajiang.userservice.limiter;
+
+/**
+ * 基于延迟和失败率的熔断器
+ * 按最近 windowSize 次调用统计：慢调用（耗时超过 slowCallMillis）或失败的比例达到阈值后打开，
+ * 打开期间的调用直接拒绝，调用方立即走降级逻辑，不再等待超时。
+ * 打开 openMillis 后进入半开状态，同一时刻只放行一个探测调用：探测正常则关闭，否则重新打开
+ */
+public class LatencyCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte OK = 0;
+    private static final byte SLOW = 1;
+    private static final byte FAILED = 2;
+
+    private final String name;
+
+    private final int minCalls;
+
+    private final long slowCallNanos;
+
+    private final double slowRateThreshold;
+
+    private final double failureRateThreshold;
+
+    private final long openNanos;
+
+    // 以下字段读写时持有 this 锁
+    private final byte[] outcomes;
+
+    private int position;
+
+    private int recorded;
+
+    private int slowCount;
+
+    private int failedCount;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean probeInFlight;
+
+    public LatencyCircuitBreaker(String name, int windowSize, int minCalls, long slowCallMillis,
+                                 double slowRateThreshold, double failureRateThreshold, long openMillis) {
+        this.name = name;
+        this.outcomes = new byte[Math.max(1, windowSize)];
+        this.minCalls = Math.max(1, Math.min(minCalls, outcomes.length));
+        this.slowCallNanos = slowCallMillis * 1_000_000L;
+        this.slowRateThreshold = slowRateThreshold;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    /**
+     * 是否放行本次调用；放行后必须调用 onSuccess 或 onFailure
+     *
+     * @return false 表示熔断器打开，调用方应直接降级
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        if (probeInFlight) {
+            return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+
+    /**
+     * 调用成功返回
+     *
+     * @param elapsedNanos 调用耗时（纳秒）
+     */
+    public synchronized void onSuccess(long elapsedNanos) {
+        record(elapsedNanos > slowCallNanos ? SLOW : OK);
+    }
+
+    /**
+     * 调用失败（超时、连接失败、服务端错误）
+     */
+    public synchronized void onFailure() {
+        record(FAILED);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    private void record(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+            if (outcome == OK) {
+                state = State.CLOSED;
+                reset();
+            } else {
+                open();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // 打开前已放行的调用，结果不再计入
+            return;
+        }
+        if (recorded == outcomes.length) {
+            remove(outcomes[position]);
+        } else {
+            recorded++;
+        }
+        outcomes[position] = outcome;
+        position = (position + 1) % outcomes.length;
+        if (outcome == SLOW) {
+            slowCount++;
+        } else if (outcome == FAILED) {
+            failedCount++;
+        }
+        if (recorded >= minCalls && ((double) slowCount / recorded >= slowRateThreshold
+                || (double) failedCount / recorded >= failureRateThreshold)) {
+            open();
+        }
+    }
+
+    private void remove(byte outcome) {
+        if (outcome == SLOW) {
+            slowCount--;
+        } else if (outcome == FAILED) {
+            failedCount--;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        reset();
+    }
+
+    private void reset() {
+        position = 0;
+        recorded = 0;
+        slowCount = 0;
+        failedCount = 0;
+    }
+}
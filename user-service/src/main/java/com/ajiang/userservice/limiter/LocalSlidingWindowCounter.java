@@ -0,0 +1,78 @@
+package com.ajiang.userservice.limiter;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内滑动窗口计数器，用于测试和单实例部署
+ */
+@Component
+@ConditionalOnProperty(name = "user.login.throttle.store", havingValue = "local")
+public class LocalSlidingWindowCounter implements SlidingWindowCounter {
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private static final class Window {
+        private final long windowMillis;
+        private long index;
+        private long current;
+        private long previous;
+
+        Window(long windowMillis) {
+            this.windowMillis = windowMillis;
+        }
+
+        synchronized boolean tryAcquire(long limit, long now) {
+            if (estimate(now) >= limit) {
+                return false;
+            }
+            current++;
+            return true;
+        }
+
+        synchronized long estimate(long now) {
+            roll(now);
+            double previousWeight = 1.0 - (double) (now % windowMillis) / windowMillis;
+            return (long) (previous * previousWeight) + current;
+        }
+
+        synchronized boolean isExpired(long now) {
+            roll(now);
+            return current == 0 && previous == 0;
+        }
+
+        private void roll(long now) {
+            long nowIndex = now / windowMillis;
+            if (nowIndex != index) {
+                previous = nowIndex == index + 1 ? current : 0;
+                current = 0;
+                index = nowIndex;
+            }
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String key, long limit, long windowMillis) {
+        return windows.computeIfAbsent(key, k -> new Window(windowMillis))
+                .tryAcquire(limit, System.currentTimeMillis());
+    }
+
+    @Override
+    public long estimate(String key, long windowMillis) {
+        Window window = windows.get(key);
+        return window == null ? 0L : window.estimate(System.currentTimeMillis());
+    }
+
+    /**
+     * 定期清理已滑出窗口的计数
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        windows.values().removeIf(window -> window.isExpired(now));
+    }
+}
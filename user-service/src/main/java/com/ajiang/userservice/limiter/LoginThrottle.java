@@ -0,0 +1,261 @@
+package com.ajiang.userservice.limiter;
+
+import com.ajiang.common.exception.RateLimitException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 登录限流
+ * 在查询用户、校验密码之前按 IP 和用户名两个维度限制登录频率，被拒绝的请求不产生数据库、加密和MQ开销：
+ * 1. 进程内令牌桶（无锁）挡住单实例上的突发请求，不访问 Redis；用户名维度按 用户名+IP 分桶
+ * 2. 滑动窗口计数器限制所有实例合计的请求数，防止攻击流量分散到多个实例后绕过本地限制；
+ *    用户名维度只统计失败的登录（recordFailure），成功登录不占用该账号的窗口配额。
+ *    用户名维度的拒绝只针对 用户名+IP：某个 IP 的失败次数达到上限时只拒绝该 IP；
+ *    账号在所有 IP 上的失败次数达到上限（分散攻击）时，只拒绝对该账号失败过的 IP，
+ *    没有失败记录的 IP 仍可登录，攻击者不能借此把正常用户锁在账号之外
+ * 客户端IP取连接的对端地址，只有对端在 trusted-proxies 中时才采信 X-Forwarded-For，防止伪造请求头绕过IP限制。
+ * 计数器不可用时只依赖本地令牌桶，不影响正常登录
+ */
+@Slf4j
+@Component
+public class LoginThrottle {
+
+    private static final String DIMENSION_IP = "ip";
+    private static final String DIMENSION_USERNAME = "username";
+
+    @Autowired
+    private SlidingWindowCounter slidingWindowCounter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.login.throttle.enabled:true}")
+    private boolean enabled;
+
+    // 单个 IP 在本实例上的登录速率和突发量
+    @Value("${user.login.throttle.ip.rate-per-second:5}")
+    private double ipRatePerSecond;
+
+    @Value("${user.login.throttle.ip.burst:20}")
+    private int ipBurst;
+
+    // 单个 IP 在所有实例上的窗口限制
+    @Value("${user.login.throttle.ip.window-seconds:60}")
+    private long ipWindowSeconds;
+
+    @Value("${user.login.throttle.ip.window-limit:100}")
+    private long ipWindowLimit;
+
+    // 单个用户名（同一IP）在本实例上的登录速率和突发量
+    @Value("${user.login.throttle.username.rate-per-second:1}")
+    private double usernameRatePerSecond;
+
+    @Value("${user.login.throttle.username.burst:5}")
+    private int usernameBurst;
+
+    // 单个用户名+IP在所有实例上的失败登录窗口限制
+    @Value("${user.login.throttle.username.window-seconds:300}")
+    private long usernameWindowSeconds;
+
+    @Value("${user.login.throttle.username.window-limit:20}")
+    private long usernameWindowLimit;
+
+    // 单个用户名在所有 IP 上的失败登录窗口限制，达到后拒绝对该账号失败过的 IP
+    @Value("${user.login.throttle.username.account-window-limit:200}")
+    private long accountWindowLimit;
+
+    // 本地令牌桶的最大数量，超过后新出现的键只受窗口计数器限制，防止大量伪造来源耗尽内存
+    @Value("${user.login.throttle.max-local-keys:100000}")
+    private int maxLocalKeys;
+
+    // 可信反向代理地址（逗号分隔），对端地址在其中时才从 X-Forwarded-For 取客户端IP
+    @Value("${user.login.throttle.trusted-proxies:}")
+    private String trustedProxiesConfig;
+
+    private Set<String> trustedProxies = Collections.emptySet();
+
+    private final Map<String, TokenBucket> ipBuckets = new ConcurrentHashMap<>();
+
+    private final Map<String, TokenBucket> usernameBuckets = new ConcurrentHashMap<>();
+
+    private Counter ipRejectedCounter;
+
+    private Counter usernameRejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        trustedProxies = Arrays.stream(trustedProxiesConfig.split(","))
+                .map(String::trim)
+                .filter(proxy -> !proxy.isEmpty())
+                .collect(Collectors.toSet());
+        ipRejectedCounter = Counter.builder("user.login.throttled")
+                .description("因登录频率过高被拒绝的请求数")
+                .tag("dimension", DIMENSION_IP)
+                .register(meterRegistry);
+        usernameRejectedCounter = Counter.builder("user.login.throttled")
+                .description("因登录频率过高被拒绝的请求数")
+                .tag("dimension", DIMENSION_USERNAME)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 解析用于限流的客户端IP
+     * 对端地址是可信代理时，从右向左跳过 X-Forwarded-For 中的可信代理，取第一个不可信的地址
+     *
+     * @param request 请求
+     * @return 客户端IP
+     */
+    public String clientIp(HttpServletRequest request) {
+        String remoteAddr = request.getRemoteAddr();
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (!trustedProxies.contains(remoteAddr) || forwardedFor == null || forwardedFor.isEmpty()) {
+            return remoteAddr;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !trustedProxies.contains(hop)) {
+                return hop;
+            }
+        }
+        return remoteAddr;
+    }
+
+    /**
+     * 检查登录频率，超过限制时抛出 RateLimitException
+     *
+     * @param ip       客户端IP（clientIp 解析的结果）
+     * @param username 登录用户名
+     */
+    public void check(String ip, String username) {
+        if (!enabled) {
+            return;
+        }
+        String normalizedUsername = normalize(username);
+
+        // 先检查本地令牌桶，突发流量不会打到 Redis
+        TokenBucket ipBucket = bucket(ipBuckets, ip, ipRatePerSecond, ipBurst);
+        if (ipBucket != null && !ipBucket.tryAcquire()) {
+            reject(DIMENSION_IP, ip, normalizedUsername, retryAfterSeconds(ipBucket));
+        }
+        TokenBucket usernameBucket = bucket(usernameBuckets, normalizedUsername + "@" + ip, usernameRatePerSecond,
+                usernameBurst);
+        if (usernameBucket != null && !usernameBucket.tryAcquire()) {
+            reject(DIMENSION_USERNAME, ip, normalizedUsername, retryAfterSeconds(usernameBucket));
+        }
+
+        if (!acquireWindow(DIMENSION_IP + ":" + ip, ipWindowLimit, ipWindowSeconds)) {
+            reject(DIMENSION_IP, ip, normalizedUsername, ipWindowSeconds);
+        }
+        if (isFailureLimited(ip, normalizedUsername)) {
+            reject(DIMENSION_USERNAME, ip, normalizedUsername, usernameWindowSeconds);
+        }
+    }
+
+    /**
+     * 记录一次失败的登录（用户不存在或密码错误），计入 用户名+IP 和账号两个失败窗口
+     *
+     * @param ip       客户端IP
+     * @param username 登录用户名
+     */
+    public void recordFailure(String ip, String username) {
+        if (!enabled) {
+            return;
+        }
+        String normalizedUsername = normalize(username);
+        if (!acquireWindow(failureKey(normalizedUsername, ip), usernameWindowLimit, usernameWindowSeconds)) {
+            log.warn("用户名在该IP上的登录失败次数已达上限: username={}, ip={}", normalizedUsername, ip);
+        }
+        if (!acquireWindow(failureKey(normalizedUsername, null), accountWindowLimit, usernameWindowSeconds)) {
+            log.warn("用户名登录失败次数已达上限，拒绝失败过的IP: username={}, ip={}", normalizedUsername, ip);
+        }
+    }
+
+    /**
+     * 定期丢弃已回满的令牌桶，重新创建的桶状态相同
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleBuckets() {
+        ipBuckets.values().removeIf(TokenBucket::isFull);
+        usernameBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    private TokenBucket bucket(Map<String, TokenBucket> buckets, String key, double ratePerSecond, int burst) {
+        TokenBucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxLocalKeys) {
+            return null;
+        }
+        return buckets.computeIfAbsent(key, k -> new TokenBucket(ratePerSecond, burst));
+    }
+
+    /**
+     * 该 IP 是否因对该用户名的失败登录被限制
+     * 没有失败记录的 IP 不读取账号维度的计数，正常登录只多一次计数读取
+     */
+    private boolean isFailureLimited(String ip, String normalizedUsername) {
+        long ipFailures = failureEstimate(failureKey(normalizedUsername, ip), normalizedUsername);
+        if (ipFailures >= usernameWindowLimit) {
+            return true;
+        }
+        return ipFailures > 0
+                && failureEstimate(failureKey(normalizedUsername, null), normalizedUsername) >= accountWindowLimit;
+    }
+
+    private long failureEstimate(String key, String normalizedUsername) {
+        try {
+            return slidingWindowCounter.estimate(key, usernameWindowSeconds * 1000);
+        } catch (Exception e) {
+            log.warn("登录失败计数读取失败，仅使用本地限流: username={}, error={}", normalizedUsername, e.getMessage());
+            return 0L;
+        }
+    }
+
+    /**
+     * 失败计数键，ip 为 null 时为账号维度
+     */
+    private static String failureKey(String normalizedUsername, String ip) {
+        String key = DIMENSION_USERNAME + ":failed:" + normalizedUsername;
+        return ip == null ? key : key + "@" + ip;
+    }
+
+    private static String normalize(String username) {
+        return username == null ? "" : username.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private boolean acquireWindow(String key, long limit, long windowSeconds) {
+        try {
+            return slidingWindowCounter.tryAcquire(key, limit, windowSeconds * 1000);
+        } catch (Exception e) {
+            log.warn("登录限流计数失败，仅使用本地限流: key={}, error={}", key, e.getMessage());
+            return true;
+        }
+    }
+
+    private void reject(String dimension, String ip, String username, long retryAfterSeconds) {
+        (DIMENSION_IP.equals(dimension) ? ipRejectedCounter : usernameRejectedCounter).increment();
+        log.warn("[业务异常] 登录频率过高: dimension={}, ip={}, username={}", dimension, ip, username);
+        throw new RateLimitException("登录尝试过于频繁，请稍后再试", retryAfterSeconds);
+    }
+
+    private static long retryAfterSeconds(TokenBucket bucket) {
+        return Math.max(1L, (bucket.nanosUntilAvailable() + 999_999_999L) / 1_000_000_000L);
+    }
+}
@@ -0,0 +1,63 @@
+package com.ajiang.userservice.limiter;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基于 Redis 的滑动窗口计数器，多实例共享
+ * 每个固定窗口一个计数键，读取两个窗口、判断、计数在一个 Lua 脚本中完成，只需一次往返
+ */
+@Component
+@ConditionalOnProperty(name = "user.login.throttle.store", havingValue = "redis", matchIfMissing = true)
+public class RedisSlidingWindowCounter implements SlidingWindowCounter {
+
+    private static final String KEY_PREFIX = "throttle:";
+
+    // KEYS[1] 当前窗口，KEYS[2] 上一窗口；ARGV[1] 上限，ARGV[2] 上一窗口权重（千分比），ARGV[3] 过期时间（毫秒）
+    private static final RedisScript<Long> ACQUIRE_SCRIPT = new DefaultRedisScript<>(
+            "local current = tonumber(redis.call('GET', KEYS[1]) or '0') " +
+                    "local previous = tonumber(redis.call('GET', KEYS[2]) or '0') " +
+                    "if previous * tonumber(ARGV[2]) / 1000 + current >= tonumber(ARGV[1]) then return 0 end " +
+                    "redis.call('INCR', KEYS[1]) " +
+                    "if current == 0 then redis.call('PEXPIRE', KEYS[1], ARGV[3]) end " +
+                    "return 1",
+            Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Override
+    public boolean tryAcquire(String key, long limit, long windowMillis) {
+        long now = System.currentTimeMillis();
+        long window = now / windowMillis;
+        long previousWeight = 1000 - (now % windowMillis) * 1000 / windowMillis;
+        Long result = stringRedisTemplate.execute(ACQUIRE_SCRIPT,
+                Arrays.asList(KEY_PREFIX + key + ":" + window, KEY_PREFIX + key + ":" + (window - 1)),
+                String.valueOf(limit), String.valueOf(previousWeight), String.valueOf(windowMillis * 2));
+        return result != null && result == 1L;
+    }
+
+    @Override
+    public long estimate(String key, long windowMillis) {
+        long now = System.currentTimeMillis();
+        long window = now / windowMillis;
+        long previousWeight = 1000 - (now % windowMillis) * 1000 / windowMillis;
+        List<String> counts = stringRedisTemplate.opsForValue().multiGet(
+                Arrays.asList(KEY_PREFIX + key + ":" + window, KEY_PREFIX + key + ":" + (window - 1)));
+        if (counts == null) {
+            return 0L;
+        }
+        return parse(counts.get(1)) * previousWeight / 1000 + parse(counts.get(0));
+    }
+
+    private static long parse(String count) {
+        return count == null ? 0L : Long.parseLong(count);
+    }
+}
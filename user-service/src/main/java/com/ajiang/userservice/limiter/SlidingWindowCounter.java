@@ -0,0 +1,29 @@
+package com.ajiang.userservice.limiter;
+
+/**
+ * 滑动窗口计数器，用于跨实例的频率限制
+ * 采用滑动窗口近似算法：保存当前和上一个固定窗口的计数，
+ * 估计值 = 上一窗口计数 × 上一窗口在滑动窗口内的占比 + 当前窗口计数
+ */
+public interface SlidingWindowCounter {
+
+    /**
+     * 估计值未达到上限时计数并放行
+     * 被拒绝的请求不计数，攻击停止后限制按窗口自然恢复
+     *
+     * @param key          限流键，如 ip:1.2.3.4
+     * @param limit        窗口内允许的请求数
+     * @param windowMillis 窗口长度（毫秒）
+     * @return 是否放行
+     */
+    boolean tryAcquire(String key, long limit, long windowMillis);
+
+    /**
+     * 只读取当前估计值，不计数
+     *
+     * @param key          限流键
+     * @param windowMillis 窗口长度（毫秒）
+     * @return 滑动窗口内的估计计数
+     */
+    long estimate(String key, long windowMillis);
+}
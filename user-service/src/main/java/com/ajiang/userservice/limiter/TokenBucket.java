@@ -0,0 +1,64 @@
+package com.ajiang.userservice.limiter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ * 按 GCRA（通用信元速率算法）实现：只保存一个“理论到达时间” tat，
+ * 每放行一个请求 tat 向后推进一个发放间隔，tat 领先当前时间超过桶容量对应的时长时拒绝。
+ * 与令牌桶等价，但状态只有一个 long，通过 CAS 更新，无锁、不分配对象
+ */
+public class TokenBucket {
+
+    // 每个令牌的发放间隔（纳秒）
+    private final long intervalNanos;
+
+    // 允许 tat 领先当前时间的最大值，即桶容量对应的时长
+    private final long capacityNanos;
+
+    private final AtomicLong tat;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数
+     * @param capacity      桶容量，即允许的突发请求数
+     */
+    public TokenBucket(double ratePerSecond, int capacity) {
+        this.intervalNanos = Math.max(1L, (long) (1_000_000_000L / ratePerSecond));
+        this.capacityNanos = intervalNanos * Math.max(1, capacity);
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return false 表示令牌已耗尽
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now) + intervalNanos;
+            if (next - now > capacityNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 距离下一个令牌可用的等待时间（纳秒），0 表示当前可用
+     */
+    public long nanosUntilAvailable() {
+        long now = System.nanoTime();
+        return Math.max(0L, tat.get() + intervalNanos - now - capacityNanos);
+    }
+
+    /**
+     * 桶是否已满（长时间没有请求），已满的桶可以丢弃，重新创建的桶状态相同
+     */
+    public boolean isFull() {
+        return tat.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,264 @@
+package com.ajiang.userservice.loadbalancer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 幂等查询的对冲请求（hedged request）
+ * 请求发出后超过近期延迟的 percentile 分位仍未返回时，再发出一个相同的请求，取先成功返回的结果。
+ * 第二个请求经过基于延迟的负载均衡，第一个请求所在实例的进行中请求数已增加，通常会落到其他实例上。
+ * 对冲请求受令牌桶限制：每个请求存入 max-ratio 个令牌，每次对冲消耗一个，最多积累 burst 个。
+ * 长时间健康运行后变慢时，最多先发出 burst 个对冲请求，之后对冲比例不超过 max-ratio，不会成倍放大负载；
+ * 线程池满时不对冲，直接在调用线程上执行。只能用于幂等的查询
+ */
+@Slf4j
+@Component
+public class HedgedExecutor {
+
+    // 延迟样本数
+    private static final int SAMPLE_SIZE = 512;
+
+    // 对冲延迟的重新计算间隔
+    private static final long RECOMPUTE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // 对冲令牌桶以千分之一令牌为单位计数
+    private static final long TOKEN_UNITS = 1000;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.hedging.enabled:false}")
+    private boolean enabled;
+
+    // 按近期延迟的该分位数决定何时发出对冲请求
+    @Value("${user.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${user.hedging.min-delay-ms:5}")
+    private long minDelayMs;
+
+    // 样本不足时使用的对冲延迟
+    @Value("${user.hedging.initial-delay-ms:50}")
+    private long initialDelayMs;
+
+    @Value("${user.hedging.max-ratio:0.1}")
+    private double maxRatio;
+
+    // 令牌桶容量，即持续健康之后变慢时最多连续发出的对冲请求数
+    @Value("${user.hedging.burst:10}")
+    private int burst;
+
+    @Value("${user.hedging.threads:64}")
+    private int threads;
+
+    private ThreadPoolExecutor executor;
+
+    // 延迟样本环形缓冲，写入时持有 samples 锁
+    private final long[] samples = new long[SAMPLE_SIZE];
+
+    private int sampleCount;
+
+    private int samplePosition;
+
+    private volatile long hedgeDelayNanos;
+
+    private volatile long delayComputedAt;
+
+    // 对冲令牌桶中的令牌数（千分之一令牌）
+    private final AtomicLong hedgeBudget = new AtomicLong();
+
+    private Counter hedgedCounter;
+
+    private Counter hedgeWonCounter;
+
+    @PostConstruct
+    public void init() {
+        hedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialDelayMs);
+        delayComputedAt = System.nanoTime();
+        hedgeBudget.set(burst * TOKEN_UNITS);
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(threads),
+                r -> {
+                    Thread thread = new Thread(r, "hedged-request-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        hedgedCounter = Counter.builder("user.hedging.requests")
+                .description("对冲请求数")
+                .tag("result", "sent")
+                .register(meterRegistry);
+        hedgeWonCounter = Counter.builder("user.hedging.requests")
+                .description("对冲请求数")
+                .tag("result", "won")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 执行幂等查询，慢时发出对冲请求
+     *
+     * @param query 查询操作，可能被执行两次
+     * @return 先成功返回的结果
+     */
+    public <T> T execute(Supplier<T> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        depositBudget();
+        long startTime = System.nanoTime();
+        CompletableFuture<T> primary;
+        try {
+            primary = CompletableFuture.supplyAsync(query, executor);
+        } catch (RejectedExecutionException e) {
+            return record(startTime, query.get());
+        }
+        try {
+            return record(startTime, primary.get(currentDelayNanos(), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+            return hedge(query, primary, startTime);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("查询被中断", e);
+        }
+    }
+
+    private <T> T hedge(Supplier<T> query, CompletableFuture<T> primary, long startTime) {
+        CompletableFuture<T> secondary = null;
+        if (tryAcquireBudget()) {
+            try {
+                secondary = CompletableFuture.supplyAsync(query, executor);
+                hedgedCounter.increment();
+            } catch (RejectedExecutionException e) {
+                hedgeBudget.addAndGet(TOKEN_UNITS);
+                log.debug("[对冲请求] 线程池已满，不发出对冲请求");
+            }
+        }
+        try {
+            if (secondary == null) {
+                return record(startTime, primary.join());
+            }
+            T result = firstSuccessful(primary, secondary).join();
+            if (secondary.isDone() && !secondary.isCompletedExceptionally()
+                    && (!primary.isDone() || primary.isCompletedExceptionally())) {
+                hedgeWonCounter.increment();
+            }
+            return record(startTime, result);
+        } catch (CompletionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    /**
+     * 每个请求向令牌桶存入 max-ratio 个令牌，不超过桶容量
+     */
+    private void depositBudget() {
+        long deposit = Math.round(maxRatio * TOKEN_UNITS);
+        long capacity = burst * TOKEN_UNITS;
+        hedgeBudget.getAndUpdate(budget -> Math.min(capacity, budget + deposit));
+    }
+
+    /**
+     * 从令牌桶取出一个令牌，不足一个时不对冲
+     */
+    private boolean tryAcquireBudget() {
+        while (true) {
+            long budget = hedgeBudget.get();
+            if (budget < TOKEN_UNITS) {
+                return false;
+            }
+            if (hedgeBudget.compareAndSet(budget, budget - TOKEN_UNITS)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 两个请求中先成功的结果；都失败时返回第一个请求的异常
+     */
+    private static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> primary,
+                                                            CompletableFuture<T> secondary) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        primary.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                result.completeExceptionally(error);
+            }
+        });
+        secondary.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+            } else if (failures.incrementAndGet() == 2) {
+                primary.whenComplete((v, primaryError) -> result.completeExceptionally(primaryError));
+            }
+        });
+        return result;
+    }
+
+    private <T> T record(long startTime, T result) {
+        long elapsedNanos = System.nanoTime() - startTime;
+        synchronized (samples) {
+            samples[samplePosition] = elapsedNanos;
+            samplePosition = (samplePosition + 1) % SAMPLE_SIZE;
+            if (sampleCount < SAMPLE_SIZE) {
+                sampleCount++;
+            }
+        }
+        return result;
+    }
+
+    private long currentDelayNanos() {
+        long now = System.nanoTime();
+        if (now - delayComputedAt >= RECOMPUTE_INTERVAL_NANOS) {
+            delayComputedAt = now;
+            long[] sorted;
+            synchronized (samples) {
+                // 样本不足时不更新，继续使用初始延迟
+                sorted = sampleCount < 32 ? null : Arrays.copyOf(samples, sampleCount);
+            }
+            if (sorted != null) {
+                Arrays.sort(sorted);
+                int index = Math.min(sorted.length - 1, (int) (sorted.length * percentile));
+                hedgeDelayNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(minDelayMs), sorted[index]);
+            }
+        }
+        return hedgeDelayNanos;
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+}
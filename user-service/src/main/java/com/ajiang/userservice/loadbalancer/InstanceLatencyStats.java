@@ -0,0 +1,114 @@
+package com.ajiang.userservice.loadbalancer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务实例的延迟和并发统计
+ * 每个实例维护进行中的请求数和按时间衰减的指数滑动平均延迟（EWMA）：
+ * 样本权重随距上次样本的时间指数衰减，一段时间没有请求的实例，历史高延迟的影响会逐渐消失，重新获得流量。
+ * 失败的请求按 failure-penalty-ms 计入，使出错的实例迅速降低权重
+ */
+@Component
+public class InstanceLatencyStats {
+
+    // 衰减时间常数（毫秒）
+    @Value("${user.loadbalancer.ewma-decay-ms:10000}")
+    private long decayMs;
+
+    @Value("${user.loadbalancer.failure-penalty-ms:1000}")
+    private long failurePenaltyMs;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 实例的负载评分，越小越优先：EWMA 延迟 x (进行中请求数 + 1)
+     * 没有样本的实例评分为 0，新实例会先被试探
+     *
+     * @param instance 服务实例
+     * @return 评分
+     */
+    public double score(ServiceInstance instance) {
+        Stats current = stats.get(key(instance));
+        if (current == null) {
+            return 0;
+        }
+        return current.ewmaNanos() * (current.inFlight.get() + 1);
+    }
+
+    public int inFlight(ServiceInstance instance) {
+        Stats current = stats.get(key(instance));
+        return current == null ? 0 : current.inFlight.get();
+    }
+
+    public void onStart(ServiceInstance instance) {
+        statsOf(instance).inFlight.incrementAndGet();
+    }
+
+    /**
+     * 请求完成
+     *
+     * @param instance     服务实例
+     * @param elapsedNanos 耗时（纳秒），未知时传负数，只减少进行中请求数
+     * @param failed       是否失败
+     */
+    public void onComplete(ServiceInstance instance, long elapsedNanos, boolean failed) {
+        Stats current = statsOf(instance);
+        current.inFlight.decrementAndGet();
+        if (failed) {
+            current.observe(Math.max(elapsedNanos, failurePenaltyMs * 1_000_000L));
+        } else if (elapsedNanos >= 0) {
+            current.observe(elapsedNanos);
+        }
+    }
+
+    private Stats statsOf(ServiceInstance instance) {
+        return stats.computeIfAbsent(key(instance), k -> new Stats(decayMs * 1_000_000L));
+    }
+
+    private static String key(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
+
+    private static final class Stats {
+
+        private final double decayNanos;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        // 以下字段读写时持有 this 锁
+        private double ewma;
+
+        private long lastSampleAt;
+
+        private boolean sampled;
+
+        private Stats(long decayNanos) {
+            this.decayNanos = Math.max(1, decayNanos);
+        }
+
+        private synchronized void observe(long elapsedNanos) {
+            long now = System.nanoTime();
+            if (!sampled) {
+                ewma = elapsedNanos;
+                sampled = true;
+            } else {
+                double weight = Math.exp(-(now - lastSampleAt) / decayNanos);
+                ewma = ewma * weight + elapsedNanos * (1 - weight);
+            }
+            lastSampleAt = now;
+        }
+
+        /**
+         * 当前评分使用的延迟：距上次样本越久衰减越多，长时间未被选中的实例会重新被试探
+         */
+        private synchronized double ewmaNanos() {
+            return sampled ? ewma * Math.exp(-(System.nanoTime() - lastSampleAt) / decayNanos) : 0;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ajiang.userservice.lookup;
+
+import com.ajiang.common.concurrent.SingleFlight;
+import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.mapper.UserMapper;
+import com.ajiang.userservice.service.TokenWhitelistService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 合并并发的相同查询
+ * 登录高峰和管理员刷新列表时，大量线程会同时查询同一个用户的角色、用户信息或同一个令牌的状态，
+ * 进行中的相同查询只执行一次，其余调用方共享结果。不缓存结果：后到达的调用方看到的数据
+ * 最多比单独查询早一个查询耗时。
+ * 通过 user.singleflight.calls 指标（按 name、result 区分）观察合并比例
+ */
+@Component
+public class CoalescingLookups {
+
+    @Autowired
+    private PermissionServiceClient permissionServiceClient;
+
+    // 不带降级的 Feign 客户端，签发令牌时使用
+    @Autowired
+    @Qualifier("permissionServiceFeignClient")
+    private PermissionServiceClient remotePermissionServiceClient;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private TokenWhitelistService tokenWhitelistService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${user.singleflight.enabled:true}")
+    private boolean enabled;
+
+    private final SingleFlight<Long, String> roleCodeFlight = new SingleFlight<>("role-code");
+
+    // 签发令牌时按 userId 和角色版本号合并：角色变更后读到新版本号的调用方不会等待变更前开始的查询，
+    // 令牌中的角色不会比其中的角色版本号更旧
+    private final SingleFlight<String, String> issueRoleCodeFlight = new SingleFlight<>("role-code-issue");
+
+    private final SingleFlight<Long, User> userFlight = new SingleFlight<>("user-by-id");
+
+    private final SingleFlight<String, Boolean> tokenFlight = new SingleFlight<>("token-whitelist");
+
+    @PostConstruct
+    public void init() {
+        registerMetrics(roleCodeFlight);
+        registerMetrics(issueRoleCodeFlight);
+        registerMetrics(userFlight);
+        registerMetrics(tokenFlight);
+    }
+
+    /**
+     * 查询用户角色码（远程调用权限服务）
+     *
+     * @param userId 用户ID
+     * @return 角色码
+     */
+    public String roleCode(Long userId) {
+        if (!enabled) {
+            return permissionServiceClient.getUserRoleCode(userId);
+        }
+        return roleCodeFlight.execute(userId, () -> permissionServiceClient.getUserRoleCode(userId));
+    }
+
+    /**
+     * 签发令牌时查询用户角色码
+     * 调用方需先读取角色版本号，再调用本方法。直接调用权限服务的签发查询（读取数据库，不读可能滞后的进程内索引），
+     * 不使用降级的最近成功值：否则过期的角色（如错过了降级事件的管理员）可能被写入携带当前角色版本号的令牌。
+     * 权限服务不可用时签发失败
+     *
+     * @param userId    用户ID
+     * @param roleEpoch 调用方已读取的角色版本号
+     * @return 角色码
+     */
+    public String roleCodeForIssue(Long userId, long roleEpoch) {
+        if (!enabled) {
+            return remotePermissionServiceClient.getUserRoleCodeForIssue(userId);
+        }
+        return issueRoleCodeFlight.execute(userId + ":" + roleEpoch,
+                () -> remotePermissionServiceClient.getUserRoleCodeForIssue(userId));
+    }
+
+    /**
+     * 按ID查询用户
+     * 返回的对象可能与其他调用方共享，只能用于读取
+     *
+     * @param userId 用户ID
+     * @return 用户，不存在时返回 null
+     */
+    public User userById(Long userId) {
+        if (!enabled) {
+            return userMapper.selectById(userId);
+        }
+        return userFlight.execute(userId, () -> userMapper.selectById(userId));
+    }
+
+    /**
+     * 检查令牌是否有效
+     *
+     * @param token  令牌
+     * @param claims 已解析的令牌声明
+     * @return 是否有效
+     */
+    public boolean isTokenInWhitelist(String token, Claims claims) {
+        if (!enabled) {
+            return tokenWhitelistService.isTokenInWhitelist(token, claims);
+        }
+        return tokenFlight.execute(token, () -> tokenWhitelistService.isTokenInWhitelist(token, claims));
+    }
+
+    private void registerMetrics(SingleFlight<?, ?> flight) {
+        FunctionCounter.builder("user.singleflight.calls", flight, SingleFlight::executedCount)
+                .description("查询调用次数，executed 为实际执行，collapsed 为合并到进行中的查询")
+                .tag("name", flight.getName())
+                .tag("result", "executed")
+                .register(meterRegistry);
+        FunctionCounter.builder("user.singleflight.calls", flight, SingleFlight::collapsedCount)
+                .description("查询调用次数，executed 为实际执行，collapsed 为合并到进行中的查询")
+                .tag("name", flight.getName())
+                .tag("result", "collapsed")
+                .register(meterRegistry);
+        Gauge.builder("user.singleflight.in-flight", flight, SingleFlight::inFlightCount)
+                .description("进行中的查询数")
+                .tag("name", flight.getName())
+                .register(meterRegistry);
+    }
+}
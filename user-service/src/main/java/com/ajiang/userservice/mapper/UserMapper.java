@@ -3,7 +3,24 @@ package com.ajiang.userservice.mapper;
 import com.ajiang.userservice.entity.User;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
+import org.apache.ibatis.annotations.ResultType;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
 @Mapper
 public interface UserMapper extends BaseMapper<User> {
-}
\ No newline at end of file
+
+    /**
+     * 流式读取全部用户（不含密码）
+     * fetchSize = Integer.MIN_VALUE 让 MySQL 驱动逐行返回，ShardingSphere 对各数据节点并行执行，
+     * 并按 user_id 做流式归并，结果集不会整体加载到内存
+     *
+     * @param handler 逐行回调
+     */
+    @Select("SELECT user_id, username, email, phone, gmt_create FROM users ORDER BY user_id")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(User.class)
+    void streamAll(ResultHandler<User> handler);
+}
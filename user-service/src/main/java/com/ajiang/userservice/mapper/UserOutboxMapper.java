@@ -0,0 +1,80 @@
+package com.ajiang.userservice.mapper;
+
+import com.ajiang.userservice.entity.UserOutbox;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface UserOutboxMapper extends BaseMapper<UserOutbox> {
+
+    /**
+     * 查询到期的待投递事件（广播到所有分片后归并）
+     *
+     * @param now   当前时间
+     * @param limit 最大条数
+     * @return 待投递事件
+     */
+    @Select("SELECT id, user_id, event_type, payload, status, retry_count, next_retry_time, gmt_create " +
+            "FROM user_outbox WHERE status = 0 AND next_retry_time <= #{now} ORDER BY id LIMIT #{limit}")
+    List<UserOutbox> selectDue(@Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    /**
+     * 认领事件：写入本次认领标识，并把下次投递时间推后作为租约，其他实例在租约到期前拉取不到这些事件
+     * 只有仍为待投递且已到期的行会被认领，并发认领同一行时只有一个实例成功
+     *
+     * @return 认领成功的行数
+     */
+    @Update("<script>UPDATE user_outbox SET claim_token = #{claimToken}, next_retry_time = #{leaseUntil} " +
+            "WHERE user_id IN <foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach> " +
+            "AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND status = 0 AND next_retry_time &lt;= #{now}</script>")
+    int claim(@Param("userIds") List<Long> userIds, @Param("ids") List<Long> ids, @Param("now") LocalDateTime now,
+              @Param("claimToken") String claimToken, @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * 查询本次认领成功的事件
+     */
+    @Select("<script>SELECT id, user_id, event_type, payload, status, retry_count, next_retry_time, gmt_create " +
+            "FROM user_outbox " +
+            "WHERE user_id IN <foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach> " +
+            "AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND claim_token = #{claimToken} AND status = 0</script>")
+    List<UserOutbox> selectClaimed(@Param("userIds") List<Long> userIds, @Param("ids") List<Long> ids,
+                                   @Param("claimToken") String claimToken);
+
+    /**
+     * 待投递事件数量
+     */
+    @Select("SELECT COUNT(*) FROM user_outbox WHERE status = 0")
+    long countPending();
+
+    /**
+     * 批量标记为已投递
+     * 条件中带上分片键，只路由到涉及的数据节点；只更新本次认领的行
+     */
+    @Update("<script>UPDATE user_outbox SET status = 1 " +
+            "WHERE user_id IN <foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach> " +
+            "AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND claim_token = #{claimToken} AND status = 0</script>")
+    int markDelivered(@Param("userIds") List<Long> userIds, @Param("ids") List<Long> ids,
+                      @Param("claimToken") String claimToken);
+
+    /**
+     * 投递失败：累加重试次数并推迟下次投递时间，超过最大重试次数的标记为失败
+     * MySQL 按从左到右的顺序赋值，status 需在 retry_count 之前计算
+     */
+    @Update("<script>UPDATE user_outbox SET status = CASE WHEN retry_count + 1 &gt;= #{maxRetryCount} THEN 2 ELSE 0 END, " +
+            "retry_count = retry_count + 1, next_retry_time = #{nextRetryTime} " +
+            "WHERE user_id IN <foreach collection='userIds' item='userId' open='(' separator=',' close=')'>#{userId}</foreach> " +
+            "AND id IN <foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach> " +
+            "AND claim_token = #{claimToken} AND status = 0</script>")
+    int markRetry(@Param("userIds") List<Long> userIds, @Param("ids") List<Long> ids,
+                  @Param("claimToken") String claimToken, @Param("nextRetryTime") LocalDateTime nextRetryTime,
+                  @Param("maxRetryCount") int maxRetryCount);
+}
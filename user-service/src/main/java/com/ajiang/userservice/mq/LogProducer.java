@@ -436,4 +436,41 @@ public class LogProducer {
 
         sendOperationLog(currentUserId, "USER_LIST_VIEW", ip, detail);
     }
-}
\ No newline at end of file
+
+    /**
+     * 发送用户导出日志
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色
+     * @param format          导出格式
+     * @param exportedCount   导出行数
+     * @param ip              客户端IP
+     */
+    public void sendUserExportLog(Long currentUserId, String currentUserRole, String format, long exportedCount,
+                                  String ip) {
+        Map<String, Object> detail = new HashMap<>();
+        detail.put("currentUserRole", currentUserRole);
+        detail.put("format", format);
+        detail.put("exportedCount", exportedCount);
+
+        sendOperationLog(currentUserId, "USER_EXPORT", ip, detail);
+    }
+
+    /**
+     * 发送批量导入用户日志
+     *
+     * @param currentUserId 当前用户ID
+     * @param total         导入总行数
+     * @param successCount  成功行数
+     * @param elapsedMs     耗时（毫秒）
+     * @param ip            客户端IP
+     */
+    public void sendUserImportLog(Long currentUserId, int total, int successCount, long elapsedMs, String ip) {
+        Map<String, Object> detail = new HashMap<>();
+        detail.put("total", total);
+        detail.put("successCount", successCount);
+        detail.put("elapsedMs", elapsedMs);
+
+        sendOperationLog(currentUserId, "USER_IMPORT", ip, detail);
+    }
+}
@@ -0,0 +1,181 @@
+package com.ajiang.userservice.outbox;
+
+import cn.hutool.core.util.IdUtil;
+import com.ajiang.userservice.entity.UserOutbox;
+import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.mapper.UserOutboxMapper;
+import com.ajiang.userservice.mq.LogProducer;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 注册事件发件箱中继
+ * 定时批量拉取到期事件并原子认领（写入批次标识，把下次投递时间推后 lease-seconds 作为租约），
+ * 只处理认领成功的事件：一次RPC批量绑定默认角色，再逐条发送注册日志，最后批量标记为已投递。
+ * 多实例并发拉取时同一事件只会被一个实例认领。投递是至少一次的：实例在发送日志后、标记完成前退出时，
+ * 租约到期后事件会被重新认领，角色绑定是幂等的（已绑定的用户会被跳过），但注册日志可能重复发送一次。
+ * 通过 user.outbox.* 指标观察最终一致性的延迟和积压
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "user.register.mode", havingValue = "outbox")
+public class UserOutboxRelay {
+
+    @Autowired
+    private UserOutboxMapper userOutboxMapper;
+
+    @Autowired
+    private PermissionServiceClient permissionServiceClient;
+
+    @Autowired
+    private LogProducer logProducer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 每批投递条数，不超过权限服务批量绑定接口上限
+    @Value("${user.register.outbox.batch-size:500}")
+    private int batchSize;
+
+    @Value("${user.register.outbox.max-retry-count:10}")
+    private int maxRetryCount;
+
+    // 认领租约（秒），需大于一批事件的处理时间
+    @Value("${user.register.outbox.lease-seconds:60}")
+    private long leaseSeconds;
+
+    // 重试退避上限（秒）
+    @Value("${user.register.outbox.max-backoff-seconds:300}")
+    private long maxBackoffSeconds;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    private Counter deliveredCounter;
+
+    private Counter retryCounter;
+
+    private Timer lagTimer;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("user.outbox.pending", pendingCount, AtomicLong::get)
+                .description("待投递的注册事件数量")
+                .register(meterRegistry);
+        deliveredCounter = Counter.builder("user.outbox.delivered")
+                .description("已投递的注册事件数量")
+                .register(meterRegistry);
+        retryCounter = Counter.builder("user.outbox.retry")
+                .description("投递失败待重试的注册事件数量")
+                .register(meterRegistry);
+        lagTimer = Timer.builder("user.outbox.lag")
+                .description("注册事件从写入到投递完成的延迟")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 定时投递，一轮内连续拉取直到没有到期事件
+     */
+    @Scheduled(fixedDelayString = "${user.register.outbox.relay-interval-ms:1000}")
+    public void relay() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int delivered;
+            do {
+                delivered = relayBatch();
+            } while (delivered >= batchSize);
+            pendingCount.set(userOutboxMapper.countPending());
+        } catch (Exception e) {
+            log.error("[发件箱] 投递任务异常: error={}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * 投递一批事件
+     *
+     * @return 本批拉取到的事件数
+     */
+    private int relayBatch() {
+        long startTime = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        List<UserOutbox> due = userOutboxMapper.selectDue(now, batchSize);
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        // 原子认领，其他实例已认领的事件不再处理
+        String claimToken = IdUtil.fastSimpleUUID();
+        List<Long> dueUserIds = due.stream().map(UserOutbox::getUserId).distinct().collect(Collectors.toList());
+        List<Long> dueIds = due.stream().map(UserOutbox::getId).collect(Collectors.toList());
+        int claimed = userOutboxMapper.claim(dueUserIds, dueIds, now, claimToken, now.plusSeconds(leaseSeconds));
+        if (claimed == 0) {
+            log.debug("[发件箱] 本批事件已被其他实例认领: count={}", due.size());
+            return 0;
+        }
+        List<UserOutbox> events = claimed == due.size()
+                ? due
+                : userOutboxMapper.selectClaimed(dueUserIds, dueIds, claimToken);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        List<Long> userIds = events.stream().map(UserOutbox::getUserId).distinct().collect(Collectors.toList());
+        List<Long> ids = events.stream().map(UserOutbox::getId).collect(Collectors.toList());
+
+        try {
+            permissionServiceClient.bindDefaultRoles(userIds);
+        } catch (Exception e) {
+            int attempt = events.stream().mapToInt(UserOutbox::getRetryCount).min().orElse(0) + 1;
+            long backoffSeconds = Math.min(maxBackoffSeconds, 1L << Math.min(attempt, 20));
+            userOutboxMapper.markRetry(userIds, ids, claimToken, LocalDateTime.now().plusSeconds(backoffSeconds),
+                    maxRetryCount);
+            retryCounter.increment(events.size());
+            log.error("[发件箱] 批量绑定默认角色失败: count={}, attempt={}, nextRetryIn={}s, error={}",
+                    events.size(), attempt, backoffSeconds, e.getMessage());
+            return 0;
+        }
+
+        for (UserOutbox event : events) {
+            try {
+                JSONObject payload = JSON.parseObject(event.getPayload());
+                logProducer.sendUserRegisterLog(event.getUserId(), payload.getString("username"),
+                        payload.getString("email"), payload.getString("phone"), payload.getString("ip"));
+            } catch (Exception e) {
+                log.error("[发件箱] 注册日志发送失败: userId={}, error={}", event.getUserId(), e.getMessage(), e);
+            }
+        }
+
+        int updated = userOutboxMapper.markDelivered(userIds, ids, claimToken);
+        LocalDateTime deliveredAt = LocalDateTime.now();
+        for (UserOutbox event : events) {
+            lagTimer.record(Duration.between(event.getGmtCreate(), deliveredAt));
+        }
+        deliveredCounter.increment(updated);
+        log.info("[发件箱] 批量投递完成: count={}, marked={}, 耗时={}ms",
+                events.size(), updated, System.currentTimeMillis() - startTime);
+        return events.size();
+    }
+}
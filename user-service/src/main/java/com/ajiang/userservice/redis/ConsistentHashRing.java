@@ -0,0 +1,58 @@
+package com.ajiang.userservice.redis;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希环
+ * 每个节点按节点ID映射为若干虚拟节点，键落在顺时针方向的第一个虚拟节点上。
+ * 节点位置只取决于节点ID，与配置顺序无关；增加一个节点时只有约 1/N 的键改变归属
+ *
+ * @param <T> 节点类型
+ */
+public class ConsistentHashRing<T> {
+
+    private final TreeMap<Long, T> ring = new TreeMap<>();
+
+    /**
+     * @param nodes        节点ID -> 节点
+     * @param virtualNodes 每个节点的虚拟节点数，越多分布越均匀
+     */
+    public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("一致性哈希环至少需要一个节点");
+        }
+        for (Map.Entry<String, T> entry : nodes.entrySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(entry.getKey() + "#" + i), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 键所属的节点
+     */
+    public T get(String key) {
+        Map.Entry<Long, T> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * MD5 的前 64 位
+     */
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5算法不可用", e);
+        }
+    }
+}
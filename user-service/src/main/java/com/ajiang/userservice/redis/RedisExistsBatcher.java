@@ -0,0 +1,172 @@
+package com.ajiang.userservice.redis;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis EXISTS 微批处理器
+ * 并发请求的 EXISTS 查询先进入队列，由单个派发线程在一个很短的时间窗内攒批，
+ * 通过独占的异步 Lettuce 连接以管道方式一次发出，结果返回后分别完成各调用方的 future。
+ * 高并发时多个请求共用一次网络往返；低并发时最多增加一个时间窗的延迟。
+ * 每个 Redis 节点一个实例，由 {@link TokenRedisShards} 创建和关闭；
+ * 通过 token.whitelist.batch.* 指标（按 node 区分）观察批大小和排队延迟
+ */
+@Slf4j
+public class RedisExistsBatcher {
+
+    private final String nodeId;
+
+    // 攒批时间窗（微秒），从批内第一个请求到达开始计算
+    private final long windowMicros;
+
+    // 单批最大命令数，达到后立即发出
+    private final int maxBatchSize;
+
+    private final BlockingQueue<PendingExists> queue = new LinkedBlockingQueue<>();
+
+    private final RedisClient redisClient;
+
+    private final StatefulRedisConnection<String, String> connection;
+
+    private final Thread dispatcher;
+
+    private volatile boolean running;
+
+    private final DistributionSummary batchSizeSummary;
+
+    private final Timer queueTimer;
+
+    public RedisExistsBatcher(String nodeId, RedisURI redisUri, long windowMicros, int maxBatchSize,
+                              MeterRegistry meterRegistry) {
+        this.nodeId = nodeId;
+        this.windowMicros = windowMicros;
+        this.maxBatchSize = maxBatchSize;
+
+        redisClient = RedisClient.create(redisUri);
+        connection = redisClient.connect();
+        // 连接只由派发线程使用：手动刷新，一批命令一次写出
+        connection.setAutoFlushCommands(false);
+
+        batchSizeSummary = DistributionSummary.builder("token.whitelist.batch.size")
+                .description("每批发出的 EXISTS 命令数")
+                .tag("node", nodeId)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        queueTimer = Timer.builder("token.whitelist.batch.wait")
+                .description("EXISTS 请求因攒批增加的排队延迟")
+                .tag("node", nodeId)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "redis-exists-batcher-" + nodeId);
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        log.info("Redis EXISTS 微批处理器启动: node={}, windowMicros={}, maxBatchSize={}",
+                nodeId, windowMicros, maxBatchSize);
+    }
+
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        List<PendingExists> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (PendingExists pending : remaining) {
+            pending.future.completeExceptionally(new IllegalStateException("Redis EXISTS 微批处理器已关闭"));
+        }
+        connection.close();
+        redisClient.shutdown();
+    }
+
+    /**
+     * 异步检查键是否存在
+     *
+     * @param key Redis键
+     * @return 存在时完成为true
+     */
+    public CompletableFuture<Boolean> exists(String key) {
+        PendingExists pending = new PendingExists(key);
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("Redis EXISTS 微批处理器已关闭"));
+            return pending.future;
+        }
+        queue.add(pending);
+        return pending.future;
+    }
+
+    private void dispatchLoop() {
+        List<PendingExists> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(windowMicros);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    // 时间窗已过，只取走已经在排队的请求
+                    PendingExists next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                send(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("Redis EXISTS 批量发送失败: node={}, batchSize={}, error={}",
+                        nodeId, batch.size(), e.getMessage(), e);
+                for (PendingExists pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void send(List<PendingExists> batch) {
+        long now = System.nanoTime();
+        RedisAsyncCommands<String, String> commands = connection.async();
+        for (PendingExists pending : batch) {
+            queueTimer.record(now - pending.enqueueNanos, TimeUnit.NANOSECONDS);
+            RedisFuture<Long> result = commands.exists(pending.key);
+            result.whenComplete((count, error) -> {
+                if (error != null) {
+                    pending.future.completeExceptionally(error);
+                } else {
+                    pending.future.complete(count != null && count > 0);
+                }
+            });
+        }
+        connection.flushCommands();
+        batchSizeSummary.record(batch.size());
+    }
+
+    private static final class PendingExists {
+
+        private final String key;
+
+        private final long enqueueNanos = System.nanoTime();
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private PendingExists(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ajiang.userservice.redis;
+
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 令牌分片中的一个 Redis 节点
+ */
+public class RedisShardNode {
+
+    private final String id;
+
+    private final StringRedisTemplate template;
+
+    private final ReactiveStringRedisTemplate reactiveTemplate;
+
+    // 未开启微批时为null
+    private final RedisExistsBatcher existsBatcher;
+
+    // 节点自建的连接工厂，使用默认 Redis 时为null
+    private final LettuceConnectionFactory connectionFactory;
+
+    public RedisShardNode(String id, StringRedisTemplate template, ReactiveStringRedisTemplate reactiveTemplate,
+                          RedisExistsBatcher existsBatcher, LettuceConnectionFactory connectionFactory) {
+        this.id = id;
+        this.template = template;
+        this.reactiveTemplate = reactiveTemplate;
+        this.existsBatcher = existsBatcher;
+        this.connectionFactory = connectionFactory;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public StringRedisTemplate getTemplate() {
+        return template;
+    }
+
+    public ReactiveStringRedisTemplate getReactiveTemplate() {
+        return reactiveTemplate;
+    }
+
+    /**
+     * 检查键是否存在，开启微批时与并发请求合并发送
+     *
+     * @param key       Redis键
+     * @param timeoutMs 微批等待的最长时间
+     */
+    public boolean exists(String key, long timeoutMs) throws Exception {
+        if (existsBatcher != null) {
+            return existsBatcher.exists(key).get(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return Boolean.TRUE.equals(template.hasKey(key));
+    }
+
+    void close() {
+        if (existsBatcher != null) {
+            existsBatcher.close();
+        }
+        if (connectionFactory != null) {
+            connectionFactory.destroy();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.ajiang.userservice.redis;
+
+import io.lettuce.core.RedisURI;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 令牌键的客户端分片
+ * token.whitelist.nodes 配置多个 Redis 节点（redis://[:password@]host:port[/db]，逗号分隔）时，
+ * 按 userId 在一致性哈希环上选择节点：同一用户的白名单键和会话集合总在同一节点，登录脚本可以原子执行。
+ * 未配置时所有令牌键都在 spring.redis 指定的默认 Redis 中。
+ * <p>
+ * 扩容时把扩容前的节点列表配置到 token.whitelist.previous-nodes：
+ * 新归属节点上找不到的会话再到旧归属节点查找，旧会话自然过期后即可删除该配置
+ */
+@Slf4j
+@Component
+public class TokenRedisShards {
+
+    private static final String DEFAULT_NODE_ID = "default";
+
+    private static final String ROUTING_KEY_PREFIX = "user:";
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private RedisProperties redisProperties;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 当前节点列表，逗号分隔
+    @Value("${token.whitelist.nodes:}")
+    private String nodes;
+
+    // 扩容/缩容前的节点列表，迁移期间用于查找旧会话
+    @Value("${token.whitelist.previous-nodes:}")
+    private String previousNodes;
+
+    // 每个节点的虚拟节点数
+    @Value("${token.whitelist.virtual-nodes:160}")
+    private int virtualNodes;
+
+    @Value("${token.whitelist.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${token.whitelist.batch.window-micros:200}")
+    private long batchWindowMicros;
+
+    @Value("${token.whitelist.batch.max-size:128}")
+    private int batchMaxSize;
+
+    private final Map<String, RedisShardNode> allNodes = new LinkedHashMap<>();
+
+    private ConsistentHashRing<RedisShardNode> ring;
+
+    // 未处于迁移期间时为null
+    private ConsistentHashRing<RedisShardNode> previousRing;
+
+    @PostConstruct
+    public void init() {
+        List<String> currentUris = split(nodes);
+        if (currentUris.isEmpty()) {
+            RedisShardNode defaultNode = new RedisShardNode(DEFAULT_NODE_ID, stringRedisTemplate,
+                    reactiveStringRedisTemplate, createBatcher(DEFAULT_NODE_ID, defaultRedisUri()), null);
+            allNodes.put(DEFAULT_NODE_ID, defaultNode);
+            ring = new ConsistentHashRing<>(Collections.singletonMap(DEFAULT_NODE_ID, defaultNode), 1);
+        } else {
+            ring = buildRing(currentUris);
+        }
+        List<String> previousUris = split(previousNodes);
+        if (!previousUris.isEmpty()) {
+            previousRing = buildRing(previousUris);
+        }
+        log.info("令牌分片初始化完成: nodes={}, migrating={}", allNodes.keySet(), previousRing != null);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        for (RedisShardNode node : allNodes.values()) {
+            node.close();
+        }
+    }
+
+    /**
+     * 用户令牌键所在的节点
+     */
+    public RedisShardNode nodeFor(Long userId) {
+        return ring.get(ROUTING_KEY_PREFIX + userId);
+    }
+
+    /**
+     * 迁移期间用户令牌键原来所在的节点，未迁移或归属未变化时返回null
+     */
+    public RedisShardNode previousNodeFor(Long userId) {
+        if (previousRing == null) {
+            return null;
+        }
+        RedisShardNode previous = previousRing.get(ROUTING_KEY_PREFIX + userId);
+        return previous == nodeFor(userId) ? null : previous;
+    }
+
+    private ConsistentHashRing<RedisShardNode> buildRing(List<String> uris) {
+        Map<String, RedisShardNode> ringNodes = new LinkedHashMap<>();
+        for (String uri : uris) {
+            RedisURI redisUri = RedisURI.create(uri);
+            String nodeId = redisUri.getHost() + ":" + redisUri.getPort() + "/" + redisUri.getDatabase();
+            ringNodes.put(nodeId, allNodes.computeIfAbsent(nodeId, id -> createNode(id, redisUri)));
+        }
+        return new ConsistentHashRing<>(ringNodes, virtualNodes);
+    }
+
+    private RedisShardNode createNode(String nodeId, RedisURI redisUri) {
+        RedisStandaloneConfiguration config =
+                new RedisStandaloneConfiguration(redisUri.getHost(), redisUri.getPort());
+        config.setDatabase(redisUri.getDatabase());
+        if (redisUri.getPassword() != null) {
+            config.setPassword(RedisPassword.of(redisUri.getPassword()));
+        }
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory(config);
+        connectionFactory.afterPropertiesSet();
+        return new RedisShardNode(nodeId, new StringRedisTemplate(connectionFactory),
+                new ReactiveStringRedisTemplate(connectionFactory), createBatcher(nodeId, redisUri), connectionFactory);
+    }
+
+    private RedisExistsBatcher createBatcher(String nodeId, RedisURI redisUri) {
+        if (!batchEnabled) {
+            return null;
+        }
+        return new RedisExistsBatcher(nodeId, redisUri, batchWindowMicros, batchMaxSize, meterRegistry);
+    }
+
+    private RedisURI defaultRedisUri() {
+        RedisURI.Builder uri = RedisURI.builder()
+                .withHost(redisProperties.getHost())
+                .withPort(redisProperties.getPort())
+                .withDatabase(redisProperties.getDatabase());
+        if (redisProperties.getPassword() != null && !redisProperties.getPassword().isEmpty()) {
+            uri.withPassword(redisProperties.getPassword().toCharArray());
+        }
+        if (redisProperties.getTimeout() != null) {
+            uri.withTimeout(redisProperties.getTimeout());
+        }
+        return uri.build();
+    }
+
+    private static List<String> split(String value) {
+        List<String> result = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                result.add(item.trim());
+            }
+        }
+        return result;
+    }
+}
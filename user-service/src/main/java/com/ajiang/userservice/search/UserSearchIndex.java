@@ -0,0 +1,387 @@
+package com.ajiang.userservice.search;
+
+import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 用户名/邮箱/手机号的进程内 n-gram 索引
+ * 启动时流式扫描全部分片构建，注册/修改时增量更新，并定时全量重建以吸收其他实例的写入
+ * 查询长度 < 3 时按前缀匹配，>= 3 时按三元组求交后做子串校验
+ * 全量构建的倒排表是按 userId 升序的 long 数组，求交从最短的数组开始逐个二分查找；
+ * 构建后的增量写入记在单独的小倒排表中，直到下一次重建
+ */
+@Slf4j
+@Component
+public class UserSearchIndex {
+
+    private static final int GRAM_SIZE = 3;
+
+    // 前缀词条的标记，避免与三元组冲突
+    private static final char PREFIX_MARK = '^';
+
+    private static final long[] EMPTY_IDS = new long[0];
+
+    @Autowired
+    private UserMapper userMapper;
+
+    private volatile Segment current = Segment.empty();
+
+    // 全量重建期间的增量写入，重建完成后在新索引上重放，避免被旧快照覆盖；与切换共用同一把锁
+    private Map<Long, User> pendingWrites;
+
+    private final AtomicBoolean rebuilding = new AtomicBoolean(false);
+
+    private volatile boolean ready;
+
+    /**
+     * 应用启动完成后异步构建，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread thread = new Thread(this::rebuild, "user-search-index-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 定时全量重建
+     */
+    @Scheduled(initialDelayString = "${user.search.rebuild-interval-ms:600000}",
+            fixedDelayString = "${user.search.rebuild-interval-ms:600000}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * 从所有分片流式读取用户并重建索引，重放期间的增量写入后原子切换
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            log.debug("[搜索索引] 重建进行中，跳过本次");
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                pendingWrites = new LinkedHashMap<>();
+            }
+            Segment segment = new Segment();
+            userMapper.streamAll(context -> segment.load(context.getResultObject()));
+            segment.freeze();
+            synchronized (this) {
+                pendingWrites.values().forEach(segment::put);
+                current = segment;
+                ready = true;
+            }
+            log.info("[搜索索引] 重建完成: users={}, grams={}, 耗时={}ms",
+                    segment.docs.size(), segment.postings.size(), System.currentTimeMillis() - startTime);
+        } catch (Exception e) {
+            log.error("[搜索索引] 重建失败: error={}, 耗时={}ms", e.getMessage(),
+                    System.currentTimeMillis() - startTime, e);
+        } finally {
+            synchronized (this) {
+                pendingWrites = null;
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * 新增或更新用户的索引
+     * 处于事务中时在提交后生效，避免回滚的数据被检索到
+     *
+     * @param user 用户
+     */
+    public void index(User user) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doIndex(user);
+                }
+            });
+            return;
+        }
+        doIndex(user);
+    }
+
+    private synchronized void doIndex(User user) {
+        current.put(user);
+        if (pendingWrites != null) {
+            pendingWrites.put(user.getUserId(), user);
+        }
+    }
+
+    /**
+     * 搜索用户ID，按ID升序返回
+     *
+     * @param keyword 关键字
+     * @param limit   最大返回数量
+     * @return 匹配的用户ID
+     */
+    public List<Long> search(String keyword, int limit) {
+        if (keyword == null || keyword.trim().isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        return current.search(keyword.trim().toLowerCase(Locale.ROOT), limit);
+    }
+
+    /**
+     * 判断指定用户是否匹配关键字
+     *
+     * @param userId  用户ID
+     * @param keyword 关键字
+     * @return 是否匹配
+     */
+    public boolean matches(Long userId, String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return false;
+        }
+        String[] fields = current.docs.get(userId);
+        return fields != null && Segment.matches(fields, keyword.trim().toLowerCase(Locale.ROOT));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 一份完整的索引数据
+     * 构建阶段由重建线程单线程 load，freeze 后倒排表只读；之后的 put 只写 docs 和增量倒排表。
+     * 只读倒排表中因更新而过期的条目在查询时用 docs 中的最新字段校验过滤
+     */
+    private static final class Segment {
+
+        // userId -> 小写后的 [username, email, phone]
+        private final Map<Long, String[]> docs = new ConcurrentHashMap<>();
+
+        // 词条 -> 升序 userId 数组，freeze 后只读
+        private Map<String, long[]> postings = Collections.emptyMap();
+
+        // 构建阶段的倒排表，freeze 后置空
+        private Map<String, LongArrayBuilder> building = new HashMap<>();
+
+        // freeze 之后写入的词条 -> userId 集合
+        private final Map<String, Set<Long>> delta = new ConcurrentHashMap<>();
+
+        static Segment empty() {
+            Segment segment = new Segment();
+            segment.freeze();
+            return segment;
+        }
+
+        void load(User user) {
+            String[] fields = fields(user);
+            long userId = user.getUserId();
+            docs.put(userId, fields);
+            for (String term : terms(fields)) {
+                building.computeIfAbsent(term, k -> new LongArrayBuilder()).add(userId);
+            }
+        }
+
+        void freeze() {
+            Map<String, long[]> frozen = new HashMap<>(building.size() * 4 / 3 + 1);
+            building.forEach((term, ids) -> frozen.put(term, ids.toSortedArray()));
+            postings = frozen;
+            building = null;
+        }
+
+        void put(User user) {
+            String[] fields = fields(user);
+            Long userId = user.getUserId();
+            // 同一用户的更新串行执行，先删旧词条再写新词条
+            synchronized (this) {
+                String[] old = docs.put(userId, fields);
+                if (old != null) {
+                    for (String term : terms(old)) {
+                        Set<Long> ids = delta.get(term);
+                        if (ids != null) {
+                            ids.remove(userId);
+                        }
+                    }
+                }
+                for (String term : terms(fields)) {
+                    delta.computeIfAbsent(term, k -> ConcurrentHashMap.newKeySet()).add(userId);
+                }
+            }
+        }
+
+        List<Long> search(String keyword, int limit) {
+            long[] base;
+            Set<Long> deltaCandidates;
+            if (keyword.length() < GRAM_SIZE) {
+                String term = PREFIX_MARK + keyword;
+                base = postings.getOrDefault(term, EMPTY_IDS);
+                deltaCandidates = delta.getOrDefault(term, Collections.emptySet());
+            } else {
+                Set<String> grams = grams(keyword);
+                base = intersect(grams);
+                deltaCandidates = intersectDelta(grams);
+            }
+            TreeSet<Long> result = new TreeSet<>();
+            // 只读倒排表按ID升序，取到 limit 个匹配即可停止
+            for (long userId : base) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                String[] fields = docs.get(userId);
+                if (fields != null && matches(fields, keyword)) {
+                    result.add(userId);
+                }
+            }
+            for (Long userId : deltaCandidates) {
+                String[] fields = docs.get(userId);
+                if (fields != null && matches(fields, keyword)) {
+                    result.add(userId);
+                    if (result.size() > limit) {
+                        result.pollLast();
+                    }
+                }
+            }
+            return new ArrayList<>(result);
+        }
+
+        private long[] intersect(Set<String> grams) {
+            List<long[]> lists = new ArrayList<>(grams.size());
+            for (String gram : grams) {
+                long[] ids = postings.get(gram);
+                if (ids == null || ids.length == 0) {
+                    return EMPTY_IDS;
+                }
+                lists.add(ids);
+            }
+            // 从最短的倒排表开始求交，结果只会越来越短
+            lists.sort(Comparator.comparingInt(ids -> ids.length));
+            long[] result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.length > 0; i++) {
+                result = intersect(result, lists.get(i));
+            }
+            return result;
+        }
+
+        /**
+         * 两个升序数组求交：在长数组中逐个二分查找短数组的元素，查找起点单调后移，O(m log n)
+         */
+        private static long[] intersect(long[] shorter, long[] longer) {
+            long[] out = new long[shorter.length];
+            int size = 0;
+            int from = 0;
+            for (long id : shorter) {
+                int pos = Arrays.binarySearch(longer, from, longer.length, id);
+                if (pos >= 0) {
+                    out[size++] = id;
+                    from = pos + 1;
+                } else {
+                    from = -pos - 1;
+                }
+                if (from >= longer.length) {
+                    break;
+                }
+            }
+            return size == out.length ? out : Arrays.copyOf(out, size);
+        }
+
+        private Set<Long> intersectDelta(Set<String> grams) {
+            List<Set<Long>> lists = new ArrayList<>(grams.size());
+            for (String gram : grams) {
+                Set<Long> ids = delta.get(gram);
+                if (ids == null || ids.isEmpty()) {
+                    return Collections.emptySet();
+                }
+                lists.add(ids);
+            }
+            lists.sort(Comparator.comparingInt(Set::size));
+            Set<Long> result = new HashSet<>(lists.get(0));
+            for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+                result.retainAll(lists.get(i));
+            }
+            return result;
+        }
+
+        private static boolean matches(String[] fields, String keyword) {
+            for (String field : fields) {
+                if (field.isEmpty()) {
+                    continue;
+                }
+                if (keyword.length() < GRAM_SIZE ? field.startsWith(keyword) : field.contains(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static String[] fields(User user) {
+            return new String[]{
+                    normalize(user.getUsername()), normalize(user.getEmail()), normalize(user.getPhone())};
+        }
+
+        private static Set<String> terms(String[] fields) {
+            Set<String> terms = new HashSet<>();
+            for (String field : fields) {
+                for (int i = 1; i < GRAM_SIZE && i <= field.length(); i++) {
+                    terms.add(PREFIX_MARK + field.substring(0, i));
+                }
+                terms.addAll(grams(field));
+            }
+            return terms;
+        }
+
+        private static Set<String> grams(String value) {
+            Set<String> grams = new HashSet<>();
+            for (int i = 0; i + GRAM_SIZE <= value.length(); i++) {
+                grams.add(value.substring(i, i + GRAM_SIZE));
+            }
+            return grams;
+        }
+
+        private static String normalize(String value) {
+            return value == null ? "" : value.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * 构建阶段的 long 动态数组，避免 Long 装箱
+     */
+    private static final class LongArrayBuilder {
+
+        private long[] values = new long[4];
+
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
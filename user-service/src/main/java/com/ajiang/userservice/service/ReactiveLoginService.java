@@ -0,0 +1,30 @@
+package com.ajiang.userservice.service;
+
+import com.ajiang.userservice.dto.TokenValidationDto;
+import com.ajiang.userservice.dto.UserLoginDto;
+import com.ajiang.userservice.dto.UserTokenDto;
+import reactor.core.publisher.Mono;
+
+/**
+ * 响应式登录服务接口
+ * 登录和令牌校验全程不占用请求线程：Redis 和权限服务调用为非阻塞 I/O，JDBC 查询在有界调度器上执行
+ */
+public interface ReactiveLoginService {
+
+    /**
+     * 用户登录
+     *
+     * @param loginDto 登录信息
+     * @param ip       客户端IP
+     * @return 访问令牌和刷新令牌
+     */
+    Mono<UserTokenDto> login(UserLoginDto loginDto, String ip);
+
+    /**
+     * 校验令牌：签名、有效期、白名单/会话状态和角色版本号
+     *
+     * @param token JWT token
+     * @return 校验结果
+     */
+    Mono<TokenValidationDto> validate(String token);
+}
@@ -0,0 +1,49 @@
+package com.ajiang.userservice.service;
+
+import com.ajiang.userservice.dto.RefreshTokenSession;
+import reactor.core.publisher.Mono;
+
+/**
+ * 刷新令牌服务接口
+ * 刷新令牌是不透明的随机串，Redis 中只保存其摘要；每次刷新都会作废旧令牌并签发新令牌（滑动过期）
+ */
+public interface RefreshTokenService {
+
+    /**
+     * 签发刷新令牌
+     *
+     * @param session 会话信息
+     * @return 刷新令牌
+     */
+    String issue(RefreshTokenSession session);
+
+    /**
+     * 非阻塞地签发刷新令牌，供响应式登录使用
+     *
+     * @param session 会话信息
+     * @return 刷新令牌，刷新链已超过最长存活时间时为空
+     */
+    Mono<String> issueReactive(RefreshTokenSession session);
+
+    /**
+     * 消费刷新令牌，令牌只能使用一次
+     *
+     * @param refreshToken 刷新令牌
+     * @return 会话信息，令牌无效、已使用或已过期时返回null
+     */
+    RefreshTokenSession consume(String refreshToken);
+
+    /**
+     * 作废刷新令牌（登出时使用）
+     *
+     * @param refreshToken 刷新令牌
+     */
+    void revoke(String refreshToken);
+
+    /**
+     * 作废用户当前所有刷新令牌（强制下线时使用），之后只能重新登录
+     *
+     * @param userId 用户ID
+     */
+    void revokeAll(Long userId);
+}
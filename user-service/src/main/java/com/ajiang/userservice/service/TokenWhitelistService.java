@@ -1,5 +1,12 @@
 package com.ajiang.userservice.service;
 
+import io.jsonwebtoken.Claims;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * AI
  * Token白名单服务接口
@@ -7,6 +14,51 @@ package com.ajiang.userservice.service;
  */
 public interface TokenWhitelistService {
 
+    /**
+     * 签发token前获取需要写入token的会话声明（如会话ID、会话版本号）
+     * 白名单模式不需要额外声明
+     *
+     * @param userId 用户ID
+     * @return 会话声明
+     */
+    default Map<String, Object> sessionClaims(Long userId) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 响应式登录使用：获取会话声明
+     * 默认在弹性线程池上调用同步方法，实现类可以改为非阻塞实现
+     *
+     * @param userId 用户ID
+     * @return 会话声明
+     */
+    default Mono<Map<String, Object>> sessionClaimsReactive(Long userId) {
+        return Mono.fromCallable(() -> sessionClaims(userId)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 响应式登录使用：将token添加到白名单
+     *
+     * @param token         JWT token
+     * @param userId        用户ID
+     * @param expireSeconds 过期时间（秒）
+     */
+    default Mono<Void> addTokenToWhitelistReactive(String token, Long userId, long expireSeconds) {
+        return Mono.<Void>fromRunnable(() -> addTokenToWhitelist(token, userId, expireSeconds))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * 响应式校验使用：检查token是否在白名单中
+     *
+     * @param token  JWT token
+     * @param claims 已校验的声明
+     * @return true-在白名单中，false-不在白名单中
+     */
+    default Mono<Boolean> isTokenInWhitelistReactive(String token, Claims claims) {
+        return Mono.fromCallable(() -> isTokenInWhitelist(token, claims)).subscribeOn(Schedulers.boundedElastic());
+    }
+
     /**
      * 将token添加到白名单
      *
@@ -24,6 +76,17 @@ public interface TokenWhitelistService {
      */
     boolean isTokenInWhitelist(String token);
 
+    /**
+     * 检查token是否在白名单中，使用调用方已解析的声明，避免重复解析token
+     *
+     * @param token  JWT token
+     * @param claims 已校验的声明
+     * @return true-在白名单中，false-不在白名单中
+     */
+    default boolean isTokenInWhitelist(String token, Claims claims) {
+        return isTokenInWhitelist(token);
+    }
+
     /**
      * 从白名单中移除token（登出时使用）
      *
@@ -40,7 +103,7 @@ public interface TokenWhitelistService {
     Long getUserIdByToken(String token);
 
     /**
-     * 移除用户的所有token（强制下线）
+     * 移除用户的所有token（强制下线），同时作废该用户的全部刷新令牌
      *
      * @param userId 用户ID
      */
@@ -0,0 +1,34 @@
+package com.ajiang.userservice.service;
+
+import java.io.OutputStream;
+
+/**
+ * 用户导出服务接口
+ * 以流式方式导出当前用户可见的全部用户
+ */
+public interface UserExportService {
+
+    /**
+     * 导出格式：每行一个JSON对象
+     */
+    String FORMAT_NDJSON = "ndjson";
+
+    /**
+     * 导出格式：CSV
+     */
+    String FORMAT_CSV = "csv";
+
+    /**
+     * 流式导出用户
+     * 逐批从各分片读取并写出，内存占用与总用户数无关；
+     * 写出阻塞时读取同步暂停，由客户端消费速度形成背压
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param format          导出格式 ndjson / csv
+     * @param ip              客户端IP
+     * @param out             响应输出流
+     * @return 实际导出行数
+     */
+    long exportUsers(Long currentUserId, String currentUserRole, String format, String ip, OutputStream out);
+}
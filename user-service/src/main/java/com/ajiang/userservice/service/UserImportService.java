@@ -0,0 +1,23 @@
+package com.ajiang.userservice.service;
+
+import com.ajiang.userservice.dto.UserImportResultDto;
+
+import java.io.InputStream;
+
+/**
+ * 用户批量导入服务接口
+ */
+public interface UserImportService {
+
+    /**
+     * 批量导入用户
+     * 输入为 NDJSON，每行一个与注册接口相同结构的用户对象，按块读取，不一次性加载全部数据
+     *
+     * @param in              输入流
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param ip              客户端IP
+     * @return 逐行导入结果
+     */
+    UserImportResultDto importUsers(InputStream in, Long currentUserId, String currentUserRole, String ip);
+}
@@ -0,0 +1,21 @@
+package com.ajiang.userservice.service;
+
+import java.util.List;
+
+/**
+ * 用户搜索服务接口
+ * 基于进程内索引按用户名/邮箱/手机号检索，并按当前用户的可见范围过滤
+ */
+public interface UserSearchService {
+
+    /**
+     * 搜索用户ID
+     *
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param keyword         关键字，长度小于3时按前缀匹配，否则按包含匹配
+     * @param limit           最大返回数量
+     * @return 当前用户可见的匹配用户ID，按ID升序
+     */
+    List<Long> searchUserIds(Long currentUserId, String currentUserRole, String keyword, int limit);
+}
@@ -6,6 +6,7 @@ import com.ajiang.userservice.dto.PasswordResetDto;
 import com.ajiang.userservice.dto.UserLoginDto;
 import com.ajiang.userservice.dto.UserRegisterDto;
 import com.ajiang.userservice.dto.UserResponseDto;
+import com.ajiang.userservice.dto.UserTokenDto;
 import com.ajiang.userservice.entity.User;
 import com.baomidou.mybatisplus.extension.service.IService;
 import org.springframework.stereotype.Service;
@@ -26,61 +27,85 @@ public interface UserService extends IService<User> {
      */
     Long register(UserRegisterDto registerDto, String ip);
 
+    /**
+     * 用户注册（发件箱模式）
+     * 用户数据与注册事件在同一本地事务中写入，默认角色绑定和注册日志由发件箱中继异步投递
+     *
+     * @param registerDto 注册信息
+     * @param ip          客户端IP
+     * @return 用户ID
+     */
+    Long registerWithOutbox(UserRegisterDto registerDto, String ip);
+
     /**
      * 用户登录
      *
      * @param loginDto 登录信息
      * @param ip       客户端IP
-     * @return JWT Token
+     * @return 访问令牌和刷新令牌
+     */
+    UserTokenDto login(UserLoginDto loginDto, String ip);
+
+    /**
+     * 刷新令牌：校验刷新令牌后重新签发访问令牌，并更换刷新令牌
+     *
+     * @param refreshToken 刷新令牌
+     * @param ip           客户端IP
+     * @return 新的访问令牌和刷新令牌
      */
-    String login(UserLoginDto loginDto, String ip);
+    UserTokenDto refreshToken(String refreshToken, String ip);
 
     /**
      * 用户登出
      *
-     * @param token JWT token
-     * @param ip    客户端IP
+     * @param token        JWT token
+     * @param refreshToken 刷新令牌，可为空
+     * @param ip           客户端IP
      */
-    void logout(String token, String ip);
+    void logout(String token, String refreshToken, String ip);
 
     /**
      * 获取用户信息
      *
-     * @param currentUserId 当前用户ID
-     * @param userId        目标用户ID
-     * @param ip            客户端IP
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param userId          目标用户ID
+     * @param ip              客户端IP
      * @return 用户信息
      */
-    UserResponseDto getUserInfo(Long currentUserId, Long userId, String ip);
+    UserResponseDto getUserInfo(Long currentUserId, String currentUserRole, Long userId, String ip);
 
     /**
      * 获取用户列表
      *
-     * @param pageParams    分页参数
-     * @param currentUserId 当前用户ID
-     * @param ip            客户端IP
+     * @param pageParams      分页参数
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param ip              客户端IP
      * @return 分页用户列表
      */
-    PageResult<User> getUserList(PageParams pageParams, Long currentUserId, String ip);
+    PageResult<User> getUserList(PageParams pageParams, Long currentUserId, String currentUserRole, String ip);
 
     /**
      * 修改用户信息
      *
-     * @param userId        用户ID
-     * @param user          用户信息
-     * @param currentUserId 当前用户ID
-     * @param ip            客户端IP
+     * @param userId          用户ID
+     * @param user            用户信息
+     * @param currentUserId   当前用户ID
+     * @param currentUserRole 当前用户角色（来自已校验的令牌）
+     * @param ip              客户端IP
      * @return 是否成功
      */
-    boolean updateUser(Long userId, User user, Long currentUserId, String ip);
+    boolean updateUser(Long userId, User user, Long currentUserId, String currentUserRole, String ip);
 
     /**
      * 重置密码
      *
      * @param passwordResetDto 密码重置信息
      * @param currentUserId    当前用户ID
+     * @param currentUserRole  当前用户角色（来自已校验的令牌）
      * @param ip               客户端IP
      * @return 是否成功
      */
-    boolean resetPassword(PasswordResetDto passwordResetDto, Long currentUserId, String ip);
+    boolean resetPassword(PasswordResetDto passwordResetDto, Long currentUserId, String currentUserRole, String ip);
 }
@@ -0,0 +1,231 @@
+package com.ajiang.userservice.service.impl;
+
+import cn.hutool.core.util.IdUtil;
+import com.ajiang.common.util.JwtUtil;
+import com.ajiang.userservice.service.RefreshTokenService;
+import com.ajiang.userservice.service.TokenWhitelistService;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于会话版本号的token吊销服务
+ * token 中携带会话ID（jti）和签发时用户的会话版本号，Redis 中只保存：
+ * 1. 每个用户一个会话版本号，按 userId 分桶存放在小 hash 中（session:epoch:{bucket} -> {userId: epoch}），
+ * 强制下线全部会话只需一次 HINCRBY，版本号落后的 token 全部失效；
+ * 2. 单个会话登出时写入的吊销标记（session:revoked:{jti}），在 token 过期时随之过期。
+ * 校验时在一次管道往返中读取版本号和吊销标记。
+ * <p>
+ * token.revocation.mode=epoch 时启用；migrate 模式下同时写白名单，未携带会话ID的旧 token 仍按白名单校验，
+ * 待旧 token 全部过期后切换到 epoch 模式
+ */
+@Slf4j
+@Service
+@Primary
+@ConditionalOnExpression("'${token.revocation.mode:whitelist}' != 'whitelist'")
+public class EpochTokenRevocationServiceImpl implements TokenWhitelistService {
+
+    public static final String CLAIM_SESSION_EPOCH = "sessionEpoch";
+
+    private static final String EPOCH_KEY_PREFIX = "session:epoch:";
+    private static final String REVOKED_KEY_PREFIX = "session:revoked:";
+
+    // 分桶数：1M 用户时每桶约 16 个字段，保持 hash 的紧凑编码
+    private static final int EPOCH_BUCKETS = 65536;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    // 仅 migrate 模式下存在
+    @Autowired(required = false)
+    private TokenWhitelistServiceImpl legacyWhitelist;
+
+    @Override
+    public Map<String, Object> sessionClaims(Long userId) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(Claims.ID, IdUtil.fastSimpleUUID());
+        claims.put(CLAIM_SESSION_EPOCH, currentEpoch(userId));
+        return claims;
+    }
+
+    @Override
+    public Mono<Map<String, Object>> sessionClaimsReactive(Long userId) {
+        return reactiveStringRedisTemplate.<String, String>opsForHash().get(epochKey(userId), userId.toString())
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L)
+                .map(epoch -> {
+                    Map<String, Object> claims = new HashMap<>();
+                    claims.put(Claims.ID, IdUtil.fastSimpleUUID());
+                    claims.put(CLAIM_SESSION_EPOCH, epoch);
+                    return claims;
+                });
+    }
+
+    @Override
+    public Mono<Void> addTokenToWhitelistReactive(String token, Long userId, long expireSeconds) {
+        if (legacyWhitelist != null) {
+            return legacyWhitelist.addTokenToWhitelistReactive(token, userId, expireSeconds);
+        }
+        return Mono.empty();
+    }
+
+    @Override
+    public Mono<Boolean> isTokenInWhitelistReactive(String token, Claims claims) {
+        String sessionId = claims.getId();
+        if (sessionId == null) {
+            // 迁移前签发的token
+            return legacyWhitelist != null
+                    ? legacyWhitelist.isTokenInWhitelistReactive(token, claims)
+                    : Mono.just(false);
+        }
+        Long userId = Long.parseLong(claims.getSubject());
+        Number tokenEpoch = claims.get(CLAIM_SESSION_EPOCH, Number.class);
+        if (tokenEpoch == null) {
+            return Mono.just(false);
+        }
+        Mono<Long> currentEpoch = reactiveStringRedisTemplate.<String, String>opsForHash()
+                .get(epochKey(userId), userId.toString())
+                .map(Long::parseLong)
+                .defaultIfEmpty(0L);
+        Mono<Boolean> revoked = reactiveStringRedisTemplate.hasKey(REVOKED_KEY_PREFIX + sessionId);
+        return Mono.zip(currentEpoch, revoked)
+                .map(result -> tokenEpoch.longValue() >= result.getT1() && !result.getT2())
+                .onErrorResume(e -> {
+                    log.error("检查会话状态失败: error={}", e.getMessage(), e);
+                    return Mono.just(false);
+                });
+    }
+
+    @Override
+    public void addTokenToWhitelist(String token, Long userId, long expireSeconds) {
+        // 会话状态已在token中，无需写入；迁移期间同时写白名单，便于回退
+        if (legacyWhitelist != null) {
+            legacyWhitelist.addTokenToWhitelist(token, userId, expireSeconds);
+        }
+    }
+
+    @Override
+    public boolean isTokenInWhitelist(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseToken(token);
+        } catch (Exception e) {
+            log.error("检查会话状态失败: error={}", e.getMessage(), e);
+            return false;
+        }
+        return isTokenInWhitelist(token, claims);
+    }
+
+    @Override
+    public boolean isTokenInWhitelist(String token, Claims claims) {
+        try {
+            String sessionId = claims.getId();
+            if (sessionId == null) {
+                // 迁移前签发的token
+                return legacyWhitelist != null && legacyWhitelist.isTokenInWhitelist(token);
+            }
+            Long userId = Long.parseLong(claims.getSubject());
+            String epochKey = epochKey(userId);
+            String field = userId.toString();
+            String revokedKey = REVOKED_KEY_PREFIX + sessionId;
+
+            List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                public Object execute(RedisOperations operations) {
+                    operations.opsForHash().get(epochKey, field);
+                    operations.hasKey(revokedKey);
+                    return null;
+                }
+            });
+            Object epochValue = results.get(0);
+            long currentEpoch = epochValue == null ? 0L : Long.parseLong(epochValue.toString());
+            Number tokenEpoch = claims.get(CLAIM_SESSION_EPOCH, Number.class);
+            boolean valid = tokenEpoch != null && tokenEpoch.longValue() >= currentEpoch
+                    && !Boolean.TRUE.equals(results.get(1));
+            log.debug("检查会话状态: userId={}, sessionId={}, valid={}", userId, sessionId, valid);
+            return valid;
+        } catch (Exception e) {
+            log.error("检查会话状态失败: error={}", e.getMessage(), e);
+            // 出现异常时，为了安全考虑，返回false
+            return false;
+        }
+    }
+
+    @Override
+    public void removeTokenFromWhitelist(String token) {
+        try {
+            Claims claims = jwtUtil.parseToken(token);
+            String sessionId = claims.getId();
+            if (sessionId != null) {
+                // 吊销标记只需保留到token过期
+                long ttlSeconds = Math.max(1, (claims.getExpiration().getTime() - System.currentTimeMillis()) / 1000);
+                stringRedisTemplate.opsForValue()
+                        .set(REVOKED_KEY_PREFIX + sessionId, "1", ttlSeconds, TimeUnit.SECONDS);
+                log.info("会话吊销成功: userId={}, sessionId={}", claims.getSubject(), sessionId);
+            }
+            if (legacyWhitelist != null) {
+                legacyWhitelist.removeTokenFromWhitelist(token);
+            }
+        } catch (Exception e) {
+            log.error("会话吊销失败: error={}", e.getMessage(), e);
+            throw new RuntimeException("吊销会话失败", e);
+        }
+    }
+
+    @Override
+    public Long getUserIdByToken(String token) {
+        try {
+            return isTokenInWhitelist(token) ? jwtUtil.getUserIdFromToken(token) : null;
+        } catch (Exception e) {
+            log.error("获取token对应用户ID失败: error={}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    @Override
+    public void removeAllTokensByUserId(Long userId) {
+        try {
+            Long epoch = stringRedisTemplate.opsForHash().increment(epochKey(userId), userId.toString(), 1);
+            refreshTokenService.revokeAll(userId);
+            log.info("用户所有会话已失效: userId={}, sessionEpoch={}", userId, epoch);
+            if (legacyWhitelist != null) {
+                legacyWhitelist.removeAllTokensByUserId(userId);
+            }
+        } catch (Exception e) {
+            log.error("移除用户所有会话失败: userId={}, error={}", userId, e.getMessage(), e);
+            throw new RuntimeException("移除用户所有会话失败", e);
+        }
+    }
+
+    private long currentEpoch(Long userId) {
+        Object value = stringRedisTemplate.opsForHash().get(epochKey(userId), userId.toString());
+        return value == null ? 0L : Long.parseLong(value.toString());
+    }
+
+    private static String epochKey(Long userId) {
+        return EPOCH_KEY_PREFIX + Math.floorMod(userId, (long) EPOCH_BUCKETS);
+    }
+}
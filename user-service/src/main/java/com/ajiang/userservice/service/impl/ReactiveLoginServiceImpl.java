@@ -0,0 +1,197 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.common.config.AppConfig.SimplePasswordEncoder;
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.common.security.RoleEpochStore;
+import com.ajiang.common.util.JwtUtil;
+import com.ajiang.userservice.dto.RefreshTokenSession;
+import com.ajiang.userservice.dto.TokenValidationDto;
+import com.ajiang.userservice.dto.UserLoginDto;
+import com.ajiang.userservice.dto.UserTokenDto;
+import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.limiter.LoginThrottle;
+import com.ajiang.userservice.mapper.UserMapper;
+import com.ajiang.userservice.mq.LogProducer;
+import com.ajiang.userservice.service.ReactiveLoginService;
+import com.ajiang.userservice.service.RefreshTokenService;
+import com.ajiang.userservice.service.TokenWhitelistService;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * 响应式登录服务实现类
+ * 与 UserServiceImpl.login 的业务规则一致，区别在于：
+ * 1. 用户查询在 jdbcScheduler 上执行，JDBC 阻塞不会占用请求线程或 Netty 线程
+ * 2. 角色通过负载均衡的 WebClient 非阻塞调用权限服务，失败时报错而不是降级为普通用户
+ * 3. 角色版本号、会话声明、白名单和刷新令牌均使用响应式 Redis
+ * 4. 登录日志在后台发送，不计入登录耗时
+ */
+@Slf4j
+@Service
+public class ReactiveLoginServiceImpl implements ReactiveLoginService {
+
+    // 签发令牌的角色查询，权限服务读取数据库而不是可能滞后的进程内索引
+    private static final String ROLE_CODE_URL = "http://permission-service/role/code/{userId}/issue";
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private SimplePasswordEncoder passwordEncoder;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private TokenWhitelistService tokenWhitelistService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private RoleEpochStore roleEpochStore;
+
+    @Autowired
+    private LogProducer logProducer;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private WebClient.Builder webClientBuilder;
+
+    @Autowired
+    @Qualifier("jdbcScheduler")
+    private Scheduler jdbcScheduler;
+
+    // 查询角色的超时时间
+    @Value("${user.login.reactive.role-timeout-ms:2000}")
+    private long roleTimeoutMs;
+
+    @Value("${token.expire-jitter-seconds:180}")
+    private long expireJitterSeconds;
+
+    private WebClient webClient;
+
+    @PostConstruct
+    public void init() {
+        webClient = webClientBuilder.build();
+    }
+
+    /**
+     * @description: 用户登录（响应式）
+     * @author: ajiang
+     * @date: 2026/10/19 14:20
+     * @param: [loginDto, ip]
+     * @return: 访问令牌和刷新令牌
+     **/
+    @Override
+    public Mono<UserTokenDto> login(UserLoginDto loginDto, String ip) {
+        long startTime = System.currentTimeMillis();
+        log.info("[业务开始] 用户登录(响应式): username={}, ip={}", loginDto.getUsername(), ip);
+
+        return Mono.fromCallable(() -> userMapper.selectOne(
+                        new LambdaQueryWrapper<User>().eq(User::getUsername, loginDto.getUsername())))
+                .subscribeOn(jdbcScheduler)
+                .switchIfEmpty(Mono.error(() -> {
+                    log.warn("[业务异常] 用户不存在: username={}, ip={}", loginDto.getUsername(), ip);
+                    loginThrottle.recordFailure(ip, loginDto.getUsername());
+                    return new BusinessException("用户名或密码错误");
+                }))
+                .flatMap(user -> {
+                    if (!passwordEncoder.matches(loginDto.getPassword(), user.getPassword())) {
+                        log.warn("[业务异常] 密码错误: username={}, userId={}, ip={}",
+                                loginDto.getUsername(), user.getUserId(), ip);
+                        loginThrottle.recordFailure(ip, loginDto.getUsername());
+                        return Mono.error(new BusinessException("用户名或密码错误"));
+                    }
+                    return issueTokens(user.getUserId())
+                            .doOnSuccess(tokens -> {
+                                sendLoginLog(user, ip);
+                                log.info("[业务完成] 用户登录成功(响应式): userId={}, username={}, 总耗时={}ms",
+                                        user.getUserId(), user.getUsername(),
+                                        System.currentTimeMillis() - startTime);
+                            });
+                });
+    }
+
+    /**
+     * @description: 令牌校验（响应式）
+     * @author: ajiang
+     * @date: 2026/10/19 14:20
+     * @param: [token]
+     * @return: 校验结果
+     **/
+    @Override
+    public Mono<TokenValidationDto> validate(String token) {
+        Claims claims;
+        try {
+            claims = jwtUtil.parseToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            log.debug("JWT验证失败: {}", e.getMessage());
+            return Mono.just(TokenValidationDto.invalid());
+        }
+        Long userId = Long.parseLong(claims.getSubject());
+        return Mono.zip(tokenWhitelistService.isTokenInWhitelistReactive(token, claims),
+                        roleEpochStore.currentEpochReactive(userId))
+                .map(result -> {
+                    // 令牌中的角色只在签发后未发生角色变更时可信
+                    boolean valid = result.getT1() && JwtUtil.getRoleEpoch(claims) >= result.getT2();
+                    return valid
+                            ? new TokenValidationDto(true, userId, claims.get(JwtUtil.CLAIM_ROLE_CODE, String.class))
+                            : TokenValidationDto.invalid();
+                });
+    }
+
+    private Mono<UserTokenDto> issueTokens(Long userId) {
+        // 先读角色版本号：两次读取之间发生的角色变更会使令牌立即过期，而不会被漏掉
+        return roleEpochStore.currentEpochReactive(userId)
+                .flatMap(roleEpoch -> Mono.zip(fetchRoleCode(userId),
+                                tokenWhitelistService.sessionClaimsReactive(userId))
+                        .flatMap(result -> {
+                            String roleCode = result.getT1();
+                            long expireSeconds = jwtUtil.getJitteredExpirationSeconds(expireJitterSeconds);
+                            String token = jwtUtil.generateToken(userId, roleCode, roleEpoch, result.getT2(),
+                                    expireSeconds);
+                            RefreshTokenSession session =
+                                    new RefreshTokenSession(userId, roleCode, roleEpoch, System.currentTimeMillis());
+                            return tokenWhitelistService.addTokenToWhitelistReactive(token, userId, expireSeconds)
+                                    .then(refreshTokenService.issueReactive(session))
+                                    .map(refreshToken -> new UserTokenDto(token, refreshToken, expireSeconds))
+                                    .defaultIfEmpty(new UserTokenDto(token, null, expireSeconds));
+                        }));
+    }
+
+    private Mono<String> fetchRoleCode(Long userId) {
+        return webClient.get()
+                .uri(ROLE_CODE_URL, userId)
+                .retrieve()
+                .bodyToMono(String.class)
+                .timeout(Duration.ofMillis(roleTimeoutMs))
+                .switchIfEmpty(Mono.error(() -> new BusinessException("用户角色不存在")))
+                .onErrorMap(e -> !(e instanceof BusinessException), e -> {
+                    log.error("[远程调用] 获取用户角色失败: userId={}, error={}", userId, e.getMessage());
+                    return new BusinessException("获取用户角色失败，请稍后重试", e);
+                });
+    }
+
+    private void sendLoginLog(User user, String ip) {
+        Mono.fromRunnable(() -> logProducer.sendUserLoginLog(user.getUserId(), user.getUsername(), ip))
+                .subscribeOn(Schedulers.boundedElastic())
+                .subscribe(null, e -> log.error("[消息队列] 登录日志发送失败: userId={}, error={}",
+                        user.getUserId(), e.getMessage(), e));
+    }
+}
@@ -0,0 +1,137 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.userservice.dto.RefreshTokenSession;
+import com.ajiang.userservice.service.RefreshTokenService;
+import com.ajiang.userservice.util.TokenDigestUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 刷新令牌服务实现类
+ * 键为 token:refresh:{摘要}，值为 userId:roleEpoch:loginTime:roleCode。
+ * 每次刷新重新计算过期时间（滑动过期），但不超过首次登录后的最长存活时间。
+ * 强制下线时写入 token:refresh:revoked-before:{userId}，首次登录时间不晚于该时间的刷新链全部作废
+ */
+@Slf4j
+@Service
+public class RefreshTokenServiceImpl implements RefreshTokenService {
+
+    private static final String REFRESH_PREFIX = "token:refresh:";
+
+    private static final String REVOKED_BEFORE_PREFIX = "token:refresh:revoked-before:";
+
+    private static final int TOKEN_BYTES = 32;
+
+    // 读取并删除，保证同一个刷新令牌并发使用时只有一个请求成功
+    private static final RedisScript<String> CONSUME_SCRIPT = new DefaultRedisScript<>(
+            "local v = redis.call('GET', KEYS[1]) " +
+            "if v then redis.call('DEL', KEYS[1]) end " +
+            "return v",
+            String.class);
+
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
+    // 刷新令牌闲置有效期（秒），每次刷新重新计算
+    @Value("${token.refresh.ttl-seconds:604800}")
+    private long ttlSeconds;
+
+    // 刷新链最长存活时间（秒），超过后必须重新登录
+    @Value("${token.refresh.max-lifetime-seconds:2592000}")
+    private long maxLifetimeSeconds;
+
+    @Override
+    public String issue(RefreshTokenSession session) {
+        long expireSeconds = expireSeconds(session);
+        if (expireSeconds <= 0) {
+            log.info("刷新链已超过最长存活时间: userId={}", session.getUserId());
+            return null;
+        }
+        String refreshToken = newRefreshToken();
+        stringRedisTemplate.opsForValue().set(REFRESH_PREFIX + TokenDigestUtil.digest(refreshToken),
+                serialize(session), expireSeconds, TimeUnit.SECONDS);
+        log.debug("刷新令牌签发成功: userId={}, expireSeconds={}", session.getUserId(), expireSeconds);
+        return refreshToken;
+    }
+
+    @Override
+    public Mono<String> issueReactive(RefreshTokenSession session) {
+        long expireSeconds = expireSeconds(session);
+        if (expireSeconds <= 0) {
+            log.info("刷新链已超过最长存活时间: userId={}", session.getUserId());
+            return Mono.empty();
+        }
+        String refreshToken = newRefreshToken();
+        return reactiveStringRedisTemplate.opsForValue()
+                .set(REFRESH_PREFIX + TokenDigestUtil.digest(refreshToken), serialize(session),
+                        Duration.ofSeconds(expireSeconds))
+                .thenReturn(refreshToken);
+    }
+
+    @Override
+    public RefreshTokenSession consume(String refreshToken) {
+        String value = stringRedisTemplate.execute(CONSUME_SCRIPT,
+                Collections.singletonList(REFRESH_PREFIX + TokenDigestUtil.digest(refreshToken)));
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(":", 4);
+        RefreshTokenSession session = new RefreshTokenSession(Long.parseLong(parts[0]), parts[3],
+                Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+        String revokedBefore = stringRedisTemplate.opsForValue().get(REVOKED_BEFORE_PREFIX + session.getUserId());
+        if (revokedBefore != null && session.getLoginTime() <= Long.parseLong(revokedBefore)) {
+            log.info("刷新链已随强制下线失效: userId={}, loginTime={}, revokedBefore={}",
+                    session.getUserId(), session.getLoginTime(), revokedBefore);
+            return null;
+        }
+        return session;
+    }
+
+    @Override
+    public void revoke(String refreshToken) {
+        stringRedisTemplate.delete(REFRESH_PREFIX + TokenDigestUtil.digest(refreshToken));
+    }
+
+    @Override
+    public void revokeAll(Long userId) {
+        // 刷新链最长存活 maxLifetimeSeconds，之后更早登录的刷新令牌已自然失效，标记无需保留
+        stringRedisTemplate.opsForValue().set(REVOKED_BEFORE_PREFIX + userId,
+                String.valueOf(System.currentTimeMillis()), maxLifetimeSeconds, TimeUnit.SECONDS);
+        log.info("用户所有刷新令牌已作废: userId={}", userId);
+    }
+
+    private long expireSeconds(RefreshTokenSession session) {
+        long remainingSeconds = maxLifetimeSeconds
+                - (System.currentTimeMillis() - session.getLoginTime()) / 1000;
+        return Math.min(ttlSeconds, remainingSeconds);
+    }
+
+    private String newRefreshToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String serialize(RefreshTokenSession session) {
+        return session.getUserId() + ":" + session.getRoleEpoch() + ":" + session.getLoginTime() + ":"
+                + session.getRoleCode();
+    }
+}
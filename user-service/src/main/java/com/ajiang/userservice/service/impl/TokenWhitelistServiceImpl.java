@@ -1,29 +1,108 @@
 package com.ajiang.userservice.service.impl;
 
+import com.ajiang.common.util.JwtUtil;
+import com.ajiang.userservice.redis.RedisShardNode;
+import com.ajiang.userservice.redis.TokenRedisShards;
+import com.ajiang.userservice.service.RefreshTokenService;
 import com.ajiang.userservice.service.TokenWhitelistService;
+import com.ajiang.userservice.util.TokenDigestUtil;
+import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 /**
  * AI
  * Token白名单服务实现类
  * 基于Redis实现token白名单机制
+ * token.revocation.mode 为 whitelist（默认）或 migrate 时启用，migrate 模式下仅用于迁移前签发的token
+ * <p>
+ * 白名单键使用 token 的定长摘要（SHA-256 前 128 位，Base64URL 22 字符）代替完整 JWT；
+ * 用户的会话保存在按过期时间排序的有序集合中，超过上限时由 Lua 脚本原子地淘汰最早过期的会话。
+ * 令牌键按 userId 分片（见 {@link TokenRedisShards}），需要先从 token 中解析出 userId 再定位节点
  */
 @Slf4j
 @Service
+@ConditionalOnExpression("'${token.revocation.mode:whitelist}' != 'epoch'")
 public class TokenWhitelistServiceImpl implements TokenWhitelistService {
 
+    @Autowired
+    private TokenRedisShards tokenRedisShards;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    // 仅用于读取/清理升级前以完整JWT为键写入的白名单（在默认 Redis 中）
     @Autowired
     private RedisTemplate<String, Object> redisTemplate;
 
+    // 响应式校验时读取旧白名单键（在默认 Redis 中）
+    @Autowired
+    private ReactiveStringRedisTemplate reactiveStringRedisTemplate;
+
     // Redis key前缀
     private static final String TOKEN_PREFIX = "token:whitelist:";
-    private static final String USER_TOKEN_PREFIX = "user:tokens:";
+    private static final String USER_SESSIONS_PREFIX = "user:sessions:";
+    private static final String LEGACY_USER_TOKEN_PREFIX = "user:tokens:";
+
+    /**
+     * 添加会话：写白名单键，按过期时间加入用户会话有序集合，清理已过期成员，超过上限时淘汰最早过期的会话
+     * 令牌有效期带随机抖动，成员按各自的过期时间计分、集合的过期时间只延长不缩短，
+     * 较短有效期的新会话不会提前清理或随集合过期丢失仍然有效的旧会话
+     * 淘汰时跳过本次添加的会话：它的有效期可能比已有会话短，按分数会排在最前
+     * KEYS[1] 白名单键  KEYS[2] 用户会话有序集合
+     * ARGV[1] userId  ARGV[2] 过期秒数  ARGV[3] 当前毫秒时间  ARGV[4] 摘要  ARGV[5] 会话上限  ARGV[6] 白名单键前缀
+     * 返回被淘汰的会话数
+     */
+    private static final RedisScript<Long> ADD_SESSION_SCRIPT = new DefaultRedisScript<>(
+            "local ttl = tonumber(ARGV[2]) " +
+            "local now = tonumber(ARGV[3]) " +
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ttl) " +
+            "redis.call('ZADD', KEYS[2], now + ttl * 1000, ARGV[4]) " +
+            "redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', now) " +
+            "local overflow = redis.call('ZCARD', KEYS[2]) - tonumber(ARGV[5]) " +
+            "if overflow > 0 then " +
+            "  local candidates = redis.call('ZRANGE', KEYS[2], 0, overflow) " +
+            "  local evicted = 0 " +
+            "  for i = 1, #candidates do " +
+            "    if evicted < overflow and candidates[i] ~= ARGV[4] then " +
+            "      redis.call('DEL', ARGV[6] .. candidates[i]) " +
+            "      redis.call('ZREM', KEYS[2], candidates[i]) " +
+            "      evicted = evicted + 1 " +
+            "    end " +
+            "  end " +
+            "  overflow = evicted " +
+            "else overflow = 0 end " +
+            "if redis.call('TTL', KEYS[2]) < ttl then redis.call('EXPIRE', KEYS[2], ttl) end " +
+            "return overflow",
+            Long.class);
+
+    // 每个用户同时有效的会话上限
+    @Value("${token.whitelist.max-sessions-per-user:10}")
+    private int maxSessionsPerUser;
+
+    // 是否兼容升级前以完整JWT为键的白名单，旧token全部过期后可关闭
+    @Value("${token.whitelist.legacy-fallback:true}")
+    private boolean legacyFallback;
+
+    // 微批检查的最长等待时间
+    @Value("${token.whitelist.batch.timeout-ms:1000}")
+    private long batchTimeoutMs;
 
     /**
      * 将token添加到白名单
@@ -35,24 +114,48 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
     @Override
     public void addTokenToWhitelist(String token, Long userId, long expireSeconds) {
         try {
-            String tokenKey = TOKEN_PREFIX + token;
-            String userTokenKey = USER_TOKEN_PREFIX + userId;
+            String digest = TokenDigestUtil.digest(token);
+            RedisShardNode node = tokenRedisShards.nodeFor(userId);
+            Long evicted = node.getTemplate().execute(ADD_SESSION_SCRIPT,
+                    Arrays.asList(TOKEN_PREFIX + digest, USER_SESSIONS_PREFIX + userId),
+                    userId.toString(), String.valueOf(expireSeconds), String.valueOf(System.currentTimeMillis()),
+                    digest, String.valueOf(maxSessionsPerUser), TOKEN_PREFIX);
 
-            // 存储token -> userId的映射，设置过期时间
-            redisTemplate.opsForValue().set(tokenKey, userId, expireSeconds, TimeUnit.SECONDS);
-
-            // 存储userId -> tokens的集合映射，用于批量删除用户的所有token
-            redisTemplate.opsForSet().add(userTokenKey, token);
-            redisTemplate.expire(userTokenKey, expireSeconds, TimeUnit.SECONDS);
-
-            log.info("Token添加到白名单成功: userId={}, token={}", userId,
-                    token.substring(0, Math.min(token.length(), 20)) + "...");
+            if (evicted != null && evicted > 0) {
+                log.info("用户会话数超过上限，已淘汰最早过期的会话: userId={}, evicted={}, max={}",
+                        userId, evicted, maxSessionsPerUser);
+            }
+            log.info("Token添加到白名单成功: userId={}, digest={}, node={}", userId, digest, node.getId());
         } catch (Exception e) {
             log.error("Token添加到白名单失败: userId={}, error={}", userId, e.getMessage(), e);
             throw new RuntimeException("添加token到白名单失败", e);
         }
     }
 
+    @Override
+    public Mono<Void> addTokenToWhitelistReactive(String token, Long userId, long expireSeconds) {
+        String digest = TokenDigestUtil.digest(token);
+        RedisShardNode node = tokenRedisShards.nodeFor(userId);
+        return node.getReactiveTemplate().execute(ADD_SESSION_SCRIPT,
+                        Arrays.asList(TOKEN_PREFIX + digest, USER_SESSIONS_PREFIX + userId),
+                        Arrays.asList(userId.toString(), String.valueOf(expireSeconds),
+                                String.valueOf(System.currentTimeMillis()), digest,
+                                String.valueOf(maxSessionsPerUser), TOKEN_PREFIX))
+                .next()
+                .doOnNext(evicted -> {
+                    if (evicted > 0) {
+                        log.info("用户会话数超过上限，已淘汰最早过期的会话: userId={}, evicted={}, max={}",
+                                userId, evicted, maxSessionsPerUser);
+                    }
+                    log.info("Token添加到白名单成功: userId={}, digest={}, node={}", userId, digest, node.getId());
+                })
+                .onErrorMap(e -> {
+                    log.error("Token添加到白名单失败: userId={}, error={}", userId, e.getMessage(), e);
+                    return new RuntimeException("添加token到白名单失败", e);
+                })
+                .then();
+    }
+
     /**
      * 检查token是否在白名单中
      *
@@ -61,12 +164,32 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
      */
     @Override
     public boolean isTokenInWhitelist(String token) {
+        Claims claims;
         try {
-            String tokenKey = TOKEN_PREFIX + token;
-            Boolean exists = redisTemplate.hasKey(tokenKey);
-            log.debug("检查token白名单: token={}, exists={}", token.substring(0, Math.min(token.length(), 20)) + "...",
-                    exists);
-            return Boolean.TRUE.equals(exists);
+            claims = jwtUtil.parseToken(token);
+        } catch (Exception e) {
+            log.debug("检查token白名单: token解析失败, error={}", e.getMessage());
+            return false;
+        }
+        return isTokenInWhitelist(token, claims);
+    }
+
+    @Override
+    public boolean isTokenInWhitelist(String token, Claims claims) {
+        try {
+            Long userId = Long.parseLong(claims.getSubject());
+            String tokenKey = TOKEN_PREFIX + TokenDigestUtil.digest(token);
+            boolean exists = tokenRedisShards.nodeFor(userId).exists(tokenKey, batchTimeoutMs);
+            if (!exists) {
+                // 节点迁移期间会话可能还在旧节点上
+                RedisShardNode previous = tokenRedisShards.previousNodeFor(userId);
+                exists = previous != null && previous.exists(tokenKey, batchTimeoutMs);
+            }
+            if (!exists && legacyFallback) {
+                exists = Boolean.TRUE.equals(redisTemplate.hasKey(TOKEN_PREFIX + token));
+            }
+            log.debug("检查token白名单: userId={}, exists={}", userId, exists);
+            return exists;
         } catch (Exception e) {
             log.error("检查token白名单失败: error={}", e.getMessage(), e);
             // 出现异常时，为了安全考虑，返回false
@@ -74,6 +197,30 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
         }
     }
 
+    @Override
+    public Mono<Boolean> isTokenInWhitelistReactive(String token, Claims claims) {
+        Long userId = Long.parseLong(claims.getSubject());
+        String tokenKey = TOKEN_PREFIX + TokenDigestUtil.digest(token);
+        RedisShardNode previous = tokenRedisShards.previousNodeFor(userId);
+        Mono<Boolean> exists = tokenRedisShards.nodeFor(userId).getReactiveTemplate().hasKey(tokenKey);
+        if (previous != null) {
+            // 节点迁移期间会话可能还在旧节点上
+            exists = exists.flatMap(found -> found ? Mono.just(true)
+                    : previous.getReactiveTemplate().hasKey(tokenKey));
+        }
+        if (legacyFallback) {
+            exists = exists.flatMap(found -> found ? Mono.just(true)
+                    : reactiveStringRedisTemplate.hasKey(TOKEN_PREFIX + token));
+        }
+        return exists
+                .defaultIfEmpty(false)
+                .onErrorResume(e -> {
+                    log.error("检查token白名单失败: error={}", e.getMessage(), e);
+                    // 出现异常时，为了安全考虑，返回false
+                    return Mono.just(false);
+                });
+    }
+
     /**
      * 从白名单中移除token（登出时使用）
      *
@@ -82,22 +229,20 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
     @Override
     public void removeTokenFromWhitelist(String token) {
         try {
-            String tokenKey = TOKEN_PREFIX + token;
-
-            // 先获取userId，用于从用户token集合中移除
-            Long userId = (Long) redisTemplate.opsForValue().get(tokenKey);
+            Long userId = jwtUtil.getUserIdFromToken(token);
+            String digest = TokenDigestUtil.digest(token);
 
-            // 删除token -> userId的映射
-            redisTemplate.delete(tokenKey);
-
-            // 从用户token集合中移除该token
-            if (userId != null) {
-                String userTokenKey = USER_TOKEN_PREFIX + userId;
-                redisTemplate.opsForSet().remove(userTokenKey, token);
+            // 删除token -> userId的映射，并从用户会话集合中移除该token
+            removeSession(tokenRedisShards.nodeFor(userId), userId, digest);
+            RedisShardNode previous = tokenRedisShards.previousNodeFor(userId);
+            if (previous != null) {
+                removeSession(previous, userId, digest);
+            }
+            if (legacyFallback) {
+                redisTemplate.delete(TOKEN_PREFIX + token);
             }
 
-            log.info("Token从白名单移除成功: userId={}, token={}", userId,
-                    token.substring(0, Math.min(token.length(), 20)) + "...");
+            log.info("Token从白名单移除成功: userId={}, digest={}", userId, digest);
         } catch (Exception e) {
             log.error("Token从白名单移除失败: error={}", e.getMessage(), e);
             throw new RuntimeException("从白名单移除token失败", e);
@@ -113,9 +258,8 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
     @Override
     public Long getUserIdByToken(String token) {
         try {
-            String tokenKey = TOKEN_PREFIX + token;
-            Object userId = redisTemplate.opsForValue().get(tokenKey);
-            return userId != null ? (Long) userId : null;
+            Claims claims = jwtUtil.parseToken(token);
+            return isTokenInWhitelist(token, claims) ? Long.valueOf(claims.getSubject()) : null;
         } catch (Exception e) {
             log.error("获取token对应用户ID失败: error={}", e.getMessage(), e);
             return null;
@@ -130,28 +274,57 @@ public class TokenWhitelistServiceImpl implements TokenWhitelistService {
     @Override
     public void removeAllTokensByUserId(Long userId) {
         try {
-            String userTokenKey = USER_TOKEN_PREFIX + userId;
-
-            // 获取用户的所有token
-            Set<Object> tokens = redisTemplate.opsForSet().members(userTokenKey);
-
-            if (tokens != null && !tokens.isEmpty()) {
-                // 删除所有token -> userId的映射
-                for (Object token : tokens) {
-                    String tokenKey = TOKEN_PREFIX + token;
-                    redisTemplate.delete(tokenKey);
-                }
-
-                // 删除用户token集合
-                redisTemplate.delete(userTokenKey);
-
-                log.info("用户所有token移除成功: userId={}, tokenCount={}", userId, tokens.size());
-            } else {
-                log.info("用户没有有效token: userId={}", userId);
+            int tokenCount = removeAllSessions(tokenRedisShards.nodeFor(userId), userId);
+            RedisShardNode previous = tokenRedisShards.previousNodeFor(userId);
+            if (previous != null) {
+                tokenCount += removeAllSessions(previous, userId);
+            }
+            if (legacyFallback) {
+                removeLegacyTokens(userId);
             }
+            refreshTokenService.revokeAll(userId);
+            log.info("用户所有token移除成功: userId={}, tokenCount={}", userId, tokenCount);
         } catch (Exception e) {
             log.error("移除用户所有token失败: userId={}, error={}", userId, e.getMessage(), e);
             throw new RuntimeException("移除用户所有token失败", e);
         }
     }
-}
\ No newline at end of file
+
+    private void removeSession(RedisShardNode node, Long userId, String digest) {
+        node.getTemplate().delete(TOKEN_PREFIX + digest);
+        node.getTemplate().opsForZSet().remove(USER_SESSIONS_PREFIX + userId, digest);
+    }
+
+    /**
+     * 一次删除节点上该用户的全部白名单键和会话集合
+     *
+     * @return 删除的会话数
+     */
+    private int removeAllSessions(RedisShardNode node, Long userId) {
+        String userSessionsKey = USER_SESSIONS_PREFIX + userId;
+        Set<String> digests = node.getTemplate().opsForZSet().range(userSessionsKey, 0, -1);
+        List<String> keys = new ArrayList<>();
+        keys.add(userSessionsKey);
+        if (digests != null) {
+            for (String digest : digests) {
+                keys.add(TOKEN_PREFIX + digest);
+            }
+        }
+        node.getTemplate().delete(keys);
+        return keys.size() - 1;
+    }
+
+    private void removeLegacyTokens(Long userId) {
+        String legacyUserTokenKey = LEGACY_USER_TOKEN_PREFIX + userId;
+        Set<Object> tokens = redisTemplate.opsForSet().members(legacyUserTokenKey);
+        if (tokens == null || tokens.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(tokens.size() + 1);
+        for (Object token : tokens) {
+            keys.add(TOKEN_PREFIX + token);
+        }
+        keys.add(legacyUserTokenKey);
+        redisTemplate.delete(keys);
+    }
+}
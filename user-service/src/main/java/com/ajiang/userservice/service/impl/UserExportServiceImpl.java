@@ -0,0 +1,236 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.userservice.dto.UserResponseDto;
+import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.mapper.UserMapper;
+import com.ajiang.userservice.mq.LogProducer;
+import com.ajiang.userservice.service.UserExportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户导出服务实现类
+ * 基于 ShardingSphere 的多分片流式归并读取，按批做权限过滤后直接写入响应流
+ */
+@Slf4j
+@Service
+public class UserExportServiceImpl implements UserExportService {
+
+    // 每批过滤/写出的行数，同时也是批量查询角色的单次上限
+    private static final int BATCH_SIZE = 500;
+
+    private static final String CSV_HEADER = "userId,username,email,phone,gmtCreate\n";
+
+    // 电子表格会当作公式解析的首字符
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private PermissionServiceClient permissionServiceClient;
+
+    @Autowired
+    private LogProducer logProducer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * @description: 流式导出用户
+     * @author: ajiang
+     * @date: 2026/10/19 10:30
+     * @param: [currentUserId, currentUserRole, format, ip, out]
+     * @return: long
+     **/
+    @Override
+    public long exportUsers(Long currentUserId, String currentUserRole, String format, String ip, OutputStream out) {
+        long startTime = System.currentTimeMillis();
+        log.info("[业务开始] 导出用户: currentUserId={}, format={}, ip={}", currentUserId, format, ip);
+
+        ExportBatchWriter writer = new ExportBatchWriter(currentUserId, currentUserRole, format, out);
+
+        try {
+            writer.writeHeader();
+            switch (currentUserRole) {
+                case "user":
+                    // 普通用户只能导出自己，无需扫描分片
+                    User self = userMapper.selectById(currentUserId);
+                    if (self != null) {
+                        self.setPassword(null);
+                        writer.add(self);
+                    }
+                    break;
+                case "admin":
+                case "super_admin":
+                    userMapper.streamAll(writer);
+                    break;
+                default:
+                    log.error("未知角色: {}", currentUserRole);
+                    throw new BusinessException("非法用户角色");
+            }
+            writer.finish();
+        } catch (RuntimeException e) {
+            // 客户端断开连接时写出失败（会被MyBatis包装），游标随异常一起关闭
+            log.warn("[业务中断] 导出用户写出失败: currentUserId={}, exported={}, error={}",
+                    currentUserId, writer.getExportedCount(), e.getMessage());
+            throw e;
+        }
+
+        long totalTime = System.currentTimeMillis() - startTime;
+        log.info("[业务完成] 导出用户完成: currentUserId={}, role={}, scanned={}, exported={}, 总耗时={}ms",
+                currentUserId, currentUserRole, writer.getScannedCount(), writer.getExportedCount(), totalTime);
+
+        try {
+            logProducer.sendUserExportLog(currentUserId, currentUserRole, format, writer.getExportedCount(), ip);
+        } catch (Exception e) {
+            log.error("[消息队列] 导出日志发送失败: currentUserId={}, error={}", currentUserId, e.getMessage(), e);
+        }
+        return writer.getExportedCount();
+    }
+
+    /**
+     * 按批缓冲流式结果，批满后做一次权限过滤并写出
+     * 写出阻塞时 handleResult 不返回，分片读取随之暂停
+     */
+    private class ExportBatchWriter implements ResultHandler<User> {
+
+        private final Long currentUserId;
+        private final String currentUserRole;
+        private final boolean csv;
+        private final OutputStream out;
+        private final List<User> buffer = new ArrayList<>(BATCH_SIZE);
+        private long scannedCount;
+        private long exportedCount;
+
+        ExportBatchWriter(Long currentUserId, String currentUserRole, String format, OutputStream out) {
+            this.currentUserId = currentUserId;
+            this.currentUserRole = currentUserRole;
+            this.csv = FORMAT_CSV.equalsIgnoreCase(format);
+            this.out = out;
+        }
+
+        @Override
+        public void handleResult(ResultContext<? extends User> resultContext) {
+            add(resultContext.getResultObject());
+        }
+
+        void add(User user) {
+            scannedCount++;
+            buffer.add(user);
+            if (buffer.size() >= BATCH_SIZE) {
+                flushBatch();
+            }
+        }
+
+        void writeHeader() {
+            if (csv) {
+                write(CSV_HEADER);
+            }
+        }
+
+        void finish() {
+            flushBatch();
+        }
+
+        long getScannedCount() {
+            return scannedCount;
+        }
+
+        long getExportedCount() {
+            return exportedCount;
+        }
+
+        private void flushBatch() {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            Map<Long, String> roleCodes = null;
+            if ("admin".equals(currentUserRole)) {
+                List<Long> userIds = new ArrayList<>(buffer.size());
+                for (User user : buffer) {
+                    userIds.add(user.getUserId());
+                }
+                roleCodes = permissionServiceClient.getUserRoleCodes(userIds);
+            }
+
+            StringBuilder sb = new StringBuilder(buffer.size() * 128);
+            for (User user : buffer) {
+                if (roleCodes != null && !currentUserId.equals(user.getUserId())
+                        && !"user".equals(roleCodes.get(user.getUserId()))) {
+                    // 管理员只能导出普通用户和自己
+                    continue;
+                }
+                appendRow(sb, user);
+                exportedCount++;
+            }
+            buffer.clear();
+            write(sb.toString());
+        }
+
+        private void appendRow(StringBuilder sb, User user) {
+            if (csv) {
+                sb.append(user.getUserId()).append(',')
+                        .append(escapeCsv(user.getUsername())).append(',')
+                        .append(escapeCsv(user.getEmail())).append(',')
+                        .append(escapeCsv(user.getPhone())).append(',')
+                        .append(user.getGmtCreate() != null ? DATE_TIME_FORMATTER.format(user.getGmtCreate()) : "")
+                        .append('\n');
+                return;
+            }
+            UserResponseDto dto = new UserResponseDto();
+            BeanUtils.copyProperties(user, dto);
+            try {
+                sb.append(objectMapper.writeValueAsString(dto)).append('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(String content) {
+            try {
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * CSV 字段转义
+     * 1. 以 = + - @（及制表符、回车）开头的值在 Excel 中会被当作公式执行，前面加单引号按文本显示
+     * 2. 含逗号、双引号、换行或回车的值用双引号包裹，内部双引号加倍
+     */
+    private static String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) {
+            value = "'" + value;
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -0,0 +1,337 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.common.config.AppConfig.SimplePasswordEncoder;
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.userservice.config.ShardingSphereConfig;
+import com.ajiang.userservice.dto.UserImportResultDto;
+import com.ajiang.userservice.dto.UserImportRowResult;
+import com.ajiang.userservice.dto.UserRegisterDto;
+import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.mapper.UserMapper;
+import com.ajiang.userservice.mq.LogProducer;
+import com.ajiang.userservice.search.UserSearchIndex;
+import com.ajiang.userservice.service.UserImportService;
+import com.alibaba.fastjson.JSON;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * 用户批量导入服务实现类
+ * 按块处理：并行计算密码摘要、一次查询完成用户名去重、按数据节点分组做JDBC批量插入、一次RPC批量绑定默认角色。
+ * 已处理的块各自提交；超过最大行数时停止读取并返回已处理部分的结果（truncated=true），不回滚已提交的块
+ */
+@Slf4j
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+    // 每块行数，受权限服务批量绑定接口上限约束
+    private static final int CHUNK_SIZE = 1000;
+
+    // 单次导入的最大数据行数（不含空行）
+    private static final int MAX_ROWS = 100000;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private PermissionServiceClient permissionServiceClient;
+
+    @Autowired
+    private SimplePasswordEncoder passwordEncoder;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private LogProducer logProducer;
+
+    /**
+     * 导入中的一行数据
+     */
+    private static class ImportRow {
+        private final UserRegisterDto dto;
+        private final UserImportRowResult result;
+        private User user;
+
+        ImportRow(int line, UserRegisterDto dto) {
+            this.dto = dto;
+            this.result = UserImportRowResult.builder()
+                    .line(line)
+                    .username(dto != null ? dto.getUsername() : null)
+                    .build();
+        }
+
+        boolean isPending() {
+            return result.getStatus() == null;
+        }
+
+        void fail(String message) {
+            result.setStatus(UserImportRowResult.STATUS_FAILED);
+            result.setMessage(message);
+        }
+    }
+
+    /**
+     * @description: 批量导入用户
+     * @author: ajiang
+     * @date: 2026/10/19 13:30
+     * @param: [in, currentUserId, currentUserRole, ip]
+     * @return: com.ajiang.userservice.dto.UserImportResultDto
+     **/
+    @Override
+    public UserImportResultDto importUsers(InputStream in, Long currentUserId, String currentUserRole, String ip) {
+        long startTime = System.currentTimeMillis();
+        log.info("[业务开始] 批量导入用户: currentUserId={}, ip={}", currentUserId, ip);
+
+        if (!"admin".equals(currentUserRole) && !"super_admin".equals(currentUserRole)) {
+            log.warn("[业务异常] 无权批量导入用户: currentUserId={}, role={}", currentUserId, currentUserRole);
+            throw new BusinessException("权限不足，只有管理员可以批量导入用户");
+        }
+
+        List<UserImportRowResult> results = new ArrayList<>();
+        // 整个导入过程中出现过的用户名，一次遍历完成导入数据内部去重
+        Set<String> seenUsernames = new HashSet<>();
+        List<ImportRow> chunk = new ArrayList<>(CHUNK_SIZE);
+        Integer truncatedAtLine = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            int lineNo = 0;
+            int dataRows = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (++dataRows > MAX_ROWS) {
+                    // 之前的块已提交，停止读取并返回已处理部分的结果
+                    truncatedAtLine = lineNo;
+                    log.warn("[业务异常] 导入数据超过{}行，从第{}行起未处理: currentUserId={}",
+                            MAX_ROWS, lineNo, currentUserId);
+                    break;
+                }
+                chunk.add(parseRow(lineNo, line));
+                if (chunk.size() >= CHUNK_SIZE) {
+                    processChunk(chunk, seenUsernames, results);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(chunk, seenUsernames, results);
+            }
+        } catch (IOException e) {
+            log.error("[业务异常] 读取导入数据失败: error={}", e.getMessage(), e);
+            throw new BusinessException("读取导入数据失败: " + e.getMessage());
+        }
+
+        int successCount = (int) results.stream()
+                .filter(r -> UserImportRowResult.STATUS_SUCCESS.equals(r.getStatus()))
+                .count();
+        long elapsedMs = Math.max(1, System.currentTimeMillis() - startTime);
+        UserImportResultDto resultDto = UserImportResultDto.builder()
+                .total(results.size())
+                .successCount(successCount)
+                .failedCount(results.size() - successCount)
+                .elapsedMs(elapsedMs)
+                .usersPerMinute(successCount * 60000L / elapsedMs)
+                .truncated(truncatedAtLine != null)
+                .truncatedAtLine(truncatedAtLine)
+                .rows(results)
+                .build();
+
+        log.info("[业务完成] 批量导入用户完成: total={}, success={}, failed={}, 吞吐={}个/分钟, 总耗时={}ms",
+                resultDto.getTotal(), successCount, resultDto.getFailedCount(),
+                resultDto.getUsersPerMinute(), elapsedMs);
+
+        try {
+            logProducer.sendUserImportLog(currentUserId, results.size(), successCount, elapsedMs, ip);
+        } catch (Exception e) {
+            log.error("[消息队列] 导入日志发送失败: currentUserId={}, error={}", currentUserId, e.getMessage(), e);
+        }
+        return resultDto;
+    }
+
+    private ImportRow parseRow(int lineNo, String line) {
+        UserRegisterDto dto;
+        try {
+            dto = JSON.parseObject(line, UserRegisterDto.class);
+        } catch (Exception e) {
+            dto = null;
+        }
+        if (dto == null) {
+            ImportRow row = new ImportRow(lineNo, null);
+            row.fail("数据格式错误");
+            return row;
+        }
+        ImportRow row = new ImportRow(lineNo, dto);
+        Set<ConstraintViolation<UserRegisterDto>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            row.fail(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .collect(Collectors.joining(", ")));
+        }
+        return row;
+    }
+
+    private void processChunk(List<ImportRow> chunk, Set<String> seenUsernames, List<UserImportRowResult> results) {
+        long chunkStartTime = System.currentTimeMillis();
+
+        // 1. 导入数据内部去重
+        for (ImportRow row : chunk) {
+            if (row.isPending() && !seenUsernames.add(row.dto.getUsername())) {
+                row.fail("导入数据中用户名重复");
+            }
+        }
+
+        // 2. 与已有数据去重：整块一次查询
+        List<String> usernames = chunk.stream()
+                .filter(ImportRow::isPending)
+                .map(row -> row.dto.getUsername())
+                .collect(Collectors.toList());
+        if (!usernames.isEmpty()) {
+            LambdaQueryWrapper<User> queryWrapper = new LambdaQueryWrapper<>();
+            queryWrapper.select(User::getUsername).in(User::getUsername, usernames);
+            Set<String> existing = userMapper.selectList(queryWrapper).stream()
+                    .map(User::getUsername)
+                    .collect(Collectors.toSet());
+            for (ImportRow row : chunk) {
+                if (row.isPending() && existing.contains(row.dto.getUsername())) {
+                    row.fail("用户名已存在");
+                }
+            }
+        }
+
+        // 3. 并行计算密码摘要并预分配雪花ID
+        List<ImportRow> pending = chunk.stream().filter(ImportRow::isPending).collect(Collectors.toList());
+        LocalDateTime now = LocalDateTime.now();
+        pending.parallelStream().forEach(row -> row.user = User.builder()
+                .userId(IdWorker.getId())
+                .username(row.dto.getUsername())
+                .password(passwordEncoder.encode(row.dto.getPassword()))
+                .email(row.dto.getEmail())
+                .phone(row.dto.getPhone())
+                .gmtCreate(now)
+                .build());
+
+        // 4. 按数据节点分组批量插入
+        Map<String, List<ImportRow>> rowsByNode = pending.stream()
+                .collect(Collectors.groupingBy(row -> ShardingSphereConfig.getDataNode(row.user.getUserId()),
+                        TreeMap::new, Collectors.toList()));
+        List<Long> insertedUserIds = new ArrayList<>(pending.size());
+        for (Map.Entry<String, List<ImportRow>> entry : rowsByNode.entrySet()) {
+            if (batchInsert(entry.getKey(), entry.getValue())) {
+                for (ImportRow row : entry.getValue()) {
+                    insertedUserIds.add(row.user.getUserId());
+                }
+            }
+        }
+
+        // 5. 一次RPC批量绑定默认角色，失败时删除本块已插入的用户，这些行记为失败
+        if (!insertedUserIds.isEmpty()) {
+            try {
+                permissionServiceClient.bindDefaultRoles(insertedUserIds);
+            } catch (Exception e) {
+                log.error("[远程调用] 批量绑定默认角色失败: count={}, error={}",
+                        insertedUserIds.size(), e.getMessage());
+                compensateUnbound(pending, insertedUserIds);
+            }
+        }
+
+        for (ImportRow row : chunk) {
+            if (row.isPending()) {
+                row.result.setStatus(UserImportRowResult.STATUS_SUCCESS);
+                row.result.setUserId(row.user.getUserId());
+                userSearchIndex.index(row.user);
+            }
+            results.add(row.result);
+        }
+
+        log.info("[批量导入] 块处理完成: rows={}, inserted={}, nodes={}, 耗时={}ms",
+                chunk.size(), insertedUserIds.size(), rowsByNode.size(),
+                System.currentTimeMillis() - chunkStartTime);
+    }
+
+    /**
+     * 默认角色绑定失败时删除已插入的用户，使这些行可以重新导入
+     * 删除失败时保留用户并在结果中返回用户ID，由管理员补绑角色
+     */
+    private void compensateUnbound(List<ImportRow> pending, List<Long> insertedUserIds) {
+        boolean deleted;
+        try {
+            userMapper.deleteBatchIds(insertedUserIds);
+            deleted = true;
+            log.info("[数据库操作] 已删除未绑定角色的导入用户: count={}", insertedUserIds.size());
+        } catch (Exception e) {
+            deleted = false;
+            log.error("[数据库操作] 删除未绑定角色的导入用户失败: count={}, userIds={}, error={}",
+                    insertedUserIds.size(), insertedUserIds, e.getMessage(), e);
+        }
+        for (ImportRow row : pending) {
+            if (!row.isPending()) {
+                continue;
+            }
+            if (deleted) {
+                row.fail("默认角色绑定失败，已撤销创建，请重新导入");
+            } else {
+                row.result.setUserId(row.user.getUserId());
+                row.fail("默认角色绑定失败，用户已创建但未绑定角色");
+            }
+        }
+    }
+
+    /**
+     * 同一数据节点的行使用一个JDBC批次插入
+     *
+     * @return 是否成功
+     */
+    private boolean batchInsert(String dataNode, List<ImportRow> rows) {
+        long startTime = System.currentTimeMillis();
+        try (SqlSession session = sqlSessionFactory.openSession(ExecutorType.BATCH, false)) {
+            UserMapper batchMapper = session.getMapper(UserMapper.class);
+            for (ImportRow row : rows) {
+                batchMapper.insert(row.user);
+            }
+            session.flushStatements();
+            session.commit();
+            log.debug("[数据库操作] 批量插入完成: dataNode={}, rows={}, 耗时={}ms",
+                    dataNode, rows.size(), System.currentTimeMillis() - startTime);
+            return true;
+        } catch (Exception e) {
+            log.error("[数据库操作] 批量插入失败: dataNode={}, rows={}, error={}",
+                    dataNode, rows.size(), e.getMessage(), e);
+            for (ImportRow row : rows) {
+                row.fail("写入数据库失败");
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.search.UserSearchIndex;
+import com.ajiang.userservice.service.UserSearchService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户搜索服务实现类
+ */
+@Slf4j
+@Service
+public class UserSearchServiceImpl implements UserSearchService {
+
+    // 管理员需要按角色过滤，多取一些候选以尽量填满结果
+    private static final int ADMIN_CANDIDATE_LIMIT = 1000;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private PermissionServiceClient permissionServiceClient;
+
+    /**
+     * @description: 搜索用户ID
+     * @author: ajiang
+     * @date: 2026/10/19 11:20
+     * @param: [currentUserId, currentUserRole, keyword, limit]
+     * @return: java.util.List<java.lang.Long>
+     **/
+    @Override
+    public List<Long> searchUserIds(Long currentUserId, String currentUserRole, String keyword, int limit) {
+        long startTime = System.nanoTime();
+        if (!userSearchIndex.isReady()) {
+            throw new BusinessException("搜索索引构建中，请稍后重试");
+        }
+
+        List<Long> result;
+        switch (currentUserRole) {
+            case "super_admin":
+                result = userSearchIndex.search(keyword, limit);
+                break;
+            case "admin":
+                result = filterForAdmin(currentUserId,
+                        userSearchIndex.search(keyword, Math.max(limit, ADMIN_CANDIDATE_LIMIT)), limit);
+                break;
+            case "user":
+                // 普通用户只能搜到自己
+                result = userSearchIndex.matches(currentUserId, keyword)
+                        ? Collections.singletonList(currentUserId) : Collections.<Long>emptyList();
+                break;
+            default:
+                log.error("未知角色: {}", currentUserRole);
+                throw new BusinessException("非法用户角色");
+        }
+
+        log.debug("[搜索] keyword={}, role={}, hits={}, 耗时={}us",
+                keyword, currentUserRole, result.size(), (System.nanoTime() - startTime) / 1000);
+        return result;
+    }
+
+    /**
+     * 管理员只能看到普通用户和自己
+     */
+    private List<Long> filterForAdmin(Long currentUserId, List<Long> candidates, int limit) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        Map<Long, String> roleCodes = permissionServiceClient.getUserRoleCodes(candidates);
+        List<Long> result = new ArrayList<>(Math.min(limit, candidates.size()));
+        for (Long userId : candidates) {
+            if (currentUserId.equals(userId) || "user".equals(roleCodes.get(userId))) {
+                result.add(userId);
+                if (result.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -3,26 +3,38 @@ package com.ajiang.userservice.service.impl;
 import com.ajiang.common.exception.BusinessException;
 import com.ajiang.common.model.PageParams;
 import com.ajiang.common.model.PageResult;
+import com.ajiang.common.security.RoleEpochStore;
 import com.ajiang.common.util.JwtUtil;
 import com.ajiang.userservice.dto.PasswordResetDto;
+import com.ajiang.userservice.dto.RefreshTokenSession;
 import com.ajiang.userservice.dto.UserLoginDto;
 import com.ajiang.userservice.dto.UserRegisterDto;
 import com.ajiang.userservice.dto.UserResponseDto;
+import com.ajiang.userservice.dto.UserTokenDto;
 import com.ajiang.userservice.entity.User;
+import com.ajiang.userservice.entity.UserOutbox;
 import com.ajiang.userservice.feignclient.PermissionServiceClient;
+import com.ajiang.userservice.limiter.LoginThrottle;
+import com.ajiang.userservice.lookup.CoalescingLookups;
 import com.ajiang.userservice.mapper.UserMapper;
+import com.ajiang.userservice.mapper.UserOutboxMapper;
 import com.ajiang.userservice.mq.LogProducer;
+import com.ajiang.userservice.search.UserSearchIndex;
+import com.ajiang.userservice.service.RefreshTokenService;
 import com.ajiang.userservice.service.UserService;
 import com.ajiang.userservice.service.TokenWhitelistService;
 import com.ajiang.userservice.util.SeataTransactionUtil;
+import com.alibaba.fastjson.JSON;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import io.jsonwebtoken.Claims;
 import org.apache.seata.spring.annotation.GlobalTransactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import com.ajiang.common.config.AppConfig.SimplePasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -57,6 +69,28 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     @Autowired
     private TokenWhitelistService tokenWhitelistService;
 
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private UserOutboxMapper userOutboxMapper;
+
+    @Autowired
+    private RoleEpochStore roleEpochStore;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private CoalescingLookups coalescingLookups;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    // 访问令牌过期时间的随机提前量上限（秒），使同一时刻登录的用户不会在同一时刻刷新
+    @Value("${token.expire-jitter-seconds:180}")
+    private long expireJitterSeconds;
+
     /**
      * @description: 用户注册
      * @author: ajiang
@@ -121,6 +155,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
                 user.getUserId(), user.getUsername(), totalTime);
         SeataTransactionUtil.logTransactionSuccess("用户注册");
 
+        // 更新搜索索引（放在所有可能失败的步骤之后）
+        userSearchIndex.index(user);
+
         try {
             long mqStartTime = System.currentTimeMillis();
             logProducer.sendUserRegisterLog(user.getUserId(), user.getUsername(), user.getEmail(), user.getPhone(), ip);
@@ -134,15 +171,68 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         return user.getUserId();
     }
 
+    /**
+     * @description: 用户注册（发件箱模式），只有一次本地提交，不经过Seata全局事务
+     * @author: ajiang
+     * @date: 2026/10/19 15:20
+     * @param: [registerDto, ip]
+     * @return: 用户ID
+     **/
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public Long registerWithOutbox(UserRegisterDto registerDto, String ip) {
+        long startTime = System.currentTimeMillis();
+        log.info("[业务开始] 用户注册(发件箱): username={}, email={}, phone={}, ip={}",
+                registerDto.getUsername(), registerDto.getEmail(), registerDto.getPhone(), ip);
+
+        LambdaQueryWrapper<User> queryWrapper = new LambdaQueryWrapper<>();
+        queryWrapper.eq(User::getUsername, registerDto.getUsername());
+        if (userMapper.selectCount(queryWrapper) > 0) {
+            log.warn("[业务异常] 用户名已存在: username={}, ip={}", registerDto.getUsername(), ip);
+            throw new BusinessException("用户名已存在");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        User user = new User();
+        user.setUsername(registerDto.getUsername());
+        user.setPassword(passwordEncoder.encode(registerDto.getPassword()));
+        user.setEmail(registerDto.getEmail());
+        user.setPhone(registerDto.getPhone());
+        user.setGmtCreate(now);
+        userMapper.insert(user);
+
+        // 发件箱与用户按同一 user_id 分片，两次写入落在同一数据节点，由本地事务保证原子性
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("username", user.getUsername());
+        payload.put("email", user.getEmail());
+        payload.put("phone", user.getPhone());
+        payload.put("ip", ip);
+        userOutboxMapper.insert(UserOutbox.builder()
+                .userId(user.getUserId())
+                .eventType(UserOutbox.EVENT_USER_REGISTERED)
+                .payload(JSON.toJSONString(payload))
+                .status(UserOutbox.STATUS_PENDING)
+                .retryCount(0)
+                .nextRetryTime(now)
+                .gmtCreate(now)
+                .build());
+
+        userSearchIndex.index(user);
+
+        log.info("[业务完成] 用户注册成功(发件箱): userId={}, username={}, 总耗时={}ms",
+                user.getUserId(), user.getUsername(), System.currentTimeMillis() - startTime);
+        return user.getUserId();
+    }
+
     /**
      * @description: 用户登录
      * @author: ajiang
      * @date: 2025/6/18 15:08
      * @param: [loginDto, ip]
-     * @return: token
+     * @return: 访问令牌和刷新令牌
      **/
     @Override
-    public String login(UserLoginDto loginDto, String ip) {
+    public UserTokenDto login(UserLoginDto loginDto, String ip) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 用户登录: username={}, ip={}", loginDto.getUsername(), ip);
 
@@ -159,6 +249,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
         if (user == null) {
             log.warn("[业务异常] 用户不存在: username={}, ip={}", loginDto.getUsername(), ip);
+            loginThrottle.recordFailure(ip, loginDto.getUsername());
             throw new BusinessException("用户名或密码错误");
         }
 
@@ -173,13 +264,15 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         if (!passwordMatch) {
             log.warn("[业务异常] 密码错误: username={}, userId={}, ip={}",
                     loginDto.getUsername(), user.getUserId(), ip);
+            loginThrottle.recordFailure(ip, loginDto.getUsername());
             throw new BusinessException("用户名或密码错误");
         }
 
-        // 获取用户角色
+        // 获取用户角色（先读角色版本号：两次读取之间发生的角色变更会使令牌立即过期，而不会被漏掉）
         log.debug("[远程调用] 获取用户角色: userId={}", user.getUserId());
         long roleStartTime = System.currentTimeMillis();
-        String roleCode = permissionServiceClient.getUserRoleCode(user.getUserId());
+        long roleEpoch = roleEpochStore.currentEpoch(user.getUserId());
+        String roleCode = coalescingLookups.roleCodeForIssue(user.getUserId(), roleEpoch);
         long roleEndTime = System.currentTimeMillis();
         log.debug("[远程调用] 用户角色获取完成: userId={}, roleCode={}, 耗时={}ms",
                 user.getUserId(), roleCode, (roleEndTime - roleStartTime));
@@ -187,16 +280,19 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         // 生成JWT Token
         log.debug("[业务处理] 生成JWT Token: userId={}", user.getUserId());
         long jwtStartTime = System.currentTimeMillis();
-        String token = jwtUtil.generateToken(user.getUserId(), roleCode);
+        long expireSeconds = jwtUtil.getJitteredExpirationSeconds(expireJitterSeconds);
+        Map<String, Object> sessionClaims = tokenWhitelistService.sessionClaims(user.getUserId());
+        String token = jwtUtil.generateToken(user.getUserId(), roleCode, roleEpoch, sessionClaims, expireSeconds);
         long jwtEndTime = System.currentTimeMillis();
         log.debug("[业务处理] JWT Token生成完成: userId={}, tokenLength={}, 耗时={}ms",
                 user.getUserId(), token.length(), (jwtEndTime - jwtStartTime));
 
-        // 将token添加到Redis白名单，设置过期时间为半小时（1800秒）
+        // 将token添加到Redis白名单，过期时间与token一致，并签发刷新令牌
         log.debug("[缓存操作] 添加Token到白名单: userId={}", user.getUserId());
         long cacheStartTime = System.currentTimeMillis();
-        long expireSeconds = 30 * 60;
         tokenWhitelistService.addTokenToWhitelist(token, user.getUserId(), expireSeconds);
+        String refreshToken = refreshTokenService.issue(
+                new RefreshTokenSession(user.getUserId(), roleCode, roleEpoch, System.currentTimeMillis()));
         long cacheEndTime = System.currentTimeMillis();
         log.debug("[缓存操作] Token白名单添加完成: userId={}, expireSeconds={}, 耗时={}ms",
                 user.getUserId(), expireSeconds, (cacheEndTime - cacheStartTime));
@@ -218,18 +314,59 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         long totalTime = System.currentTimeMillis() - startTime;
         log.info("[业务完成] 用户登录成功: userId={}, username={}, 总耗时={}ms",
                 user.getUserId(), user.getUsername(), totalTime);
-        return token;
+        return new UserTokenDto(token, refreshToken, expireSeconds);
+    }
+
+    /**
+     * @description: 刷新令牌
+     * 只校验刷新令牌并重新签发，不查询用户、不校验密码、不发送日志；
+     * 角色版本号未变化时沿用刷新令牌中的角色，不调用权限服务；
+     * 强制下线（removeAllTokensByUserId）之前登录的刷新链在 consume 时即被拒绝
+     * @author: ajiang
+     * @date: 2026/10/19 10:15
+     * @param: [refreshToken, ip]
+     * @return: 新的访问令牌和刷新令牌
+     **/
+    @Override
+    public UserTokenDto refreshToken(String refreshToken, String ip) {
+        long startTime = System.currentTimeMillis();
+
+        RefreshTokenSession session = refreshTokenService.consume(refreshToken);
+        if (session == null) {
+            log.warn("[业务异常] 刷新令牌无效或已过期: ip={}", ip);
+            throw new BusinessException("刷新令牌无效或已过期，请重新登录");
+        }
+        Long userId = session.getUserId();
+
+        // 角色变更后才需要重新查询角色
+        long roleEpoch = roleEpochStore.currentEpoch(userId);
+        String roleCode = session.getRoleCode();
+        if (roleEpoch != session.getRoleEpoch()) {
+            log.debug("[远程调用] 角色已变更，重新获取用户角色: userId={}", userId);
+            roleCode = coalescingLookups.roleCodeForIssue(userId, roleEpoch);
+        }
+
+        long expireSeconds = jwtUtil.getJitteredExpirationSeconds(expireJitterSeconds);
+        Map<String, Object> sessionClaims = tokenWhitelistService.sessionClaims(userId);
+        String token = jwtUtil.generateToken(userId, roleCode, roleEpoch, sessionClaims, expireSeconds);
+        tokenWhitelistService.addTokenToWhitelist(token, userId, expireSeconds);
+        String newRefreshToken = refreshTokenService.issue(
+                new RefreshTokenSession(userId, roleCode, roleEpoch, session.getLoginTime()));
+
+        log.info("[业务完成] 令牌刷新成功: userId={}, expireSeconds={}, 总耗时={}ms",
+                userId, expireSeconds, System.currentTimeMillis() - startTime);
+        return new UserTokenDto(token, newRefreshToken, expireSeconds);
     }
 
     /**
      * @description: 用户登出
      * @author: ajiang
      * @date: 2025/1/27 10:30
-     * @param: [token, ip]
+     * @param: [token, refreshToken, ip]
      * @return: void
      **/
     @Override
-    public void logout(String token, String ip) {
+    public void logout(String token, String refreshToken, String ip) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 用户登出请求: ip={}", ip);
 
@@ -242,7 +379,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             // 从token中解析用户信息
             log.debug("[业务处理] 解析Token信息");
             long parseStartTime = System.currentTimeMillis();
-            Long userId = jwtUtil.getUserIdFromToken(token);
+            Claims claims = jwtUtil.parseToken(token);
+            Long userId = Long.parseLong(claims.getSubject());
             long parseEndTime = System.currentTimeMillis();
             log.debug("[业务处理] Token解析完成: userId={}, 耗时={}ms",
                     userId, (parseEndTime - parseStartTime));
@@ -250,7 +388,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             // 检查token是否在白名单中
             log.debug("[缓存操作] 检查Token白名单: userId={}", userId);
             long checkStartTime = System.currentTimeMillis();
-            if (!tokenWhitelistService.isTokenInWhitelist(token)) {
+            if (!coalescingLookups.isTokenInWhitelist(token, claims)) {
                 log.warn("[业务异常] 尝试登出无效token: userId={}", userId);
                 throw new BusinessException("无效的token");
             }
@@ -262,6 +400,9 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             log.debug("[缓存操作] 从白名单移除Token: userId={}", userId);
             long cacheStartTime = System.currentTimeMillis();
             tokenWhitelistService.removeTokenFromWhitelist(token);
+            if (refreshToken != null && !refreshToken.isEmpty()) {
+                refreshTokenService.revoke(refreshToken);
+            }
             long cacheEndTime = System.currentTimeMillis();
             log.debug("[缓存操作] Token移除完成: userId={}, 耗时={}ms",
                     userId, (cacheEndTime - cacheStartTime));
@@ -269,7 +410,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             // 查询用户信息用于日志记录
             log.debug("[数据库操作] 查询用户信息: userId={}", userId);
             long dbStartTime = System.currentTimeMillis();
-            User user = userMapper.selectById(userId);
+            User user = coalescingLookups.userById(userId);
             String username = user != null ? user.getUsername() : "unknown";
             long dbEndTime = System.currentTimeMillis();
             log.debug("[数据库操作] 用户信息查询完成: userId={}, username={}, 耗时={}ms",
@@ -302,23 +443,20 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @description: 获取用户信息
      * @author: ajiang
      * @date: 2025/6/22 16:52
-     * @param: [currentUserId, userId, ip]
+     * @param: [currentUserId, currentUserRole, userId, ip]
      * @return: com.ajiang.userservice.dto.UserResponseDto
      **/
     @Override
-    public UserResponseDto getUserInfo(Long currentUserId, Long userId, String ip) {
+    public UserResponseDto getUserInfo(Long currentUserId, String currentUserRole, Long userId, String ip) {
 
         // 查询目标用户
-        User user = userMapper.selectById(userId);
+        User user = coalescingLookups.userById(userId);
         if (user == null) {
             log.warn("用户不存在: {}", userId);
             throw new BusinessException("用户不存在");
         }
 
-        // 查询当前用户的角色码
-        String currentUserRole = permissionServiceClient.getUserRoleCode(currentUserId);
-
-        // 权限校验
+        // 权限校验（当前用户角色来自已校验的令牌）
         switch (currentUserRole) {
             case "super_admin":
                 // 超管直接通过
@@ -328,7 +466,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
                     break;
                 }
                 // 管理员只能查看普通用户
-                String targetRole = permissionServiceClient.getUserRoleCode(userId);
+                String targetRole = coalescingLookups.roleCode(userId);
                 if (!"user".equals(targetRole)) {
                     log.warn("管理员无权查看非普通用户信息: currentUserId={}, targetUserId={}", currentUserId, userId);
                     throw new BusinessException("权限不足，无法查看该用户信息");
@@ -351,7 +489,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         BeanUtils.copyProperties(user, dto);
 
         // 查询目标用户的角色并设置
-        String targetRoleCode = permissionServiceClient.getUserRoleCode(userId);
+        String targetRoleCode = coalescingLookups.roleCode(userId);
         dto.setRoleCode(targetRoleCode);
 
         // 发送查看用户信息日志到MQ
@@ -365,11 +503,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @description: 获取用户列表
      * @author: ajiang
      * @date: 2025/6/18 15:12
-     * @param: [pageParams, currentUserId, ip]
+     * @param: [pageParams, currentUserId, currentUserRole, ip]
      * @return: 分页用户列表
      **/
     @Override
-    public PageResult<User> getUserList(PageParams pageParams, Long currentUserId, String ip) {
+    public PageResult<User> getUserList(PageParams pageParams, Long currentUserId, String currentUserRole, String ip) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 获取用户列表: pageNo={}, pageSize={}, currentUserId={}, ip={}",
                 pageParams.getPageNo(), pageParams.getPageSize(), currentUserId, ip);
@@ -384,13 +522,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         }
 
         try {
-            // 1. 获取当前用户角色
-            log.debug("[远程调用] 获取当前用户角色: currentUserId={}", currentUserId);
-            long rpcStartTime = System.currentTimeMillis();
-            String currentUserRole = permissionServiceClient.getUserRoleCode(currentUserId);
-            long rpcEndTime = System.currentTimeMillis();
-            log.debug("[远程调用] 当前用户角色获取完成: currentUserId={}, roleCode={}, 耗时={}ms",
-                    currentUserId, currentUserRole, (rpcEndTime - rpcStartTime));
+            // 1. 当前用户角色来自已校验的令牌
+            log.debug("[权限校验] 当前用户角色: currentUserId={}, roleCode={}", currentUserId, currentUserRole);
 
             // 2. 普通用户直接查询自己
             if ("user".equals(currentUserRole)) {
@@ -400,13 +533,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
 
             // 3. 管理员/超管：通过RPC获取分页ID
             log.debug("[权限校验] 管理员/超管通过权限服务获取可见用户ID列表");
-            rpcStartTime = System.currentTimeMillis();
+            long rpcStartTime = System.currentTimeMillis();
             PageResult<Long> idPageResult = permissionServiceClient.getVisibleUserIds(
                     currentUserId,
                     currentUserRole,
                     pageParams.getPageNo().intValue(),
                     pageParams.getPageSize().intValue());
-            rpcEndTime = System.currentTimeMillis();
+            long rpcEndTime = System.currentTimeMillis();
             log.debug("[远程调用] 可见用户ID列表获取完成: count={}, total={}, 耗时={}ms",
                     idPageResult.getItems().size(), idPageResult.getCounts(), (rpcEndTime - rpcStartTime));
 
@@ -478,7 +611,7 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
     }
 
     private PageResult<User> handleNormalUser(Long userId, PageParams pageParams, String ip) {
-        User user = userMapper.selectById(userId);
+        User user = coalescingLookups.userById(userId);
         if (user == null) {
             throw new BusinessException("用户不存在");
         }
@@ -500,12 +633,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @description: 修改用户消息
      * @author: ajiang
      * @date: 2025/6/18 15:14
-     * @param: [userId, user, currentUserId, ip]
+     * @param: [userId, user, currentUserId, currentUserRoleCode, ip]
      * @return: boolean
      **/
     @Override
     @Transactional
-    public boolean updateUser(Long userId, User user, Long currentUserId, String ip) {
+    public boolean updateUser(Long userId, User user, Long currentUserId, String currentUserRoleCode, String ip) {
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 修改用户信息: targetUserId={}, currentUserId={}, ip={}",
                 userId, currentUserId, ip);
@@ -524,19 +657,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             throw new BusinessException("用户不存在");
         }
 
-        // 获取当前用户角色
-        log.debug("[远程调用] 获取当前用户角色: currentUserId={}", currentUserId);
+        // 获取目标用户角色（当前用户角色来自已校验的令牌）
+        log.debug("[远程调用] 获取目标用户角色: targetUserId={}", userId);
         long rpcStartTime = System.currentTimeMillis();
-        String currentUserRoleCode = permissionServiceClient.getUserRoleCode(currentUserId);
+        String targetUserRoleCode = coalescingLookups.roleCode(userId);
         long rpcEndTime = System.currentTimeMillis();
-        log.debug("[远程调用] 当前用户角色获取完成: currentUserId={}, roleCode={}, 耗时={}ms",
-                currentUserId, currentUserRoleCode, (rpcEndTime - rpcStartTime));
-
-        // 获取目标用户角色
-        log.debug("[远程调用] 获取目标用户角色: targetUserId={}", userId);
-        rpcStartTime = System.currentTimeMillis();
-        String targetUserRoleCode = permissionServiceClient.getUserRoleCode(userId);
-        rpcEndTime = System.currentTimeMillis();
         log.debug("[远程调用] 目标用户角色获取完成: targetUserId={}, roleCode={}, 耗时={}ms",
                 userId, targetUserRoleCode, (rpcEndTime - rpcStartTime));
 
@@ -587,6 +712,16 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
         log.info("[数据库操作] 用户信息更新完成: userId={}, updateCount={}, result={}, 耗时={}ms",
                 userId, updateCount, result, (dbEndTime - dbStartTime));
 
+        // 提交后更新搜索索引
+        if (result) {
+            userSearchIndex.index(User.builder()
+                    .userId(userId)
+                    .username(existingUser.getUsername())
+                    .email(user.getEmail())
+                    .phone(user.getPhone())
+                    .build());
+        }
+
         // 发送操作日志
         if (result && !changes.isEmpty()) {
             log.debug("[消息队列] 发送用户更新日志: userId={}", userId);
@@ -613,12 +748,13 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
      * @description: 重置密码
      * @author: ajiang
      * @date: 2025/6/22 16:53
-     * @param: [passwordResetDto, currentUserId, ip]
+     * @param: [passwordResetDto, currentUserId, currentUserRoleCode, ip]
      * @return: boolean
      **/
     @Override
     @Transactional
-    public boolean resetPassword(PasswordResetDto passwordResetDto, Long currentUserId, String ip) {
+    public boolean resetPassword(PasswordResetDto passwordResetDto, Long currentUserId, String currentUserRoleCode,
+                                 String ip) {
         Long targetUserId = passwordResetDto.getUserId();
         long startTime = System.currentTimeMillis();
         log.info("[业务开始] 重置用户密码: targetUserId={}, currentUserId={}, ip={}",
@@ -638,19 +774,11 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements Us
             throw new BusinessException("用户不存在");
         }
 
-        // 获取当前用户角色
-        log.debug("[远程调用] 获取当前用户角色: currentUserId={}", currentUserId);
+        // 获取目标用户角色（当前用户角色来自已校验的令牌）
+        log.debug("[远程调用] 获取目标用户角色: targetUserId={}", targetUserId);
         long rpcStartTime = System.currentTimeMillis();
-        String currentUserRoleCode = permissionServiceClient.getUserRoleCode(currentUserId);
+        String targetUserRoleCode = coalescingLookups.roleCode(targetUserId);
         long rpcEndTime = System.currentTimeMillis();
-        log.debug("[远程调用] 当前用户角色获取完成: currentUserId={}, roleCode={}, 耗时={}ms",
-                currentUserId, currentUserRoleCode, (rpcEndTime - rpcStartTime));
-
-        // 获取目标用户角色
-        log.debug("[远程调用] 获取目标用户角色: targetUserId={}", targetUserId);
-        rpcStartTime = System.currentTimeMillis();
-        String targetUserRoleCode = permissionServiceClient.getUserRoleCode(targetUserId);
-        rpcEndTime = System.currentTimeMillis();
         log.debug("[远程调用] 目标用户角色获取完成: targetUserId={}, roleCode={}, 耗时={}ms",
                 targetUserId, targetUserRoleCode, (rpcEndTime - rpcStartTime));
 
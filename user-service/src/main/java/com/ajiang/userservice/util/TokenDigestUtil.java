@@ -0,0 +1,31 @@
+package com.ajiang.userservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * 令牌摘要工具类
+ * Redis 中不保存令牌原文，只保存定长摘要作为键
+ */
+public final class TokenDigestUtil {
+
+    private static final int DIGEST_BYTES = 16;
+
+    private TokenDigestUtil() {
+    }
+
+    /**
+     * 令牌的定长摘要：SHA-256 前 128 位，Base64URL 编码（22 字符）
+     */
+    public static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, DIGEST_BYTES));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256算法不可用", e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.ajiang.userservice.idempotency;
+
+import com.ajiang.common.exception.BusinessException;
+import com.ajiang.common.model.ApiResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyExecutorTests {
+
+    private static final String SCOPE = "register";
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    void retryReplaysTheStoredResponse() {
+        IdempotencyExecutor executor = executor(new LocalIdempotencyStore());
+
+        ApiResponse<String> first = executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                () -> register("alice"));
+        ApiResponse<String> retry = executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                () -> register("alice"));
+
+        assertEquals(1, executions.get());
+        assertEquals("alice#1", first.getData());
+        assertEquals(first, retry);
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirstRequest() throws Exception {
+        IdempotencyExecutor executor = executor(new LocalIdempotencyStore());
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        int callers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<ApiResponse<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                futures.add(pool.submit(() -> executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                        () -> {
+                            started.incrementAndGet();
+                            entered.countDown();
+                            await(release);
+                            return register("alice");
+                        })));
+            }
+            // 首个请求执行期间，其余请求都在等待而不是再次执行
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(1, started.get());
+            release.countDown();
+
+            for (Future<ApiResponse<String>> future : futures) {
+                assertEquals("alice#1", future.get(5, TimeUnit.SECONDS).getData());
+            }
+            assertEquals(1, started.get());
+            assertEquals(1, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void duplicateOnAnotherInstanceWaitsForTheStoredResponse() throws Exception {
+        LocalIdempotencyStore store = new LocalIdempotencyStore();
+        IdempotencyExecutor first = executor(store);
+        IdempotencyExecutor second = executor(store);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ApiResponse<String>> original = pool.submit(() -> first.execute(SCOPE, "k1",
+                    request("alice", "p1"), String.class, () -> {
+                        entered.countDown();
+                        await(release);
+                        return register("alice");
+                    }));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            // 另一个实例看到处理中占位，轮询到首个请求保存的结果
+            new Thread(() -> {
+                sleep(200);
+                release.countDown();
+            }).start();
+            ApiResponse<String> duplicate = second.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                    () -> register("alice"));
+
+            assertEquals("alice#1", duplicate.getData());
+            assertEquals("alice#1", original.get(5, TimeUnit.SECONDS).getData());
+            assertEquals(1, executions.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void reusingTheKeyForADifferentRequestIsRejected() {
+        IdempotencyExecutor executor = executor(new LocalIdempotencyStore());
+        executor.execute(SCOPE, "k1", request("alice", "p1"), String.class, () -> register("alice"));
+
+        // 只有密码不同也不能回放：指纹覆盖完整请求
+        BusinessException passwordChanged = assertThrows(BusinessException.class,
+                () -> executor.execute(SCOPE, "k1", request("alice", "p2"), String.class, () -> register("alice")));
+        assertEquals("Idempotency-Key 已被用于不同的请求", passwordChanged.getMessage());
+        assertThrows(BusinessException.class,
+                () -> executor.execute(SCOPE, "k1", request("bob", "p1"), String.class, () -> register("bob")));
+        assertEquals(1, executions.get());
+
+        // 不同接口范围的同名键互不影响
+        executor.execute("update", "k1", request("bob", "p1"), String.class, () -> register("bob"));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void failedActionReleasesTheKey() {
+        LocalIdempotencyStore store = new LocalIdempotencyStore();
+        IdempotencyExecutor executor = executor(store);
+
+        assertThrows(BusinessException.class, () -> executor.execute(SCOPE, "k1", request("alice", "p1"),
+                String.class, () -> {
+                    throw new BusinessException("用户名已存在");
+                }));
+        assertNull(store.get(SCOPE + ":k1"));
+
+        ApiResponse<String> retry = executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                () -> register("alice"));
+        assertEquals("alice#1", retry.getData());
+    }
+
+    @Test
+    void storeFailureStillReturnsTheCommittedResponse() {
+        FailingPutStore store = new FailingPutStore();
+        IdempotencyExecutor executor = executor(store);
+
+        ApiResponse<String> response = executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                () -> register("alice"));
+
+        // 操作已执行，保存结果失败不影响本次响应，占位被释放，重试会再次执行
+        assertEquals("alice#1", response.getData());
+        assertNull(store.get(SCOPE + ":k1"));
+        store.failing = false;
+        ApiResponse<String> retry = executor.execute(SCOPE, "k1", request("alice", "p1"), String.class,
+                () -> register("alice"));
+        assertEquals("alice#2", retry.getData());
+        assertNotNull(store.get(SCOPE + ":k1"));
+    }
+
+    @Test
+    void requestWithoutKeyIsNotDeduplicated() {
+        IdempotencyExecutor executor = executor(new LocalIdempotencyStore());
+        ApiResponse<String> response = register("alice");
+
+        assertSame(response, executor.execute(SCOPE, null, request("alice", "p1"), String.class, () -> response));
+        executor.execute(SCOPE, "", request("alice", "p1"), String.class, () -> register("alice"));
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void missingSecretFailsStartup() {
+        IdempotencyExecutor executor = new IdempotencyExecutor();
+        ReflectionTestUtils.setField(executor, "fingerprintSecret", " ");
+
+        assertThrows(IllegalStateException.class, executor::init);
+    }
+
+    private IdempotencyExecutor executor(IdempotencyStore store) {
+        IdempotencyExecutor executor = new IdempotencyExecutor();
+        ReflectionTestUtils.setField(executor, "idempotencyStore", store);
+        ReflectionTestUtils.setField(executor, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(executor, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(executor, "inFlightTtlSeconds", 30L);
+        ReflectionTestUtils.setField(executor, "waitTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(executor, "fingerprintSecret", "test-secret");
+        executor.init();
+        return executor;
+    }
+
+    private ApiResponse<String> register(String username) {
+        return ApiResponse.success(username + "#" + executions.incrementAndGet());
+    }
+
+    private static Map<String, Object> request(String username, String password) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("username", username);
+        request.put("password", password);
+        return request;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 保存响应时失败的存储，占位写入正常
+     */
+    private static class FailingPutStore extends LocalIdempotencyStore {
+
+        private volatile boolean failing = true;
+
+        @Override
+        public void put(String key, String value, long ttlSeconds) {
+            if (failing) {
+                throw new IllegalStateException("存储不可用");
+            }
+            super.put(key, value, ttlSeconds);
+        }
+    }
+}
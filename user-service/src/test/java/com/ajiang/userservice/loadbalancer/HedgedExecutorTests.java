@@ -0,0 +1,202 @@
+package com.ajiang.userservice.loadbalancer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedExecutorTests {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private HedgedExecutor hedgedExecutor;
+
+    @BeforeEach
+    void setUp() {
+        hedgedExecutor = new HedgedExecutor();
+        ReflectionTestUtils.setField(hedgedExecutor, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(hedgedExecutor, "enabled", true);
+        ReflectionTestUtils.setField(hedgedExecutor, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedgedExecutor, "minDelayMs", 5L);
+        ReflectionTestUtils.setField(hedgedExecutor, "initialDelayMs", 20L);
+        ReflectionTestUtils.setField(hedgedExecutor, "maxRatio", 1.0);
+        ReflectionTestUtils.setField(hedgedExecutor, "burst", 10);
+        ReflectionTestUtils.setField(hedgedExecutor, "threads", 4);
+        hedgedExecutor.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        hedgedExecutor.destroy();
+    }
+
+    @Test
+    void fastQueryIsNotHedged() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("ok", hedgedExecutor.execute(() -> {
+            calls.incrementAndGet();
+            return "ok";
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(0, hedgeCount("sent"));
+    }
+
+    @Test
+    void slowPrimaryReturnsFirstSuccessfulHedge() {
+        AtomicInteger calls = new AtomicInteger();
+        long startTime = System.nanoTime();
+
+        String result = hedgedExecutor.execute(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(1000);
+                return "primary";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertTrue(System.nanoTime() - startTime < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(1, hedgeCount("sent"));
+        assertEquals(1, hedgeCount("won"));
+    }
+
+    @Test
+    void failedPrimaryIsCoveredByHedge() {
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = hedgedExecutor.execute(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(100);
+                throw new IllegalStateException("primary failed");
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+    }
+
+    @Test
+    void bothFailedThrowsPrimaryError() {
+        AtomicInteger calls = new AtomicInteger();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> hedgedExecutor.execute(() -> {
+            int call = calls.incrementAndGet();
+            sleep(call == 1 ? 60 : 10);
+            throw new IllegalStateException("failed-" + call);
+        }));
+        assertEquals("failed-1", e.getMessage());
+    }
+
+    @Test
+    void hedgesAreCappedByMaxRatio() {
+        ReflectionTestUtils.setField(hedgedExecutor, "maxRatio", 0.1);
+        ReflectionTestUtils.setField(hedgedExecutor, "burst", 1);
+        hedgedExecutor.destroy();
+        hedgedExecutor.init();
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 10; i++) {
+            hedgedExecutor.execute(() -> {
+                calls.incrementAndGet();
+                sleep(60);
+                return "slow";
+            });
+        }
+
+        // 初始的一个令牌用于第一个请求，之后 9 个请求只积累 0.9 个令牌
+        assertEquals(1, hedgeCount("sent"));
+        assertEquals(11, calls.get());
+    }
+
+    @Test
+    void healthyHistoryDoesNotBankHedges() {
+        ReflectionTestUtils.setField(hedgedExecutor, "maxRatio", 0.1);
+        ReflectionTestUtils.setField(hedgedExecutor, "burst", 2);
+        hedgedExecutor.destroy();
+        hedgedExecutor.init();
+
+        // 大量健康请求之后令牌数仍不超过桶容量
+        for (int i = 0; i < 1000; i++) {
+            hedgedExecutor.execute(() -> "fast");
+        }
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            hedgedExecutor.execute(() -> {
+                calls.incrementAndGet();
+                sleep(60);
+                return "slow";
+            });
+        }
+
+        // 桶中 2 个令牌，变慢后的 10 个请求再积累 1 个：最多 3 个对冲请求，而不是每个请求都对冲
+        assertTrue(hedgeCount("sent") <= 3);
+        assertEquals(10 + (long) hedgeCount("sent"), calls.get());
+    }
+
+    @Test
+    void runsInlineWhenPoolIsFull() {
+        ReflectionTestUtils.setField(hedgedExecutor, "threads", 1);
+        hedgedExecutor.destroy();
+        hedgedExecutor.init();
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) ReflectionTestUtils.getField(hedgedExecutor, "executor");
+        CountDownLatch release = new CountDownLatch(1);
+        // 占满唯一的线程和容量为 1 的队列
+        executor.execute(() -> await(release));
+        executor.execute(() -> await(release));
+
+        try {
+            Thread caller = Thread.currentThread();
+            AtomicInteger calls = new AtomicInteger();
+            Thread executedOn = hedgedExecutor.execute(() -> {
+                calls.incrementAndGet();
+                return Thread.currentThread();
+            });
+
+            assertSame(caller, executedOn);
+            assertEquals(1, calls.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void disabledRunsInline() {
+        ReflectionTestUtils.setField(hedgedExecutor, "enabled", false);
+        Thread caller = Thread.currentThread();
+
+        assertSame(caller, hedgedExecutor.execute(Thread::currentThread));
+    }
+
+    private double hedgeCount(String result) {
+        return meterRegistry.get("user.hedging.requests").tag("result", result).counter().count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
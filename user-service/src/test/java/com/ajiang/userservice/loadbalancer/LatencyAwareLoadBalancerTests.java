@@ -0,0 +1,145 @@
+package com.ajiang.userservice.loadbalancer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultRequest;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class LatencyAwareLoadBalancerTests {
+
+    private static final String SERVICE_ID = "permission-service";
+
+    private final ServiceInstance fast = instance("fast", 8081);
+
+    private final ServiceInstance slow = instance("slow", 8082);
+
+    private final ServiceInstance other = instance("other", 8083);
+
+    private InstanceLatencyStats stats;
+
+    @BeforeEach
+    void setUp() {
+        stats = new InstanceLatencyStats();
+        ReflectionTestUtils.setField(stats, "decayMs", 10000L);
+        ReflectionTestUtils.setField(stats, "failurePenaltyMs", 1000L);
+    }
+
+    @Test
+    void prefersInstanceWithLowerLatency() {
+        observe(fast, 2);
+        observe(slow, 200);
+        LatencyAwareLoadBalancer loadBalancer = loadBalancer(fast, slow);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(fast, choose(loadBalancer));
+        }
+    }
+
+    @Test
+    void slowestInstanceIsNeverPickedFromTwoRandomChoices() {
+        observe(fast, 2);
+        observe(other, 5);
+        observe(slow, 200);
+        LatencyAwareLoadBalancer loadBalancer = loadBalancer(fast, slow, other);
+
+        for (int i = 0; i < 200; i++) {
+            ServiceInstance chosen = choose(loadBalancer);
+            assertFalse(chosen == slow, "两个随机候选中总有一个比 slow 更优");
+        }
+    }
+
+    @Test
+    void prefersInstanceWithFewerInFlightRequests() {
+        observe(fast, 10);
+        observe(slow, 10);
+        for (int i = 0; i < 5; i++) {
+            stats.onStart(slow);
+        }
+        LatencyAwareLoadBalancer loadBalancer = loadBalancer(fast, slow);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(fast, choose(loadBalancer));
+        }
+    }
+
+    @Test
+    void failuresPenalizeInstance() {
+        observe(fast, 10);
+        stats.onStart(slow);
+        stats.onComplete(slow, TimeUnit.MILLISECONDS.toNanos(1), true);
+        LatencyAwareLoadBalancer loadBalancer = loadBalancer(fast, slow);
+
+        for (int i = 0; i < 100; i++) {
+            assertSame(fast, choose(loadBalancer));
+        }
+    }
+
+    @Test
+    void newInstanceIsProbedFirst() {
+        observe(fast, 2);
+        LatencyAwareLoadBalancer loadBalancer = loadBalancer(fast, other);
+
+        assertSame(other, choose(loadBalancer));
+    }
+
+    @Test
+    void singleInstanceIsAlwaysChosen() {
+        observe(slow, 200);
+
+        assertSame(slow, choose(loadBalancer(slow)));
+    }
+
+    @Test
+    void noInstanceGivesEmptyResponse() {
+        Response<ServiceInstance> response = loadBalancer().choose(new DefaultRequest<>()).block();
+
+        assertFalse(response.hasServer());
+    }
+
+    private void observe(ServiceInstance instance, long elapsedMs) {
+        stats.onStart(instance);
+        stats.onComplete(instance, TimeUnit.MILLISECONDS.toNanos(elapsedMs), false);
+    }
+
+    private static ServiceInstance choose(LatencyAwareLoadBalancer loadBalancer) {
+        return loadBalancer.choose(new DefaultRequest<>()).block().getServer();
+    }
+
+    private LatencyAwareLoadBalancer loadBalancer(ServiceInstance... instances) {
+        List<ServiceInstance> list = instances.length == 0
+                ? Collections.emptyList()
+                : Arrays.asList(instances);
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("serviceInstanceListSupplier", new ServiceInstanceListSupplier() {
+            @Override
+            public String getServiceId() {
+                return SERVICE_ID;
+            }
+
+            @Override
+            public Flux<List<ServiceInstance>> get() {
+                return Flux.just(list);
+            }
+        });
+        return new LatencyAwareLoadBalancer(beanFactory.getBeanProvider(ServiceInstanceListSupplier.class),
+                SERVICE_ID, stats);
+    }
+
+    private static ServiceInstance instance(String instanceId, int port) {
+        return new DefaultServiceInstance(instanceId, SERVICE_ID, "127.0.0.1", port, false);
+    }
+}
@@ -0,0 +1,82 @@
+package com.ajiang.userservice.redis;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConsistentHashRingTests {
+
+    private static final int KEYS = 100000;
+
+    private static final int VIRTUAL_NODES = 160;
+
+    @Test
+    void distributesKeysEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes(4), VIRTUAL_NODES);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.get("user:" + i), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        double mean = (double) KEYS / counts.size();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            double deviation = Math.abs(entry.getValue() - mean) / mean;
+            assertTrue(deviation < 0.2, "节点 " + entry.getKey() + " 的键数偏离均值 " + deviation);
+        }
+    }
+
+    @Test
+    void addingNodeMovesAboutOneNthOfKeysToTheNewNode() {
+        ConsistentHashRing<String> before = new ConsistentHashRing<>(nodes(4), VIRTUAL_NODES);
+        ConsistentHashRing<String> after = new ConsistentHashRing<>(nodes(5), VIRTUAL_NODES);
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "user:" + i;
+            String oldNode = before.get(key);
+            String newNode = after.get(key);
+            if (!oldNode.equals(newNode)) {
+                moved++;
+                // 只有落到新节点的键改变归属，已有节点之间不迁移
+                assertEquals("node-4", newNode);
+            }
+        }
+
+        double movedRatio = (double) moved / KEYS;
+        assertTrue(movedRatio > 0.15 && movedRatio < 0.25, "迁移比例 " + movedRatio + " 不接近 1/5");
+    }
+
+    @Test
+    void placementDoesNotDependOnNodeOrder() {
+        Map<String, String> reversed = new LinkedHashMap<>();
+        for (int i = 3; i >= 0; i--) {
+            reversed.put("node-" + i, "node-" + i);
+        }
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(nodes(4), VIRTUAL_NODES);
+        ConsistentHashRing<String> reversedRing = new ConsistentHashRing<>(reversed, VIRTUAL_NODES);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(ring.get("user:" + i), reversedRing.get("user:" + i));
+        }
+    }
+
+    @Test
+    void rejectsEmptyNodes() {
+        assertThrows(IllegalArgumentException.class, () -> new ConsistentHashRing<>(new HashMap<>(), VIRTUAL_NODES));
+    }
+
+    private static Map<String, String> nodes(int count) {
+        Map<String, String> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            nodes.put("node-" + i, "node-" + i);
+        }
+        return nodes;
+    }
+}
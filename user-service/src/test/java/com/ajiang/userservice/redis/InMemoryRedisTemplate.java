@@ -0,0 +1,187 @@
+package com.ajiang.userservice.redis;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 进程内的 Redis 替身，用于令牌分片相关的测试，只实现令牌白名单用到的命令
+ * 测试环境没有 Lua 解释器，登录脚本（TokenWhitelistServiceImpl.ADD_SESSION_SCRIPT）按脚本的语义逐条执行，
+ * 修改脚本时需要同步修改 addSession
+ */
+public class InMemoryRedisTemplate extends StringRedisTemplate {
+
+    private final String nodeId;
+
+    private final Map<String, String> strings = new HashMap<>();
+
+    // 有序集合：成员 -> 分数
+    private final Map<String, Map<String, Double>> zsets = new HashMap<>();
+
+    // 设置了过期时间的键 -> 过期秒数
+    private final Map<String, Long> ttls = new HashMap<>();
+
+    public InMemoryRedisTemplate(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public synchronized Set<String> keys() {
+        Set<String> keys = new LinkedHashSet<>(strings.keySet());
+        keys.addAll(zsets.keySet());
+        return keys;
+    }
+
+    public synchronized String get(String key) {
+        return strings.get(key);
+    }
+
+    public synchronized Map<String, Double> zset(String key) {
+        Map<String, Double> members = zsets.get(key);
+        return members == null ? new HashMap<>() : new HashMap<>(members);
+    }
+
+    public synchronized Long ttl(String key) {
+        return ttls.get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        if (!script.getScriptAsString().contains("ZADD")) {
+            throw new UnsupportedOperationException("未模拟的脚本: " + script.getScriptAsString());
+        }
+        return (T) addSession(keys.get(0), keys.get(1), args);
+    }
+
+    /**
+     * 与 ADD_SESSION_SCRIPT 相同的步骤
+     */
+    private Long addSession(String tokenKey, String sessionsKey, Object[] args) {
+        String userId = (String) args[0];
+        long ttl = Long.parseLong((String) args[1]);
+        long now = Long.parseLong((String) args[2]);
+        String digest = (String) args[3];
+        long maxSessions = Long.parseLong((String) args[4]);
+        String tokenPrefix = (String) args[5];
+
+        strings.put(tokenKey, userId);
+        ttls.put(tokenKey, ttl);
+        Map<String, Double> sessions = zsets.computeIfAbsent(sessionsKey, k -> new HashMap<>());
+        sessions.put(digest, (double) (now + ttl * 1000));
+        sessions.values().removeIf(score -> score <= now);
+
+        long overflow = sessions.size() - maxSessions;
+        long evicted = 0;
+        if (overflow > 0) {
+            for (String member : rangeByScore(sessions, overflow + 1)) {
+                if (evicted < overflow && !member.equals(digest)) {
+                    delete(tokenPrefix + member);
+                    sessions.remove(member);
+                    evicted++;
+                }
+            }
+        }
+        Long currentTtl = ttls.get(sessionsKey);
+        if (currentTtl == null || currentTtl < ttl) {
+            ttls.put(sessionsKey, ttl);
+        }
+        return evicted;
+    }
+
+    @Override
+    public synchronized Boolean hasKey(String key) {
+        return strings.containsKey(key) || zsets.containsKey(key);
+    }
+
+    @Override
+    public synchronized Boolean delete(String key) {
+        ttls.remove(key);
+        return strings.remove(key) != null | zsets.remove(key) != null;
+    }
+
+    @Override
+    public synchronized Long delete(Collection<String> keys) {
+        long deleted = 0;
+        for (String key : keys) {
+            if (delete(key)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ZSetOperations<String, String> opsForZSet() {
+        return (ZSetOperations<String, String>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ZSetOperations.class}, (proxy, method, args) -> {
+                    synchronized (this) {
+                        switch (method.getName()) {
+                            case "range":
+                                return range((String) args[0], (Long) args[1], (Long) args[2]);
+                            case "remove":
+                                return remove((String) args[0], (Object[]) args[1]);
+                            default:
+                                throw new UnsupportedOperationException("未模拟的命令: ZSet." + method.getName());
+                        }
+                    }
+                });
+    }
+
+    private Set<String> range(String key, long start, long end) {
+        Map<String, Double> sessions = zsets.get(key);
+        if (sessions == null) {
+            return new LinkedHashSet<>();
+        }
+        List<String> members = rangeByScore(sessions, sessions.size());
+        int to = end < 0 ? members.size() : (int) Math.min(members.size(), end + 1);
+        return new LinkedHashSet<>(members.subList((int) start, to));
+    }
+
+    private Long remove(String key, Object[] members) {
+        Map<String, Double> sessions = zsets.get(key);
+        long removed = 0;
+        if (sessions != null) {
+            for (Object member : members) {
+                if (sessions.remove(member) != null) {
+                    removed++;
+                }
+            }
+            if (sessions.isEmpty()) {
+                zsets.remove(key);
+                ttls.remove(key);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 按分数（相同时按成员）升序取前 limit 个成员
+     */
+    private static List<String> rangeByScore(Map<String, Double> sessions, long limit) {
+        List<Map.Entry<String, Double>> entries = new ArrayList<>(sessions.entrySet());
+        entries.sort(Map.Entry.<String, Double>comparingByValue()
+                .thenComparing(Map.Entry.<String, Double>comparingByKey()));
+        List<String> members = new ArrayList<>();
+        for (Map.Entry<String, Double> entry : entries) {
+            if (members.size() >= limit) {
+                break;
+            }
+            members.add(entry.getKey());
+        }
+        return members;
+    }
+}
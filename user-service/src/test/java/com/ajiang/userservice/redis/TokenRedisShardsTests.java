@@ -0,0 +1,69 @@
+package com.ajiang.userservice.redis;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenRedisShardsTests {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private final Map<String, RedisShardNode> allNodes = new LinkedHashMap<>();
+
+    @Test
+    void previousNodeIsNullWhenNotMigrating() {
+        TokenRedisShards shards = shards(ring(3), null);
+
+        for (long userId = 0; userId < 1000; userId++) {
+            assertNotNull(shards.nodeFor(userId));
+            assertNull(shards.previousNodeFor(userId));
+        }
+    }
+
+    @Test
+    void previousNodeRoutesMovedUsersToTheirOldNode() {
+        ConsistentHashRing<RedisShardNode> previousRing = ring(3);
+        ConsistentHashRing<RedisShardNode> currentRing = ring(4);
+        TokenRedisShards shards = shards(currentRing, previousRing);
+
+        int moved = 0;
+        for (long userId = 0; userId < 10000; userId++) {
+            RedisShardNode oldNode = previousRing.get("user:" + userId);
+            RedisShardNode newNode = shards.nodeFor(userId);
+            RedisShardNode previous = shards.previousNodeFor(userId);
+            if (oldNode == newNode) {
+                // 归属未变化的用户不需要回查旧节点
+                assertNull(previous);
+            } else {
+                moved++;
+                assertSame(oldNode, previous);
+                assertSame(allNodes.get("node-3"), newNode);
+            }
+        }
+        assertTrue(moved > 0);
+    }
+
+    private TokenRedisShards shards(ConsistentHashRing<RedisShardNode> ring,
+                                    ConsistentHashRing<RedisShardNode> previousRing) {
+        TokenRedisShards shards = new TokenRedisShards();
+        ReflectionTestUtils.setField(shards, "ring", ring);
+        ReflectionTestUtils.setField(shards, "previousRing", previousRing);
+        return shards;
+    }
+
+    private ConsistentHashRing<RedisShardNode> ring(int nodeCount) {
+        Map<String, RedisShardNode> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            String nodeId = "node-" + i;
+            nodes.put(nodeId, allNodes.computeIfAbsent(nodeId, id -> new RedisShardNode(id, null, null, null, null)));
+        }
+        return new ConsistentHashRing<>(nodes, VIRTUAL_NODES);
+    }
+}
@@ -0,0 +1,247 @@
+package com.ajiang.userservice.service.impl;
+
+import com.ajiang.common.util.JwtUtil;
+import com.ajiang.userservice.dto.RefreshTokenSession;
+import com.ajiang.userservice.redis.ConsistentHashRing;
+import com.ajiang.userservice.redis.InMemoryRedisTemplate;
+import com.ajiang.userservice.redis.RedisShardNode;
+import com.ajiang.userservice.redis.TokenRedisShards;
+import com.ajiang.userservice.service.RefreshTokenService;
+import com.ajiang.userservice.util.TokenDigestUtil;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 令牌白名单在多个进程内 Redis 替身上的行为：分片归属、迁移期间回查旧节点、会话上限和强制下线
+ */
+class TokenWhitelistServiceImplTests {
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private static final long TTL = 1800;
+
+    private final Map<String, InMemoryRedisTemplate> templates = new LinkedHashMap<>();
+
+    private final Map<String, RedisShardNode> allNodes = new LinkedHashMap<>();
+
+    private final JwtUtil jwtUtil = new JwtUtil();
+
+    private final AtomicInteger sessionSequence = new AtomicInteger();
+
+    private final List<Long> revokedUserIds = new ArrayList<>();
+
+    @Test
+    void sessionKeysAreColocatedOnTheUsersNode() {
+        TokenRedisShards shards = shards(ring(3), null);
+        TokenWhitelistServiceImpl service = service(shards, 10);
+
+        for (long userId = 1; userId <= 200; userId++) {
+            String token = token(userId);
+            service.addTokenToWhitelist(token, userId, TTL);
+
+            InMemoryRedisTemplate owner = template(shards.nodeFor(userId));
+            String digest = TokenDigestUtil.digest(token);
+            // 白名单键和会话集合在同一节点上，登录脚本才能原子执行
+            assertEquals(String.valueOf(userId), owner.get("token:whitelist:" + digest));
+            assertTrue(owner.zset("user:sessions:" + userId).containsKey(digest));
+            for (InMemoryRedisTemplate other : templates.values()) {
+                if (other != owner) {
+                    assertFalse(other.keys().contains("user:sessions:" + userId));
+                }
+            }
+            assertTrue(service.isTokenInWhitelist(token));
+        }
+        // 200 个用户分布到了全部 3 个节点
+        for (InMemoryRedisTemplate template : templates.values()) {
+            assertFalse(template.keys().isEmpty());
+        }
+    }
+
+    @Test
+    void migratingLookupFallsBackToThePreviousNode() {
+        ConsistentHashRing<RedisShardNode> previousRing = ring(3);
+        TokenWhitelistServiceImpl before = service(shards(previousRing, null), 10);
+        TokenRedisShards migrating = shards(ring(4), previousRing);
+        TokenWhitelistServiceImpl after = service(migrating, 10);
+
+        Long movedUserId = movedUser(migrating);
+        String token = token(movedUserId);
+        before.addTokenToWhitelist(token, movedUserId, TTL);
+
+        // 扩容前签发的令牌只在旧节点上，扩容后仍然有效
+        String tokenKey = "token:whitelist:" + TokenDigestUtil.digest(token);
+        assertFalse(template(migrating.nodeFor(movedUserId)).hasKey(tokenKey));
+        assertTrue(after.isTokenInWhitelist(token));
+
+        // 登出同时清理旧节点
+        after.removeTokenFromWhitelist(token);
+        assertFalse(template(migrating.previousNodeFor(movedUserId)).hasKey(tokenKey));
+        assertFalse(after.isTokenInWhitelist(token));
+    }
+
+    @Test
+    void sessionsOverTheCapAreEvictedByExpiry() {
+        TokenRedisShards shards = shards(ring(3), null);
+        TokenWhitelistServiceImpl service = service(shards, 2);
+        long userId = 42L;
+
+        String longest = token(userId);
+        String shorter = token(userId);
+        service.addTokenToWhitelist(longest, userId, TTL);
+        service.addTokenToWhitelist(shorter, userId, TTL - 100);
+        // 第三个会话的有效期最短，按分数排在最前，但本次添加的会话不被淘汰
+        String newest = token(userId);
+        service.addTokenToWhitelist(newest, userId, TTL - 180);
+
+        assertTrue(service.isTokenInWhitelist(longest));
+        assertFalse(service.isTokenInWhitelist(shorter));
+        assertTrue(service.isTokenInWhitelist(newest));
+        assertEquals(2, template(shards.nodeFor(userId)).zset("user:sessions:" + userId).size());
+    }
+
+    @Test
+    void shorterLaterSessionKeepsEarlierSessionsIndexed() {
+        TokenRedisShards shards = shards(ring(3), null);
+        TokenWhitelistServiceImpl service = service(shards, 10);
+        long userId = 7L;
+
+        String first = token(userId);
+        String second = token(userId);
+        service.addTokenToWhitelist(first, userId, TTL);
+        service.addTokenToWhitelist(second, userId, TTL - 180);
+
+        // 有效期较短的新会话不清理旧会话，也不缩短会话集合的过期时间
+        InMemoryRedisTemplate owner = template(shards.nodeFor(userId));
+        Map<String, Double> sessions = owner.zset("user:sessions:" + userId);
+        assertTrue(sessions.containsKey(TokenDigestUtil.digest(first)));
+        assertTrue(sessions.containsKey(TokenDigestUtil.digest(second)));
+        assertEquals(TTL, owner.ttl("user:sessions:" + userId).longValue());
+    }
+
+    @Test
+    void removeAllTokensCoversCurrentAndPreviousNodes() {
+        ConsistentHashRing<RedisShardNode> previousRing = ring(3);
+        TokenWhitelistServiceImpl before = service(shards(previousRing, null), 10);
+        TokenRedisShards migrating = shards(ring(4), previousRing);
+        TokenWhitelistServiceImpl after = service(migrating, 10);
+
+        Long userId = movedUser(migrating);
+        String oldToken = token(userId);
+        String newToken = token(userId);
+        before.addTokenToWhitelist(oldToken, userId, TTL);
+        after.addTokenToWhitelist(newToken, userId, TTL);
+        assertNotSame(migrating.nodeFor(userId), migrating.previousNodeFor(userId));
+
+        after.removeAllTokensByUserId(userId);
+
+        assertFalse(after.isTokenInWhitelist(oldToken));
+        assertFalse(after.isTokenInWhitelist(newToken));
+        for (InMemoryRedisTemplate template : templates.values()) {
+            assertFalse(template.keys().contains("user:sessions:" + userId));
+        }
+        assertEquals(Collections.singletonList(userId), revokedUserIds);
+    }
+
+    private TokenWhitelistServiceImpl service(TokenRedisShards shards, int maxSessionsPerUser) {
+        TokenWhitelistServiceImpl service = new TokenWhitelistServiceImpl();
+        ReflectionTestUtils.setField(service, "tokenRedisShards", shards);
+        ReflectionTestUtils.setField(service, "jwtUtil", jwtUtil);
+        ReflectionTestUtils.setField(service, "refreshTokenService", new RecordingRefreshTokenService());
+        ReflectionTestUtils.setField(service, "maxSessionsPerUser", maxSessionsPerUser);
+        ReflectionTestUtils.setField(service, "legacyFallback", false);
+        ReflectionTestUtils.setField(service, "batchTimeoutMs", 1000L);
+        return service;
+    }
+
+    private TokenRedisShards shards(ConsistentHashRing<RedisShardNode> ring,
+                                    ConsistentHashRing<RedisShardNode> previousRing) {
+        TokenRedisShards shards = new TokenRedisShards();
+        ReflectionTestUtils.setField(shards, "ring", ring);
+        ReflectionTestUtils.setField(shards, "previousRing", previousRing);
+        return shards;
+    }
+
+    private ConsistentHashRing<RedisShardNode> ring(int nodeCount) {
+        Map<String, RedisShardNode> nodes = new LinkedHashMap<>();
+        for (int i = 0; i < nodeCount; i++) {
+            String nodeId = "node-" + i;
+            nodes.put(nodeId, allNodes.computeIfAbsent(nodeId, id -> {
+                InMemoryRedisTemplate template = new InMemoryRedisTemplate(id);
+                templates.put(id, template);
+                return new RedisShardNode(id, template, null, null, null);
+            }));
+        }
+        return new ConsistentHashRing<>(nodes, VIRTUAL_NODES);
+    }
+
+    private InMemoryRedisTemplate template(RedisShardNode node) {
+        assertNotNull(node);
+        InMemoryRedisTemplate template = templates.get(node.getId());
+        assertSame(template, node.getTemplate());
+        return template;
+    }
+
+    /**
+     * 扩容后归属发生变化的一个用户
+     */
+    private static Long movedUser(TokenRedisShards shards) {
+        for (long userId = 1; userId < 10000; userId++) {
+            if (shards.previousNodeFor(userId) != null) {
+                return userId;
+            }
+        }
+        throw new AssertionError("扩容后没有归属变化的用户");
+    }
+
+    /**
+     * 每次签发不同的令牌（同一秒内同一用户的令牌内容相同，额外声明用于区分）
+     */
+    private String token(long userId) {
+        return jwtUtil.generateToken(userId, "user", 0L,
+                Collections.singletonMap("sid", sessionSequence.incrementAndGet()));
+    }
+
+    private class RecordingRefreshTokenService implements RefreshTokenService {
+
+        @Override
+        public String issue(RefreshTokenSession session) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Mono<String> issueReactive(RefreshTokenSession session) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RefreshTokenSession consume(String refreshToken) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void revoke(String refreshToken) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void revokeAll(Long userId) {
+            revokedUserIds.add(userId);
+        }
+    }
+}